@@ -10,6 +10,7 @@ public final class Constants {
     public static class Instances{
         public static final MecanumDrive mecanumDrive = new MecanumDrive(
                 Main.getInstance().hardwareMap,
-                beginPose);
+                beginPose,
+                Main.ODOMETRY_RATE_HZ);
     }
 }
@@ -2,11 +2,27 @@ package org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility;
 import org.firstinspires.ftc.teamcode.FTCCommandBased.SubsystemUtility.Subsystem;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 public abstract class Command{
     private final Set<Subsystem> m_requirements = new HashSet<>();
+    private final Set<Subsystem> m_requirementsView = Collections.unmodifiableSet(m_requirements);
+    //bitmask dos requisitos, pelos IDs do CommandScheduler; refeita quando os requisitos mudam
+    long[] m_requirementMask;
+    //o scheduler e a geração de IDs para os quais a bitmask foi feita
+    CommandScheduler m_maskScheduler;
+    int m_maskGeneration;
+    //o scheduler em que o comando está agendado e a posição nele; null e -1 quando não está agendado
+    CommandScheduler m_slotScheduler;
+    int m_slot = -1;
+    boolean m_ending;
+    //roda nos loops em que loop % m_divisor == m_phase
+    int m_divisor = 1;
+    int m_phase;
+    //tarefa reaproveitada quando o comando roda no pool do CommandScheduler
+    CommandScheduler.ParallelTask m_task;
     protected Command(){
     }
     protected void initialize(){}
@@ -14,14 +30,16 @@ public abstract class Command{
     protected void end(boolean interrupted){}
     protected boolean isFinished(){ return false; }
     public Set<Subsystem> getRequirements(){
-        return this.m_requirements;
+        return this.m_requirementsView;
     }
 
     public final void addRequirements(Subsystem... requirements){
         this.m_requirements.addAll(Arrays.asList(requirements));
+        this.m_requirementMask = null;
     }
     public final void addRequirements(Collection<Subsystem> requirements){
         this.m_requirements.addAll(requirements);
+        this.m_requirementMask = null;
     }
     public void schedule(){
         CommandScheduler.getInstance().schedule(this);
@@ -37,6 +55,19 @@ public abstract class Command{
         return InterruptBehavior.cancelSelf;
     }
     public boolean runsWhenDisabled(){ return false; }
+    public Priority getPriority(){ return Priority.NORMAL; }
+    /**
+     * The rate execute() and isFinished() should run at, in Hz, read when the command is
+     * scheduled. 0 runs them every loop. See {@link Subsystem#getRateHz()}.
+     */
+    public double getRateHz(){ return 0; }
+    /**
+     * Whether execute() and isFinished() may run on a worker thread of the scheduler, concurrently
+     * with other thread-safe commands, when {@link CommandScheduler#setParallelism(int)} is on. Only
+     * return true if they touch nothing but this command's requirements and thread-safe objects;
+     * a command without requirements always runs on the scheduler's thread.
+     */
+    public boolean isThreadSafe(){ return false; }
     public enum InterruptBehavior{
         cancelSelf,
         cancelIncoming
@@ -1,21 +1,25 @@
 package org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility;
 
 
+import com.qualcomm.hardware.lynx.LynxModule;
 import com.qualcomm.robotcore.eventloop.EventLoop;
 
 import org.firstinspires.ftc.teamcode.FTCCommandBased.EventUtility.Event;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.HardwareUtility.HubIO;
 import org.firstinspires.ftc.teamcode.FTCCommandBased.SubsystemUtility.Subsystem;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 
@@ -44,16 +48,41 @@ public final class CommandScheduler{
         return instance;
     }
 
-    // A set of the currently-running commands.
-    private final Set<Command> m_scheduledCommands = new LinkedHashSet<>();
+    // The currently-running commands, in the order they were scheduled. Each command holds its
+    // slot in Command.m_slot, and the scheduler the slot belongs to in Command.m_slotScheduler, so
+    // isScheduled() is two field reads. Removal leaves a null slot that compactCommands() closes
+    // up at the start of the next loop, keeping the order stable.
+    private Command[] m_scheduledCommands = new Command[16];
+    private int m_scheduledCount;
+    private int m_emptySlots;
 
-    // A map from required subsystems to their requiring commands. Also used as a set of the
-    // currently-required subsystems.
-    private final Map<Subsystem, Command> m_requirements = new LinkedHashMap<>();
+    // Dense IDs for every subsystem the scheduler has seen, assigned on registration (or when an
+    // unregistered subsystem is first required). Requirements are tracked as bitmasks over these
+    // IDs, so conflict checks and releases are word-wise AND/OR. Unregistering a subsystem frees
+    // its ID (once no command requires it) for reuse, leaving a null entry in m_subsystemsById;
+    // every free bumps m_idGeneration, which makes commands rebuild their cached masks.
+    private final Map<Subsystem, Integer> m_subsystemIds = new IdentityHashMap<>();
+    private final List<Subsystem> m_subsystemsById = new ArrayList<>();
+    private int m_freeIds;
+    private int m_idGeneration;
+    // IDs of subsystems unregistered while a command required them, freed when it releases them.
+    private long[] m_orphanMask = new long[1];
+    // The mask of a command without requirements; every loop over a mask handles zero words.
+    private static final long[] NO_REQUIREMENTS = new long[0];
+
+    // The currently-required subsystems, and the command requiring each one, indexed by ID.
+    private long[] m_requiredMask = new long[1];
+    private Command[] m_requiringById = new Command[64];
 
     // A map from subsystems registered with the scheduler to their default commands.  Also used
     // as a list of currently-registered subsystems.
     private final Map<Subsystem, Command> m_subsystems = new LinkedHashMap<>();
+    // The same subsystems in registration order, iterated by index every loop.
+    private final List<Subsystem> m_registeredSubsystems = new ArrayList<>();
+
+    // The registered subsystems that have a default command, and those commands, indexed by ID.
+    private long[] m_defaultMask = new long[1];
+    private Command[] m_defaultById = new Command[64];
 
     private final Event m_defaultButtonLoop = new Event();
     // The set of currently-registered buttons that will be polled every iteration.
@@ -69,13 +98,111 @@ public final class CommandScheduler{
     // Flag and queues for avoiding ConcurrentModificationException if commands are
     // scheduled/canceled during run
     private boolean m_inRunLoop;
-    private final Set<Command> m_toSchedule = new LinkedHashSet<>();
+    // Duplicates are harmless: schedule() ignores commands that are already scheduled.
+    private final List<Command> m_toSchedule = new ArrayList<>();
     private final List<Command> m_toCancelCommands = new ArrayList<>();
     private final List<Optional<Command>> m_toCancelInterruptors = new ArrayList<>();
-    private final Set<Command> m_endingCommands = new LinkedHashSet<>();
 
+    // Hubs whose bulk cache is owned by the scheduler, and the hub I/O counts of the last loop.
+    private final List<LynxModule> m_hubs = new ArrayList<>();
+    // Hubs whose bulk cache another owner, such as an odometry thread, has claimed.
+    private final List<LynxModule> m_claimedHubs = new ArrayList<>();
+    private int m_lastBulkReads;
+    private int m_lastHubTransactions;
+
+    // Deadline mode: the target loop period (0 disables it), the start of the current loop, and
+    // the load-shedding state driven by overruns of that period.
+    private static final int MAX_SHED_LEVEL = 2;
+    private static final int SHED_DECIMATION = 4;
+    // consecutive overruns before NORMAL work is thinned out; a single overrun only touches LOW
+    private static final int NORMAL_SHED_OVERRUNS = 10;
+    private static final int RECOVERY_LOOPS = 10;
+    private long m_loopPeriodNanos;
+    private long m_loopStartNanos = -1;
+    private boolean m_loopMeasured;
+    private long m_loopCount;
+    private long m_lastLoopNanos;
+    private int m_overruns;
+    private int m_consecutiveOverruns;
+    private int m_shedLevel;
+    private int m_loopsUnderBudget;
+
+    // Multi-rate plan for Subsystem#periodic(): one group per loop divisor, fastest first, each
+    // with its members bucketed by the phase (loop count modulo the divisor) they run on. Rebuilt
+    // at the start of run() after the registered subsystems or the loop period change.
+    private static final int MAX_PLAN_CYCLE = 1 << 12;
+    private RateGroup[] m_ratePlan = new RateGroup[0];
+    private boolean m_ratePlanDirty = true;
+    // Phases handed out to rate-limited commands, so commands of the same rate take turns.
+    private int m_commandPhaseCursor;
+
+    private static final class RateGroup {
+        final int divisor;
+        final Subsystem[][] byPhase;
+        // the members' worker-pool tasks, created the first time each one runs in parallel
+        final ParallelTask[][] tasksByPhase;
+
+        RateGroup(int divisor, Subsystem[][] byPhase) {
+            this.divisor = divisor;
+            this.byPhase = byPhase;
+            this.tasksByPhase = new ParallelTask[divisor][];
+            for (int phase = 0; phase < divisor; phase++) {
+                tasksByPhase[phase] = new ParallelTask[byPhase[phase].length];
+            }
+        }
+    }
 
-    CommandScheduler() {}
+    // Parallel mode: the worker pool (null when off), and the requirements of the commands
+    // submitted to it in the current loop.
+    private ForkJoinPool m_pool;
+    private long[] m_parallelMask = new long[1];
+
+    /**
+     * A thread-safe subsystem's periodic(), or a thread-safe command's execute() and isFinished(),
+     * run on the worker pool. Reused every loop; its results are read on the scheduler's thread
+     * after it has been joined. The parallel pass marks it submitted, or shed if it decided to put
+     * the unit off, and the serial pass skips it either way and clears the mark.
+     */
+    static final class ParallelTask extends RecursiveAction {
+        final Subsystem subsystem;
+        final Command command;
+        boolean submitted;
+        boolean shed;
+        boolean timed;
+        boolean finished;
+        long nanos;
+
+        ParallelTask(Subsystem subsystem, Command command) {
+            this.subsystem = subsystem;
+            this.command = command;
+        }
+
+        @Override
+        protected void compute() {
+            long start = timed ? System.nanoTime() : 0;
+            if (subsystem != null) {
+                subsystem.periodic();
+            } else {
+                command.execute();
+                finished = command.isFinished();
+            }
+            if (timed) {
+                nanos = System.nanoTime() - start;
+            }
+        }
+    }
+
+    // Loop-time histograms, filled only while profiling is enabled.
+    private final LoopProfiler m_profiler = new LoopProfiler();
+    private boolean m_profiling;
+
+
+    /**
+     * Creates a scheduler separate from {@link #getInstance()}, for benchmarks and tests. Commands
+     * must be scheduled on it with {@link #schedule(Command...)}, since {@link Command#schedule()}
+     * and trigger bindings use the shared instance.
+     */
+    public CommandScheduler() {}
 
 
     /**
@@ -87,25 +214,714 @@ public final class CommandScheduler{
         return m_defaultButtonLoop;
     }
 
+    /**
+     * Hands the bulk caches of the given hubs to the scheduler. The hubs are switched to MANUAL
+     * caching, and at the top of every {@link #run()}, before any {@link Subsystem#periodic()},
+     * the scheduler performs exactly one bulk read per hub. Every encoder and motor-state read in
+     * that loop is then served from the cache, instead of AUTO mode silently issuing a new bulk
+     * read whenever a value is read twice. Hubs claimed with {@link #claimHubs(Collection)} are
+     * skipped, so this can be called before or after their owner starts.
+     *
+     * @param hubs the hubs to manage, usually {@code hardwareMap.getAll(LynxModule.class)}
+     */
+    public void registerHubs(Collection<LynxModule> hubs) {
+        for (LynxModule hub : hubs) {
+            if (m_hubs.contains(hub) || m_claimedHubs.contains(hub)) {
+                continue;
+            }
+            hub.setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
+            m_hubs.add(hub);
+        }
+    }
+
+    /**
+     * Stops managing the bulk caches of the given hubs and switches them back to AUTO caching, the
+     * mode the SDK and the drive classes expect. Call it when the OpMode ends: the scheduler
+     * outlives the OpMode, and would otherwise keep bulk-reading hubs that are gone. Hubs claimed
+     * with {@link #claimHubs(Collection)} are left to their owner.
+     *
+     * @param hubs the hubs to release
+     */
+    public void unregisterHubs(Collection<LynxModule> hubs) {
+        for (LynxModule hub : hubs) {
+            if (m_hubs.remove(hub)) {
+                hub.setBulkCachingMode(LynxModule.BulkCachingMode.AUTO);
+            }
+        }
+    }
+
+    /**
+     * Hands the bulk caches of the given hubs to another owner, such as an odometry thread that
+     * refreshes them itself. The scheduler stops refreshing them, and {@link
+     * #registerHubs(Collection)} leaves them alone until they are released.
+     *
+     * @param hubs the hubs to claim
+     */
+    public void claimHubs(Collection<LynxModule> hubs) {
+        m_hubs.removeAll(hubs);
+        for (LynxModule hub : hubs) {
+            if (!m_claimedHubs.contains(hub)) {
+                m_claimedHubs.add(hub);
+            }
+        }
+    }
+
+    /**
+     * Ends a claim made with {@link #claimHubs(Collection)}. With no owner left to refresh their
+     * bulk caches, the hubs are switched back to AUTO caching; register them again to have the
+     * scheduler manage them.
+     *
+     * @param hubs the hubs to release
+     */
+    public void releaseHubs(Collection<LynxModule> hubs) {
+        for (LynxModule hub : hubs) {
+            if (m_claimedHubs.remove(hub)) {
+                hub.setBulkCachingMode(LynxModule.BulkCachingMode.AUTO);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bulk reads recorded through {@link HubIO} during the last complete
+     * loop: one per hub registered with {@link #registerHubs(Collection)}, plus those of other
+     * bulk cache owners such as an odometry thread. Bulk reads that AUTO caching issues on its
+     * own are not seen.
+     *
+     * @return the bulk read count
+     */
+    public int getLastBulkReads() {
+        return m_lastBulkReads;
+    }
+
+    /**
+     * Returns the number of individual hub transactions recorded through {@link HubIO} during the
+     * last complete loop.
+     *
+     * @return the transaction count
+     */
+    public int getLastHubTransactions() {
+        return m_lastHubTransactions;
+    }
+
+    /**
+     * Sets a target loop period and enables deadline mode. The scheduler measures each loop, from
+     * the start of {@link #run()} to {@link #waitForNextLoop()} (or to the next run() if the loop
+     * is not paced), and counts the loops that overrun the period.
+     *
+     * <p>While loops overrun, the scheduler sheds work by {@link Priority}: LOW subsystems and
+     * commands run only every few loops from the first overrun. Only a sustained overload, many
+     * overruns in a row, turns LOW work off and thins out NORMAL work, so units that don't
+     * declare a priority ride out occasional slow loops untouched. A LOW unit is also skipped in
+     * any loop that has already used up its period by the time the unit comes up. CRITICAL work
+     * always runs. Shedding steps back down after a short run of loops well under the period.
+     *
+     * <p>The period is also the base tick for {@link Subsystem#getRateHz()} and
+     * {@link Command#getRateHz()}: a unit asking for a lower rate runs every n-th loop.
+     *
+     * @param seconds the target loop period, or 0 to run everything every loop (the default)
+     */
+    public void setLoopPeriod(double seconds) {
+        m_loopPeriodNanos = Math.max(0, (long) (seconds * 1e9));
+        m_loopStartNanos = -1;
+        m_shedLevel = 0;
+        m_loopsUnderBudget = 0;
+        m_overruns = 0;
+        m_consecutiveOverruns = 0;
+        m_ratePlanDirty = true;
+    }
+
+    /**
+     * Waits until one loop period has passed since the start of the last {@link #run()}. Returns
+     * immediately if the loop has already overrun, or if no loop period is set.
+     */
+    public void waitForNextLoop() {
+        if (m_loopPeriodNanos == 0 || m_loopStartNanos < 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!m_loopMeasured) {
+            endLoop(now - m_loopStartNanos);
+            m_loopMeasured = true;
+        }
+        long deadline = m_loopStartNanos + m_loopPeriodNanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Records how long a loop's work took and moves the shedding level.
+     *
+     * @param busyNanos the loop's duration, excluding the wait for the next period
+     */
+    private void endLoop(long busyNanos) {
+        m_lastLoopNanos = busyNanos;
+        if (busyNanos > m_loopPeriodNanos) {
+            m_overruns++;
+            m_consecutiveOverruns++;
+            m_loopsUnderBudget = 0;
+            //LOW cede no primeiro estouro; NORMAL só com sobrecarga sustentada
+            if (m_shedLevel == 0 || m_consecutiveOverruns >= NORMAL_SHED_OVERRUNS) {
+                m_shedLevel = Math.min(m_shedLevel + 1, MAX_SHED_LEVEL);
+            }
+            return;
+        }
+        m_consecutiveOverruns = 0;
+        if (m_shedLevel > 0 && busyNanos < m_loopPeriodNanos * 3 / 4
+                && ++m_loopsUnderBudget >= RECOVERY_LOOPS) {
+            m_shedLevel--;
+            m_loopsUnderBudget = 0;
+        }
+    }
+
+    /**
+     * Decides whether to put off a subsystem's or command's work in the current loop.
+     *
+     * @param priority the unit's priority
+     * @param divisor the unit's rate divisor, so that thinning out counts the loops it is due on
+     * @return true to skip the unit this loop
+     */
+    private boolean shed(Priority priority, int divisor) {
+        if (m_loopPeriodNanos == 0 || priority == Priority.CRITICAL) {
+            return false;
+        }
+        int level = priority == Priority.LOW ? m_shedLevel : m_shedLevel - 1;
+        if (level >= 2) {
+            return true;
+        }
+        if (level == 1 && (m_loopCount / divisor) % SHED_DECIMATION != 0) {
+            return true;
+        }
+        //trabalho LOW não começa depois que o loop já estourou o período
+        return priority == Priority.LOW && System.nanoTime() - m_loopStartNanos > m_loopPeriodNanos;
+    }
+
+    /**
+     * Converts a requested rate to a number of loops of the target period.
+     *
+     * @param rateHz the requested rate, 0 or less for every loop
+     * @return run once every this many loops, at least 1
+     */
+    private int divisorFor(double rateHz) {
+        if (m_loopPeriodNanos == 0 || rateHz <= 0) {
+            return 1;
+        }
+        double loopsPerRun = 1e9 / (rateHz * m_loopPeriodNanos);
+        return (int) Math.max(1, Math.min(MAX_PLAN_CYCLE, Math.round(loopsPerRun)));
+    }
+
+    /**
+     * Groups the registered subsystems by divisor and spreads each group over its phases. Phases
+     * are chosen greedily against the per-loop load of the units placed so far, so that, for
+     * example, four 10 Hz subsystems on a 200 Hz loop run on four different loops instead of all
+     * on the same one.
+     */
+    private void buildRatePlan() {
+        TreeMap<Integer, List<Subsystem>> groups = new TreeMap<>();
+        for (int i = 0; i < m_registeredSubsystems.size(); i++) {
+            Subsystem subsystem = m_registeredSubsystems.get(i);
+            int divisor = divisorFor(subsystem.getRateHz());
+            List<Subsystem> group = groups.get(divisor);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(divisor, group);
+            }
+            group.add(subsystem);
+        }
+
+        //o ciclo completo do plano é o MMC dos divisores; se ficar grande demais, as fases
+        //são só distribuídas em rodízio dentro de cada grupo
+        long cycle = 1;
+        for (int divisor : groups.keySet()) {
+            cycle = cycle / gcd(cycle, divisor) * divisor;
+            if (cycle > MAX_PLAN_CYCLE) {
+                break;
+            }
+        }
+        int[] load = cycle <= MAX_PLAN_CYCLE ? new int[(int) cycle] : null;
+
+        RateGroup[] plan = new RateGroup[groups.size()];
+        int g = 0;
+        for (Map.Entry<Integer, List<Subsystem>> entry : groups.entrySet()) {
+            int divisor = entry.getKey();
+            List<Subsystem> members = entry.getValue();
+            int[] phaseOf = new int[members.size()];
+            int[] counts = new int[divisor];
+            for (int i = 0; i < members.size(); i++) {
+                int phase = load != null ? leastLoadedPhase(load, divisor) : i % divisor;
+                if (load != null) {
+                    for (int k = phase; k < load.length; k += divisor) {
+                        load[k]++;
+                    }
+                }
+                phaseOf[i] = phase;
+                counts[phase]++;
+            }
+            Subsystem[][] byPhase = new Subsystem[divisor][];
+            for (int phase = 0; phase < divisor; phase++) {
+                byPhase[phase] = new Subsystem[counts[phase]];
+                counts[phase] = 0;
+            }
+            for (int i = 0; i < members.size(); i++) {
+                byPhase[phaseOf[i]][counts[phaseOf[i]]++] = members.get(i);
+            }
+            plan[g++] = new RateGroup(divisor, byPhase);
+        }
+        m_ratePlan = plan;
+        m_ratePlanDirty = false;
+    }
+
+    private static int leastLoadedPhase(int[] load, int divisor) {
+        int best = 0;
+        int bestLoad = Integer.MAX_VALUE;
+        for (int phase = 0; phase < divisor; phase++) {
+            int worst = 0;
+            for (int k = phase; k < load.length; k += divisor) {
+                worst = Math.max(worst, load[k]);
+            }
+            if (worst < bestLoad) {
+                best = phase;
+                bestLoad = worst;
+            }
+        }
+        return best;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Returns the duration of the last measured loop, excluding the wait for the next period.
+     * Only measured in deadline mode.
+     *
+     * @return the loop duration in nanoseconds
+     */
+    public long getLastLoopNanos() {
+        return m_lastLoopNanos;
+    }
+
+    /**
+     * Returns the number of loops that overran the target period since it was set.
+     *
+     * @return the overrun count
+     */
+    public int getOverrunCount() {
+        return m_overruns;
+    }
+
+    /**
+     * Returns how much work is currently being shed: 0 for none, 1 when LOW work runs only
+     * every few loops, 2 when LOW work is off and NORMAL work runs only every few loops.
+     *
+     * @return the shedding level
+     */
+    public int getShedLevel() {
+        return m_shedLevel;
+    }
+
+    /**
+     * Enables or disables loop-time profiling. While enabled, every {@link #run()} records the
+     * duration of each of its phases, of each {@link Subsystem#periodic()} and of each command's
+     * execute() and isFinished() into the histograms of {@link #getProfiler()}. Disabled by
+     * default; when disabled, the loop does not read the clock.
+     *
+     * @param enabled whether to profile the loop
+     */
+    public void setProfilingEnabled(boolean enabled) {
+        m_profiling = enabled;
+    }
+
+    public boolean isProfilingEnabled() {
+        return m_profiling;
+    }
+
+    /**
+     * Returns the loop-time histograms. They keep their contents while profiling is disabled.
+     *
+     * @return the profiler
+     */
+    public LoopProfiler getProfiler() {
+        return m_profiler;
+    }
+
+    /**
+     * Enables or disables parallel mode. While enabled, the subsystems and commands that declare
+     * themselves thread-safe ({@link Subsystem#isThreadSafe()}, {@link Command#isThreadSafe()})
+     * run on a pool of worker threads: first all the due thread-safe subsystems, joined before the
+     * rest run on the scheduler's thread, then the thread-safe commands, joined before the others
+     * execute and before any command is ended, requirements are released or default commands are
+     * scheduled.
+     *
+     * <p>Two subsystems never share an ID, so their periodic() calls are independent. Commands
+     * are only sent to the pool together when their requirement bitmasks are provably disjoint;
+     * a thread-safe command without requirements, or one that overlaps an already submitted one,
+     * runs on the scheduler's thread. Execute actions, profiling and finishing still run on the
+     * scheduler's thread, in the usual order. Do not call this from inside {@link #run()}.
+     *
+     * @param workers the number of worker threads, or 0 to run everything on the calling thread
+     *     (the default)
+     */
+    public void setParallelism(int workers) {
+        if (m_pool != null) {
+            m_pool.shutdown();
+            m_pool = null;
+        }
+        if (workers > 0) {
+            m_pool = new ForkJoinPool(workers);
+        }
+    }
+
+    /**
+     * Returns the number of worker threads of parallel mode.
+     *
+     * @return the worker count, 0 when parallel mode is off
+     */
+    public int getParallelism() {
+        return m_pool != null ? m_pool.getParallelism() : 0;
+    }
+
+    private void submit(ParallelTask task, boolean timed) {
+        task.reinitialize();
+        task.timed = timed;
+        task.submitted = true;
+        m_pool.execute(task);
+    }
+
+    /**
+     * Waits for a submitted task. Every task must be waited for before any of their exceptions is
+     * rethrown, so that none is still running when it is submitted again.
+     *
+     * @param task the task
+     * @param failure the first exception of the tasks joined so far, or null
+     * @return the first exception, including this task's
+     */
+    private static Throwable join(ParallelTask task, Throwable failure) {
+        task.quietlyJoin();
+        return failure != null ? failure : task.getException();
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * Sends the thread-safe subsystems due in this loop to the worker pool and waits for all of
+     * them. The ones sent, and the ones shed, are left marked for the serial pass to skip.
+     *
+     * @param profiler the profiler, or null
+     */
+    private void runParallelSubsystems(LoopProfiler profiler) {
+        boolean any = false;
+        for (int g = 0; g < m_ratePlan.length; g++) {
+            RateGroup group = m_ratePlan[g];
+            int phase = (int) (m_loopCount % group.divisor);
+            Subsystem[] due = group.byPhase[phase];
+            ParallelTask[] tasks = group.tasksByPhase[phase];
+            for (int i = 0; i < due.length; i++) {
+                Subsystem subsystem = due[i];
+                if (!subsystem.isThreadSafe()) {
+                    continue;
+                }
+                if (tasks[i] == null) {
+                    tasks[i] = new ParallelTask(subsystem, null);
+                }
+                //a decisão vale para o loop todo; o passe serial não a refaz
+                if (shed(subsystem.getPriority(), group.divisor)) {
+                    tasks[i].shed = true;
+                    continue;
+                }
+                submit(tasks[i], profiler != null);
+                any = true;
+            }
+        }
+        if (!any) {
+            return;
+        }
+
+        Throwable failure = null;
+        for (int g = 0; g < m_ratePlan.length; g++) {
+            RateGroup group = m_ratePlan[g];
+            ParallelTask[] tasks = group.tasksByPhase[(int) (m_loopCount % group.divisor)];
+            for (int i = 0; i < tasks.length; i++) {
+                ParallelTask task = tasks[i];
+                if (task != null && task.submitted) {
+                    failure = join(task, failure);
+                    if (profiler != null) {
+                        profiler.recordSubsystem(task.subsystem, task.nanos);
+                    }
+                }
+            }
+        }
+        rethrow(failure);
+    }
+
+    /**
+     * Sends the thread-safe commands due in this loop whose requirements are disjoint to the
+     * worker pool and waits for all of them. Their results are picked up by the serial pass. A
+     * command shed in this loop is marked for the serial pass to skip, and claims no requirements.
+     */
+    private void runParallelCommands() {
+        Arrays.fill(m_parallelMask, 0);
+        boolean any = false;
+        for (int i = 0; i < m_scheduledCount; i++) {
+            Command command = m_scheduledCommands[i];
+            if (command == null || !command.isThreadSafe()) {
+                continue;
+            }
+            if (command.m_divisor > 1 && m_loopCount % command.m_divisor != command.m_phase) {
+                continue;
+            }
+            if (command.m_task == null) {
+                command.m_task = new ParallelTask(null, command);
+            }
+            //um comando adiado não reserva os seus requisitos no lote
+            if (shed(command.getPriority(), command.m_divisor)) {
+                command.m_task.shed = true;
+                continue;
+            }
+            if (!claimParallel(requirementMask(command))) {
+                continue;
+            }
+            submit(command.m_task, m_profiling);
+            any = true;
+        }
+        if (!any) {
+            return;
+        }
+
+        Throwable failure = null;
+        for (int i = 0; i < m_scheduledCount; i++) {
+            Command command = m_scheduledCommands[i];
+            if (command != null && command.m_task != null && command.m_task.submitted) {
+                failure = join(command.m_task, failure);
+            }
+        }
+        rethrow(failure);
+    }
+
+    /**
+     * Claims a command's requirements for the current parallel batch.
+     *
+     * @param mask the command's requirement bitmask
+     * @return false if the command has no requirements, or shares one with a command already in
+     *     the batch
+     */
+    private boolean claimParallel(long[] mask) {
+        boolean any = false;
+        for (int w = 0; w < mask.length; w++) {
+            if ((mask[w] & m_parallelMask[w]) != 0) {
+                return false;
+            }
+            any |= mask[w] != 0;
+        }
+        if (!any) {
+            return false;
+        }
+        for (int w = 0; w < mask.length; w++) {
+            m_parallelMask[w] |= mask[w];
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ID of a subsystem, assigning the next free one if it has none yet.
+     *
+     * @param subsystem the subsystem
+     * @return the subsystem's ID
+     */
+    private int idOf(Subsystem subsystem) {
+        Integer id = m_subsystemIds.get(subsystem);
+        if (id != null) {
+            return id;
+        }
+        int newId;
+        if (m_freeIds > 0) {
+            //reaproveita o menor ID livre, mantendo as bitmasks curtas
+            newId = m_subsystemsById.indexOf(null);
+            m_subsystemsById.set(newId, subsystem);
+            m_freeIds--;
+        } else {
+            newId = m_subsystemsById.size();
+            m_subsystemsById.add(subsystem);
+        }
+        m_subsystemIds.put(subsystem, newId);
+
+        int words = (newId >>> 6) + 1;
+        if (m_requiredMask.length < words) {
+            m_requiredMask = Arrays.copyOf(m_requiredMask, words);
+            m_defaultMask = Arrays.copyOf(m_defaultMask, words);
+            m_parallelMask = Arrays.copyOf(m_parallelMask, words);
+            m_orphanMask = Arrays.copyOf(m_orphanMask, words);
+        }
+        if (m_requiringById.length <= newId) {
+            m_requiringById = Arrays.copyOf(m_requiringById, m_requiringById.length * 2);
+            m_defaultById = Arrays.copyOf(m_defaultById, m_defaultById.length * 2);
+        }
+        return newId;
+    }
+
+    /**
+     * Returns the ID of a subsystem being registered, keeping it from being freed.
+     *
+     * @param subsystem the subsystem
+     * @return the subsystem's ID
+     */
+    private int registeredIdOf(Subsystem subsystem) {
+        int id = idOf(subsystem);
+        m_orphanMask[id >>> 6] &= ~(1L << id);
+        return id;
+    }
+
+    /**
+     * Frees the ID of an unregistered subsystem, or defers it until the command requiring the
+     * subsystem releases it.
+     *
+     * @param id the subsystem's ID
+     */
+    private void releaseId(int id) {
+        if (m_requiringById[id] != null) {
+            m_orphanMask[id >>> 6] |= 1L << id;
+            return;
+        }
+        m_orphanMask[id >>> 6] &= ~(1L << id);
+        m_subsystemIds.remove(m_subsystemsById.get(id));
+        m_subsystemsById.set(id, null);
+        m_freeIds++;
+        m_idGeneration++;
+    }
+
+    /**
+     * Returns the requirement bitmask of a command, building and caching it on the command the
+     * first time, after its requirements change, or after a subsystem ID is freed.
+     *
+     * @param command the command
+     * @return the bitmask, one bit per subsystem ID
+     */
+    private long[] requirementMask(Command command) {
+        long[] mask = command.m_requirementMask;
+        if (mask != null && command.m_maskScheduler == this && command.m_maskGeneration == m_idGeneration) {
+            return mask;
+        }
+        command.m_maskScheduler = this;
+        command.m_maskGeneration = m_idGeneration;
+        int maxId = -1;
+        for (Subsystem requirement : command.getRequirements()) {
+            maxId = Math.max(maxId, idOf(requirement));
+        }
+        if (maxId < 0) {
+            command.m_requirementMask = NO_REQUIREMENTS;
+            return NO_REQUIREMENTS;
+        }
+        mask = new long[(maxId >>> 6) + 1];
+        for (Subsystem requirement : command.getRequirements()) {
+            int id = idOf(requirement);
+            mask[id >>> 6] |= 1L << id;
+        }
+        command.m_requirementMask = mask;
+        return mask;
+    }
+
+    /**
+     * Releases the requirements of a command that has ended. Subsystems that another command took
+     * over while this one was ending stay with that command.
+     *
+     * @param command the command that has ended
+     */
+    private void releaseRequirements(Command command) {
+        long[] mask = requirementMask(command);
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            while (bits != 0) {
+                int id = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (m_requiringById[id] == command) {
+                    m_requiringById[id] = null;
+                    m_requiredMask[w] &= ~(1L << id);
+                    if ((m_orphanMask[w] & (1L << id)) != 0) {
+                        releaseId(id);
+                    }
+                }
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    private void addScheduled(Command command) {
+        if (m_scheduledCount == m_scheduledCommands.length) {
+            m_scheduledCommands = Arrays.copyOf(m_scheduledCommands, m_scheduledCommands.length * 2);
+        }
+        command.m_slotScheduler = this;
+        command.m_slot = m_scheduledCount;
+        m_scheduledCommands[m_scheduledCount++] = command;
+    }
+
+    private void removeScheduled(Command command) {
+        //o slot de um comando agendado em outro scheduler não é uma posição desta tabela
+        if (command.m_slotScheduler != this) {
+            return;
+        }
+        m_scheduledCommands[command.m_slot] = null;
+        command.m_slotScheduler = null;
+        command.m_slot = -1;
+        m_emptySlots++;
+    }
+
+    /** Closes the slots left by removed commands, keeping the remaining commands in order. */
+    private void compactCommands() {
+        int count = 0;
+        for (int i = 0; i < m_scheduledCount; i++) {
+            Command command = m_scheduledCommands[i];
+            if (command != null) {
+                command.m_slot = count;
+                m_scheduledCommands[count++] = command;
+            }
+        }
+        Arrays.fill(m_scheduledCommands, count, m_scheduledCount, null);
+        m_scheduledCount = count;
+        m_emptySlots = 0;
+    }
+
     /**
      * Initializes a given command, adds its requirements to the list, and performs the init actions.
      *
      * @param command The command to initialize
-     * @param requirements The command requirements
+     * @param mask The command's requirement bitmask
      */
-    private void initCommand(Command command, Set<Subsystem> requirements) {
-        m_scheduledCommands.add(command);
-        for (Subsystem requirement : requirements) {
-            m_requirements.put(requirement, command);
+    private void initCommand(Command command, long[] mask) {
+        addScheduled(command);
+        command.m_divisor = divisorFor(command.getRateHz());
+        command.m_phase = command.m_divisor > 1 ? m_commandPhaseCursor++ % command.m_divisor : 0;
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            m_requiredMask[w] |= bits;
+            while (bits != 0) {
+                m_requiringById[(w << 6) + Long.numberOfTrailingZeros(bits)] = command;
+                bits &= bits - 1;
+            }
         }
         command.initialize();
-        for (Consumer<Command> action : m_initActions) {
-            action.accept(command);
+        for (int i = 0; i < m_initActions.size(); i++) {
+            m_initActions.get(i).accept(command);
         }
     }
 
     /**
-     * Schedules a command for execution. Does nothing if the command is already scheduled. If a
+     * Schedules a command for execution. Does nothing if the command is already scheduled, on this
+     * or on another scheduler: a command runs on one scheduler at a time. If a
      * command's requirements are not available, it will only be started if all the commands currently
      * using those requirements have been scheduled as interruptible. If this is the case, they will
      * be interrupted and the command will be scheduled.
@@ -120,39 +936,57 @@ public final class CommandScheduler{
             return;
         }
         if (m_inRunLoop) {
-            m_toSchedule.add(command);
+            //comandos e subsistemas thread-safe podem agendar de uma thread do pool
+            synchronized (m_toSchedule) {
+                m_toSchedule.add(command);
+            }
             return;
         }
 
         // Do nothing if the scheduler is disabled, the robot is disabled and the command doesn't
-        // run when disabled, or the command is already scheduled.
+        // run when disabled, or the command is already scheduled here or on another scheduler.
         if (m_disabled
-                || isScheduled(command)) {
+                || command.m_slotScheduler != null) {
             return;
         }
 
-        Set<Subsystem> requirements = command.getRequirements();
+        long[] mask = requirementMask(command);
 
         // Schedule the command if the requirements are not currently in-use.
-        if (Collections.disjoint(m_requirements.keySet(), requirements)) {
-            initCommand(command, requirements);
+        boolean disjoint = true;
+        for (int w = 0; w < mask.length; w++) {
+            if ((mask[w] & m_requiredMask[w]) != 0) {
+                disjoint = false;
+                break;
+            }
+        }
+        if (disjoint) {
+            initCommand(command, mask);
         } else {
             // Else check if the requirements that are in use have all have interruptible commands,
             // and if so, interrupt those commands and schedule the new command.
-            for (Subsystem requirement : requirements) {
-                Command requiring = requiring(requirement);
-                if (requiring != null
-                        && requiring.getInterruptionBehavior() == Command.InterruptBehavior.cancelIncoming) {
-                    return;
+            for (int w = 0; w < mask.length; w++) {
+                long conflicts = mask[w] & m_requiredMask[w];
+                while (conflicts != 0) {
+                    Command requiring = m_requiringById[(w << 6) + Long.numberOfTrailingZeros(conflicts)];
+                    if (requiring.getInterruptionBehavior() == Command.InterruptBehavior.cancelIncoming) {
+                        return;
+                    }
+                    conflicts &= conflicts - 1;
                 }
             }
-            for (Subsystem requirement : requirements) {
-                Command requiring = requiring(requirement);
-                if (requiring != null) {
-                    cancel(requiring);
+            for (int w = 0; w < mask.length; w++) {
+                long conflicts = mask[w] & m_requiredMask[w];
+                while (conflicts != 0) {
+                    //um cancel() anterior pode já ter liberado este subsistema
+                    Command requiring = m_requiringById[(w << 6) + Long.numberOfTrailingZeros(conflicts)];
+                    if (requiring != null) {
+                        cancel(requiring);
+                    }
+                    conflicts &= conflicts - 1;
                 }
             }
-            initCommand(command, requirements);
+            initCommand(command, mask);
         }
     }
 
@@ -173,12 +1007,18 @@ public final class CommandScheduler{
     /**
      * Runs a single iteration of the scheduler. The execution occurs in the following order:
      *
-     * <p>Subsystem periodic methods are called.
+     * <p>The bulk caches of the registered hubs are refreshed.
+     *
+     * <p>Subsystem periodic methods are called: every subsystem that is due this loop, fastest
+     * rate first, in registration order within a rate.
      *
      * <p>Button bindings are polled, and new commands are scheduled from them.
      *
      * <p>Currently-scheduled commands are executed.
      *
+     * <p>In parallel mode, the thread-safe subsystems and commands of each of those two phases
+     * run on the worker pool first, and are joined before the rest of the phase.
+     *
      * <p>End conditions are checked on currently-scheduled commands, and commands that are finished
      * have their end methods called and are removed.
      *
@@ -188,9 +1028,70 @@ public final class CommandScheduler{
         if (m_disabled) {
             return;
         }
-        //Para cada um dos subssitemas registrados, sempre executamos o métod0 periodic
-        for (Subsystem subsystem : m_subsystems.keySet()) {
-            subsystem.periodic();
+        //com o profiling desligado, o custo é só uma checagem de null por unidade
+        LoopProfiler profiler = m_profiling ? m_profiler : null;
+        long loopStart = profiler != null || m_loopPeriodNanos > 0 ? System.nanoTime() : 0;
+        long phaseStart = loopStart;
+        if (m_loopPeriodNanos > 0) {
+            //sem waitForNextLoop(), o loop anterior termina aqui
+            if (m_loopStartNanos >= 0 && !m_loopMeasured) {
+                endLoop(loopStart - m_loopStartNanos);
+            }
+            m_loopStartNanos = loopStart;
+            m_loopMeasured = false;
+            m_loopCount++;
+        }
+
+        //Atualizamos o cache dos hubs uma única vez, antes de qualquer leitura do loop
+        m_lastHubTransactions = HubIO.drainTransactions();
+        m_lastBulkReads = HubIO.drainBulkReads();
+        for (int i = 0; i < m_hubs.size(); i++) {
+            m_hubs.get(i).clearBulkCache();
+            m_hubs.get(i).getBulkData();
+            HubIO.recordBulkRead();
+        }
+        if (profiler != null) {
+            phaseStart = profiler.phase(LoopProfiler.Phase.HUBS, phaseStart);
+        }
+
+        //Para cada um dos subssitemas registrados e com a vez neste loop, executamos o métod0 periodic
+        if (m_ratePlanDirty) {
+            buildRatePlan();
+        }
+        if (m_pool != null) {
+            //agendamentos feitos pelas threads do pool vão para a fila, como dentro do loop de comandos
+            m_inRunLoop = true;
+            try {
+                runParallelSubsystems(profiler);
+            } finally {
+                m_inRunLoop = false;
+            }
+        }
+        for (int g = 0; g < m_ratePlan.length; g++) {
+            RateGroup group = m_ratePlan[g];
+            int phase = (int) (m_loopCount % group.divisor);
+            Subsystem[] due = group.byPhase[phase];
+            ParallelTask[] tasks = group.tasksByPhase[phase];
+            for (int i = 0; i < due.length; i++) {
+                Subsystem subsystem = due[i];
+                //já rodou no pool, ou o passe paralelo já o adiou
+                if (tasks[i] != null && (tasks[i].submitted || tasks[i].shed)) {
+                    tasks[i].submitted = false;
+                    tasks[i].shed = false;
+                    continue;
+                }
+                if (shed(subsystem.getPriority(), group.divisor)) {
+                    continue;
+                }
+                long start = profiler != null ? System.nanoTime() : 0;
+                subsystem.periodic();
+                if (profiler != null) {
+                    profiler.subsystem(subsystem, start);
+                }
+            }
+        }
+        if (profiler != null) {
+            phaseStart = profiler.phase(LoopProfiler.Phase.SUBSYSTEMS, phaseStart);
         }
 
         //Congelamos o estado dos botões
@@ -198,40 +1099,24 @@ public final class CommandScheduler{
         //executamos o agendamento ou cancelamento pelos botões
         //a partir das condições repassadas pela classe Trigger.
         loopCache.poll();
+        if (profiler != null) {
+            phaseStart = profiler.phase(LoopProfiler.Phase.BUTTONS, phaseStart);
+        }
 
         m_inRunLoop = true;
-        boolean isDisabled = false;
-        //executa os comandos agendados, cancela os comandos finalizados
-        for (Iterator<Command> iterator = m_scheduledCommands.iterator(); iterator.hasNext(); ) {
-            Command command = iterator.next();
-
-            if (isDisabled && !command.runsWhenDisabled()) {
-                cancel(command);
-                continue;
-            }
-            //aqui, executamos o comando
-            command.execute();
-            for (Consumer<Command> action : m_executeActions) {
-                action.accept(command);
-            }
-            //Aqui, encerramos o comando
-            if (command.isFinished()) {
-                m_endingCommands.add(command);
-                command.end(false);
-                for (Consumer<Command> action : m_finishActions) {
-                    action.accept(command);
-                }
-                m_endingCommands.remove(command);
-                iterator.remove();
-
-                m_requirements.keySet().removeAll(command.getRequirements());
-            }
+        try {
+            runCommands(profiler);
+        } finally {
+            //se um comando lançar uma exceção, cancel() e schedule() não podem ficar presos na fila
+            m_inRunLoop = false;
+        }
+        if (profiler != null) {
+            phaseStart = profiler.phase(LoopProfiler.Phase.COMMANDS, phaseStart);
         }
-        m_inRunLoop = false;
 
         //agenda os comandos que foram agendados fora dos triggers ou dos subsistemas(só uma vez)
-        for (Command command : m_toSchedule) {
-            schedule(command);
+        for (int i = 0; i < m_toSchedule.size(); i++) {
+            schedule(m_toSchedule.get(i));
         }
 
         for (int i = 0; i < m_toCancelCommands.size(); i++) {
@@ -241,12 +1126,101 @@ public final class CommandScheduler{
         m_toSchedule.clear();
         m_toCancelCommands.clear();
         m_toCancelInterruptors.clear();
+        if (profiler != null) {
+            phaseStart = profiler.phase(LoopProfiler.Phase.QUEUED, phaseStart);
+        }
 
-        //executa os comandos padrões dos subsistemas
-        for (Map.Entry<Subsystem, Command> subsystemCommand : m_subsystems.entrySet()) {
-            if (!m_requirements.containsKey(subsystemCommand.getKey())
-                    && subsystemCommand.getValue() != null) {
-                schedule(subsystemCommand.getValue());
+        //executa os comandos padrões dos subsistemas livres, na ordem dos IDs
+        for (int w = 0; w < m_defaultMask.length; w++) {
+            long idle = m_defaultMask[w] & ~m_requiredMask[w];
+            while (idle != 0) {
+                long bit = idle & -idle;
+                idle &= idle - 1;
+                //um comando padrão agendado antes pode ter tomado este subsistema
+                if ((m_requiredMask[w] & bit) == 0) {
+                    schedule(m_defaultById[(w << 6) + Long.numberOfTrailingZeros(bit)]);
+                }
+            }
+        }
+        if (profiler != null) {
+            profiler.phase(LoopProfiler.Phase.DEFAULTS, phaseStart);
+            profiler.phase(LoopProfiler.Phase.LOOP, loopStart);
+        }
+    }
+
+    /**
+     * Executes the scheduled commands that are due in this loop, and ends and removes the ones
+     * that have finished. Commands scheduled or canceled meanwhile are queued.
+     *
+     * @param profiler the profiler, or null
+     */
+    private void runCommands(LoopProfiler profiler) {
+        boolean isDisabled = false;
+        //executa os comandos agendados, cancela os comandos finalizados
+        if (m_emptySlots > 0) {
+            compactCommands();
+        }
+        if (m_pool != null) {
+            runParallelCommands();
+        }
+        //comandos agendados durante o loop vão para m_toSchedule, então o tamanho não muda aqui
+        for (int i = 0; i < m_scheduledCount; i++) {
+            Command command = m_scheduledCommands[i];
+            if (command == null) {
+                continue;
+            }
+
+            boolean finished;
+            ParallelTask task = command.m_task;
+            if (task != null && task.shed) {
+                //o passe paralelo já o adiou neste loop
+                task.shed = false;
+                continue;
+            }
+            if (task != null && task.submitted) {
+                //já executou no pool; só falta o resto, nesta thread e na ordem de sempre
+                task.submitted = false;
+                for (int j = 0; j < m_executeActions.size(); j++) {
+                    m_executeActions.get(j).accept(command);
+                }
+                if (profiler != null) {
+                    profiler.recordCommand(command, task.nanos);
+                }
+                finished = task.finished;
+            } else {
+                if (isDisabled && !command.runsWhenDisabled()) {
+                    cancel(command);
+                    continue;
+                }
+                //comandos com taxa menor só rodam nos loops da sua fase
+                if (command.m_divisor > 1 && m_loopCount % command.m_divisor != command.m_phase) {
+                    continue;
+                }
+                if (shed(command.getPriority(), command.m_divisor)) {
+                    continue;
+                }
+                //aqui, executamos o comando
+                long start = profiler != null ? System.nanoTime() : 0;
+                command.execute();
+                for (int j = 0; j < m_executeActions.size(); j++) {
+                    m_executeActions.get(j).accept(command);
+                }
+                finished = command.isFinished();
+                if (profiler != null) {
+                    profiler.command(command, start);
+                }
+            }
+            //Aqui, encerramos o comando
+            if (finished) {
+                command.m_ending = true;
+                command.end(false);
+                for (int j = 0; j < m_finishActions.size(); j++) {
+                    m_finishActions.get(j).accept(command);
+                }
+                command.m_ending = false;
+                removeScheduled(command);
+
+                releaseRequirements(command);
             }
         }
     }
@@ -266,7 +1240,61 @@ public final class CommandScheduler{
             if (m_subsystems.containsKey(subsystem)) {
                 continue;
             }
+            registeredIdOf(subsystem);
             m_subsystems.put(subsystem, null);
+            m_registeredSubsystems.add(subsystem);
+            m_ratePlanDirty = true;
+        }
+    }
+
+    /**
+     * Un-registers subsystems with the scheduler. The subsystem will no longer have its periodic
+     * block called, and will not have its default command scheduled. The scheduler drops its
+     * reference to the subsystem once no command requires it.
+     *
+     * @param subsystems the subsystem to un-register
+     */
+    public void unregisterSubsystem(Subsystem... subsystems) {
+        for (Subsystem subsystem : subsystems) {
+            if (subsystem == null || !m_subsystems.containsKey(subsystem)) {
+                continue;
+            }
+            m_subsystems.remove(subsystem);
+            m_registeredSubsystems.remove(subsystem);
+            m_ratePlanDirty = true;
+            int id = idOf(subsystem);
+            setDefaultById(id, null);
+            releaseId(id);
+            m_profiler.removeSubsystem(subsystem);
+        }
+    }
+
+    /**
+     * Un-registers all registered Subsystems with the scheduler. All currently registered subsystems
+     * will no longer have their periodic block called, and will not have their default command
+     * scheduled. The scheduler drops its references to every subsystem, registered or only
+     * required, once no command requires it.
+     */
+    public void unregisterAllSubsystems() {
+        m_subsystems.clear();
+        m_registeredSubsystems.clear();
+        m_ratePlanDirty = true;
+        Arrays.fill(m_defaultMask, 0);
+        Arrays.fill(m_defaultById, null);
+        for (int id = 0; id < m_subsystemsById.size(); id++) {
+            if (m_subsystemsById.get(id) != null) {
+                releaseId(id);
+            }
+        }
+        m_profiler.removeAllSubsystems();
+    }
+
+    private void setDefaultById(int id, Command defaultCommand) {
+        m_defaultById[id] = defaultCommand;
+        if (defaultCommand != null) {
+            m_defaultMask[id >>> 6] |= 1L << id;
+        } else {
+            m_defaultMask[id >>> 6] &= ~(1L << id);
         }
     }
     /**
@@ -291,7 +1319,12 @@ public final class CommandScheduler{
             throw new IllegalArgumentException("Default commands must require their subsystem!");
         }
 
+        if (!m_subsystems.containsKey(subsystem)) {
+            m_registeredSubsystems.add(subsystem);
+            m_ratePlanDirty = true;
+        }
         m_subsystems.put(subsystem, defaultCommand);
+        setDefaultById(registeredIdOf(subsystem), defaultCommand);
     }
 
     /**
@@ -306,7 +1339,12 @@ public final class CommandScheduler{
             return;
         }
 
+        if (!m_subsystems.containsKey(subsystem)) {
+            m_registeredSubsystems.add(subsystem);
+            m_ratePlanDirty = true;
+        }
         m_subsystems.put(subsystem, null);
+        setDefaultById(registeredIdOf(subsystem), null);
     }
     public void cancel(Command... commands) {
         for (Command command : commands) {
@@ -314,29 +1352,46 @@ public final class CommandScheduler{
         }
     }
 
+    /** Cancels all commands that are currently scheduled. */
+    public void cancelAll() {
+        //cancel() só esvazia o slot, então os índices continuam válidos durante a varredura
+        for (int i = 0; i < m_scheduledCount; i++) {
+            cancel(m_scheduledCommands[i]);
+        }
+    }
+
     private void cancel(Command command) {
         if (command == null) {
             return;
         }
-        if (m_endingCommands.contains(command)) {
+        if (command.m_ending) {
             return;
         }
         if (m_inRunLoop) {
-            m_toCancelCommands.add(command);
+            synchronized (m_toCancelCommands) {
+                m_toCancelCommands.add(command);
+            }
             return;
         }
         if (!isScheduled(command)) {
             return;
         }
 
-        m_endingCommands.add(command);
+        command.m_ending = true;
         command.end(true);
-        m_endingCommands.remove(command);
-        m_scheduledCommands.remove(command);
-        m_requirements.keySet().removeAll(command.getRequirements());
+        command.m_ending = false;
+        removeScheduled(command);
+        releaseRequirements(command);
     }
+    /**
+     * Returns whether a command is scheduled on this scheduler. A command scheduled on another
+     * scheduler is not.
+     *
+     * @param command the command
+     * @return whether the command is scheduled here
+     */
     public boolean isScheduled(Command command) {
-        return m_scheduledCommands.contains(command);
+        return command.m_slotScheduler == this;
     }
 
     /**
@@ -348,7 +1403,8 @@ public final class CommandScheduler{
      *     scheduled
      */
     public Command requiring(Subsystem subsystem) {
-        return m_requirements.get(subsystem);
+        Integer id = m_subsystemIds.get(subsystem);
+        return id != null ? m_requiringById[id] : null;
     }
     private StackTraceElement[] stripFrameworkStackElements(StackTraceElement[] stacktrace) {
         int i = stacktrace.length - 1;
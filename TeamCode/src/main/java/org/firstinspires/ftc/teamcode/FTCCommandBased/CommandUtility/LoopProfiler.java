@@ -0,0 +1,247 @@
+package org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.SubsystemUtility.Subsystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loop-time histograms for the {@link CommandScheduler}, filled while profiling is enabled with
+ * {@link CommandScheduler#setProfilingEnabled(boolean)}. The scheduler records each phase of
+ * {@link CommandScheduler#run()}, each {@link Subsystem#periodic()} and each command's
+ * execute()/isFinished() pair.
+ *
+ * <p>Subsystems get a histogram each, dropped when they are unregistered. Commands are grouped by
+ * class, so commands built anew for every use share one histogram instead of piling up. A
+ * histogram is allocated the first time its subsystem or command class is timed; recording into
+ * it allocates nothing. Not thread-safe: record and report from the thread that runs the
+ * scheduler.
+ */
+public final class LoopProfiler {
+    /** The phases of {@link CommandScheduler#run()}, in order, and the whole loop. */
+    public enum Phase {
+        HUBS,
+        SUBSYSTEMS,
+        BUTTONS,
+        COMMANDS,
+        QUEUED,
+        DEFAULTS,
+        LOOP
+    }
+
+    /**
+     * A log-linear histogram of durations in nanoseconds: every power of two is split into eight
+     * buckets, so a percentile is within 12.5% of the true value. The maximum is exact.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        // up to 2^40 ns, about 18 minutes
+        private static final int MAX_EXPONENT = 40;
+        private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+        public final String name;
+        private final long[] counts = new long[BUCKETS];
+        private long count;
+        private long max;
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            counts[Math.min(index(nanos), BUCKETS - 1)]++;
+            count++;
+            if (nanos > max) {
+                max = nanos;
+            }
+        }
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        // midpoint of the values that fall in the bucket
+        private static long value(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long lower = ((long) (SUB_BUCKETS + index % SUB_BUCKETS)) << (exponent - SUB_BUCKET_BITS);
+            return lower + (1L << (exponent - SUB_BUCKET_BITS)) / 2;
+        }
+
+        /**
+         * @param quantile between 0 and 1, e.g. 0.99
+         * @return the duration below which that fraction of the samples fall, in nanoseconds
+         */
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(value(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void reset() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            max = 0;
+        }
+    }
+
+    private final Histogram[] m_phases = new Histogram[Phase.values().length];
+    private final Map<Subsystem, Histogram> m_subsystems = new IdentityHashMap<>();
+    private final Map<Class<?>, Histogram> m_commands = new IdentityHashMap<>();
+    // in the order they were first timed, for reporting
+    private final List<Histogram> m_units = new ArrayList<>();
+
+    LoopProfiler() {
+        for (Phase phase : Phase.values()) {
+            m_phases[phase.ordinal()] = new Histogram(phase.name().toLowerCase());
+        }
+    }
+
+    /**
+     * Records the time since a phase started.
+     *
+     * @param start the {@link System#nanoTime()} the phase started at
+     * @return the current {@link System#nanoTime()}, to start the next phase from
+     */
+    long phase(Phase phase, long start) {
+        long now = System.nanoTime();
+        m_phases[phase.ordinal()].record(now - start);
+        return now;
+    }
+
+    void subsystem(Subsystem subsystem, long start) {
+        recordSubsystem(subsystem, System.nanoTime() - start);
+    }
+
+    // for units timed on a worker thread; recorded on the scheduler's thread after they are joined
+    void recordSubsystem(Subsystem subsystem, long elapsed) {
+        Histogram histogram = m_subsystems.get(subsystem);
+        if (histogram == null) {
+            histogram = new Histogram(subsystem.getName());
+            m_subsystems.put(subsystem, histogram);
+            m_units.add(histogram);
+        }
+        histogram.record(elapsed);
+    }
+
+    // the subsystem was unregistered, so it won't be timed again
+    void removeSubsystem(Subsystem subsystem) {
+        Histogram histogram = m_subsystems.remove(subsystem);
+        if (histogram != null) {
+            m_units.remove(histogram);
+        }
+    }
+
+    void removeAllSubsystems() {
+        for (Histogram histogram : m_subsystems.values()) {
+            m_units.remove(histogram);
+        }
+        m_subsystems.clear();
+    }
+
+    void command(Command command, long start) {
+        recordCommand(command, System.nanoTime() - start);
+    }
+
+    void recordCommand(Command command, long elapsed) {
+        Class<?> type = command.getClass();
+        Histogram histogram = m_commands.get(type);
+        if (histogram == null) {
+            String name = type.getSimpleName();
+            histogram = new Histogram(name.isEmpty() ? type.getName() : name);
+            m_commands.put(type, histogram);
+            m_units.add(histogram);
+        }
+        histogram.record(elapsed);
+    }
+
+    public Histogram getPhase(Phase phase) {
+        return m_phases[phase.ordinal()];
+    }
+
+    /**
+     * Returns the histogram of a subsystem's periodic(), or null if it has not been timed.
+     *
+     * @param subsystem the subsystem
+     * @return the histogram
+     */
+    public Histogram getSubsystem(Subsystem subsystem) {
+        return m_subsystems.get(subsystem);
+    }
+
+    /**
+     * Returns the histogram of execute() and isFinished() shared by the commands of a command's
+     * class, or null if none of them has been timed.
+     *
+     * @param command the command
+     * @return the histogram
+     */
+    public Histogram getCommand(Command command) {
+        return m_commands.get(command.getClass());
+    }
+
+    /**
+     * Adds p50/p99/max in milliseconds for every phase, subsystem and command to the telemetry.
+     * Wrap the telemetry in a MultipleTelemetry to show it on FTC Dashboard as well.
+     *
+     * @param telemetry the telemetry to add the lines to; update() is left to the caller
+     */
+    public void report(Telemetry telemetry) {
+        for (Histogram histogram : m_phases) {
+            add(telemetry, "phase ", histogram);
+        }
+        for (Histogram histogram : m_units) {
+            add(telemetry, "", histogram);
+        }
+    }
+
+    private static void add(Telemetry telemetry, String prefix, Histogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        telemetry.addData(prefix + histogram.name, "p50 %.3f  p99 %.3f  max %.3f ms",
+                histogram.percentile(0.5) / 1e6, histogram.percentile(0.99) / 1e6, histogram.getMax() / 1e6);
+    }
+
+    /** Clears every histogram, keeping the subsystems and command classes seen so far. */
+    public void reset() {
+        for (Histogram histogram : m_phases) {
+            histogram.reset();
+        }
+        for (Histogram histogram : m_units) {
+            histogram.reset();
+        }
+    }
+}
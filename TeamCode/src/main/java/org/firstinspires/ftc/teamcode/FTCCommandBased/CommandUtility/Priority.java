@@ -0,0 +1,22 @@
+package org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility;
+
+/**
+ * How readily the {@link CommandScheduler} may put off a subsystem's periodic() or a command's
+ * execute() when the loop is running over its target period. See {@link
+ * CommandScheduler#setLoopPeriod(double)}.
+ */
+public enum Priority {
+    /** Always runs. Use for drive control and anything else that must meet the loop deadline. */
+    CRITICAL,
+    /**
+     * The default. Runs every loop through occasional overruns; only after many overruns in a row
+     * does it run every few loops.
+     */
+    NORMAL,
+    /**
+     * Runs every few loops as soon as the loop overruns, not at all under severe overload, and is
+     * skipped in any loop that has already used up its period. Use for telemetry and dashboard
+     * drawing.
+     */
+    LOW
+}
@@ -1,10 +1,11 @@
 package org.firstinspires.ftc.teamcode.FTCCommandBased.EventUtility;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
-import java.util.LinkedHashSet;
+import java.util.List;
 
 public final class Event {
-    private final Collection<Runnable> bindings = new LinkedHashSet<>();
+    //lista indexada: o poll() roda todo loop e não deve alocar um iterador
+    private final List<Runnable> bindings = new ArrayList<>();
     private boolean running;
     public Event(){}
 
@@ -12,13 +13,17 @@ public final class Event {
         if(running){
             throw new ConcurrentModificationException("cannot bind events while running!");
         }
-        bindings.add(action);
+        if(!bindings.contains(action)){
+            bindings.add(action);
+        }
     }
     @SuppressWarnings("PMD.UnusedAssigment")
     public void poll(){
         try{
             running = true;
-            bindings.forEach(Runnable::run);
+            for(int i = 0; i < bindings.size(); i++){
+                bindings.get(i).run();
+            }
         }finally {
             running = false;
         }
@@ -0,0 +1,45 @@
+package org.firstinspires.ftc.teamcode.FTCCommandBased.HardwareUtility;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the hub I/O issued by robot code: bulk reads, and the individual hub transactions (I2C
+ * reads, IMU reads, motor writes and other LynxCommands) that bypass the bulk cache. Whoever owns
+ * a hub's bulk cache calls {@link #recordBulkRead()} for each bulk read it triggers, and device
+ * code calls {@link #recordTransaction()} around each blocking transaction. Encoder and motor
+ * state reads served from a MANUAL bulk cache are neither; they are paid for by the bulk read.
+ * The {@link org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.CommandScheduler}
+ * collects both counts once per loop.
+ */
+public final class HubIO {
+    private static final AtomicInteger transactions = new AtomicInteger();
+    private static final AtomicInteger bulkReads = new AtomicInteger();
+
+    private HubIO() {}
+
+    public static void recordTransaction() {
+        transactions.incrementAndGet();
+    }
+
+    public static void recordTransactions(int count) {
+        transactions.addAndGet(count);
+    }
+
+    public static void recordBulkRead() {
+        bulkReads.incrementAndGet();
+    }
+
+    /**
+     * @return the number of transactions recorded since the last call
+     */
+    public static int drainTransactions() {
+        return transactions.getAndSet(0);
+    }
+
+    /**
+     * @return the number of bulk reads recorded since the last call
+     */
+    public static int drainBulkReads() {
+        return bulkReads.getAndSet(0);
+    }
+}
@@ -1,7 +1,30 @@
 package org.firstinspires.ftc.teamcode.FTCCommandBased.SubsystemUtility;
 
+import org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.Priority;
+
 public interface Subsystem {
     default void periodic(){}
+    default Priority getPriority(){
+        return Priority.NORMAL;
+    }
+    /**
+     * The rate periodic() should run at, in Hz. The scheduler runs it every n-th loop of its
+     * target loop period, spread across loops with other slow subsystems; read when the subsystem
+     * is registered. 0 (the default), or no loop period set, runs it every loop.
+     */
+    default double getRateHz(){
+        return 0;
+    }
+    /**
+     * Whether periodic() may run on a worker thread of the scheduler, concurrently with other
+     * thread-safe subsystems, when {@link
+     * org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.CommandScheduler#setParallelism(int)}
+     * is on. Only return true if periodic() touches nothing but this subsystem's own state and
+     * hardware, and objects that are themselves thread-safe.
+     */
+    default boolean isThreadSafe(){
+        return false;
+    }
     default String getName(){
         return this.getClass().getSimpleName();
     }
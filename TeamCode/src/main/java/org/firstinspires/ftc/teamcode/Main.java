@@ -1,14 +1,74 @@
 package org.firstinspires.ftc.teamcode;
 
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.telemetry.MultipleTelemetry;
+import com.qualcomm.hardware.lynx.LynxModule;
+import com.qualcomm.robotcore.util.ElapsedTime;
+
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
 import org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.CommandScheduler;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.OdometryService;
+import org.firstinspires.ftc.teamcode.messages.TelemetryLog;
+
+import java.io.File;
 
 public class Main extends Robot {
+    // shows the scheduler's loop-time histograms on telemetry and FTC Dashboard
+    public static boolean PROFILE_LOOP = false;
+    public static double PROFILE_REPORT_SECONDS = 0.5;
+    // target loop period for the scheduler's deadline mode; 0 runs the loop as fast as it can
+    public static double LOOP_PERIOD_SECONDS = 0.0;
+    // worker threads for thread-safe subsystems and commands; 0 runs everything on this thread
+    public static int WORKER_THREADS = 0;
+    // rate of the drive's odometry thread; 0 updates the pose on the main loop
+    public static double ODOMETRY_RATE_HZ = 0.0;
+
     @Override
     public void runOpMode(){
+        telemetry = new MultipleTelemetry(telemetry, FtcDashboard.getInstance().getTelemetry());
         waitForStart();
-        new RobotContainer(gamepad1);
-        while(opModeIsActive()){
-            CommandScheduler.getInstance().run();
+        TelemetryLog.getInstance().start(
+                new File(AppUtil.FIRST_FOLDER, "RoadRunner/logs/" + System.currentTimeMillis() + ".rrbl"));
+        OdometryService odometry = null;
+        try {
+            new RobotContainer(gamepad1);
+            // the odometry thread claims its hubs, so registerHubs() leaves them to it
+            odometry = Constants.Instances.mecanumDrive.odometry;
+            if (odometry != null) {
+                odometry.start();
+            }
+            CommandScheduler.getInstance().registerHubs(hardwareMap.getAll(LynxModule.class));
+            CommandScheduler.getInstance().setProfilingEnabled(PROFILE_LOOP);
+            CommandScheduler.getInstance().setLoopPeriod(LOOP_PERIOD_SECONDS);
+            CommandScheduler.getInstance().setParallelism(WORKER_THREADS);
+            ElapsedTime reportTimer = new ElapsedTime();
+            while(opModeIsActive()){
+                CommandScheduler.getInstance().run();
+                if(PROFILE_LOOP && reportTimer.seconds() > PROFILE_REPORT_SECONDS){
+                    CommandScheduler.getInstance().getProfiler().report(telemetry);
+                    telemetry.addData("overruns", CommandScheduler.getInstance().getOverrunCount());
+                    telemetry.addData("shed level", CommandScheduler.getInstance().getShedLevel());
+                    telemetry.update();
+                    reportTimer.reset();
+                }
+                CommandScheduler.getInstance().waitForNextLoop();
+            }
+        } finally {
+            // also when the OpMode body throws: the scheduler and the log outlive the OpMode
+            if (odometry != null) {
+                odometry.stop();
+            }
+            try {
+                CommandScheduler.getInstance().setParallelism(0);
+                // drop this OpMode's commands, subsystems, hubs and buttons
+                CommandScheduler.getInstance().cancelAll();
+                CommandScheduler.getInstance().unregisterAllSubsystems();
+                CommandScheduler.getInstance().unregisterHubs(hardwareMap.getAll(LynxModule.class));
+                CommandScheduler.getInstance().getDefaultButtonLoop().clear();
+            } finally {
+                // a command's end() may throw too; the log file must still be closed
+                TelemetryLog.getInstance().stop();
+            }
         }
     }
 }
@@ -2,15 +2,20 @@ package org.firstinspires.ftc.teamcode.RoadRunnerCommands;
 
 import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
 import com.acmerobotics.roadrunner.Action;
+import com.acmerobotics.roadrunner.Pose2d;
 import com.acmerobotics.roadrunner.PoseVelocity2d;
 import com.acmerobotics.roadrunner.TrajectoryActionBuilder;
 import com.acmerobotics.roadrunner.Vector2d;
 
 import org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.Command;
 import org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.CommandScheduler;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.Priority;
 import org.firstinspires.ftc.teamcode.RoadRunnerUtility.MecanumDrive;
 
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public abstract class RoadRunnerAdministrator extends Command {
     /**
@@ -27,6 +32,13 @@ public abstract class RoadRunnerAdministrator extends Command {
     //prefiro usar o optional do que arriscar o
     //NullPointerException (anulamos a instância no final do comando),
     protected Optional<TrajectoryActionBuilder> instance = Optional.empty();
+    //a action construída a partir da instância. Ela é gerada uma única vez por execução do comando.
+    private Optional<Action> action = Optional.empty();
+    //a action pré-compilada na thread de trabalho, com a posição inicial usada na sua construção,
+    //e o próximo comando da sequência, que será pré-compilado quando este começar.
+    private Optional<Future<Action>> precompiled = Optional.empty();
+    private Optional<Pose2d> predictedBegin = Optional.empty();
+    private Optional<RoadRunnerAdministrator> next = Optional.empty();
     private final TelemetryPacket telemetryPacket = new TelemetryPacket();
     private final MecanumDrive mecanumDrive;
     private boolean inTrajectory = false;
@@ -44,11 +56,30 @@ public abstract class RoadRunnerAdministrator extends Command {
      * Posteriormente, alocamos a posição atual das rodas mecanum à variáveal de construção
      * dos caminhos (agora, nossa posição inicial é a posição recuperada pelo localizador
      * do chassi mecanum).
+     * <p>
+     *     Em seguida, o caminho é acrescido pelo métod0 {@link #path(TrajectoryActionBuilder)} e a action
+     *     é construída uma única vez. A construção envolve o ajuste das splines, a parametrização
+     *     por comprimento de arco e a geração do perfil de tempo, e por isso não pode ser repetida a
+     *     cada iteração do scheduler: além do custo, cada nova FollowTrajectoryAction reiniciaria o
+     *     seu beginTs, e a trajetória nunca avançaria.
+     * </p>
+     * <p>
+     *     Se o comando foi pré-compilado (veja {@link #precompile(Pose2d)}) a partir de uma posição
+     *     próxima da atual, a action pronta é usada e a construção bloqueante é evitada. Por fim,
+     *     o próximo comando da sequência começa a ser pré-compilado a partir da posição final
+     *     prevista deste.
+     * </p>
      */
     @Override
     protected void initialize() {
         inTrajectory = true;
-        instance = Optional.of(getBase());
+        Pose2d begin = mecanumDrive.localizer.getPose();
+        action = takePrecompiled(begin);
+        if (!action.isPresent()) {
+            instance = Optional.of(path(getBase()));
+            action = Optional.of(instance.get().build());
+        }
+        next.ifPresent(command -> command.precompile(predictEnd(begin)));
     }
 
     /**
@@ -83,8 +114,7 @@ public abstract class RoadRunnerAdministrator extends Command {
 
     @Override
     protected void execute() {
-        //TelemetryPacket telemetryPacket = new TelemetryPacket();
-        inTrajectory = instance.get().build().run(telemetryPacket);
+        inTrajectory = action.get().run(telemetryPacket);
     }
 
     /**
@@ -93,6 +123,7 @@ public abstract class RoadRunnerAdministrator extends Command {
     @Override
     protected void end(boolean interrupted) {
         instance = Optional.empty();
+        action = Optional.empty();
         mecanumDrive.setDrivePowers(new PoseVelocity2d(new Vector2d(0.0, 0.0), 0.0));
     }
 
@@ -109,6 +140,90 @@ public abstract class RoadRunnerAdministrator extends Command {
         return !inTrajectory;
     }
 
+    /**
+     * O seguidor de trajetória é o controle do chassi: ele nunca é adiado pelo CommandScheduler,
+     * mesmo quando o loop estoura o período alvo.
+     * @see CommandScheduler#setLoopPeriod(double)
+     */
+    @Override
+    public Priority getPriority() {
+        return Priority.CRITICAL;
+    }
+
+    /**
+     * Acrescenta ao construtor base os movimentos do comando. As classes geradas pela
+     * {@link RoadRunnerFactory} sobrepõem esse métod0; por padrão, o caminho é vazio.
+     * @param base o construtor iniciado na posição atual do robô
+     * @return o construtor com os movimentos do comando
+     */
+    protected TrajectoryActionBuilder path(TrajectoryActionBuilder base) {
+        return base;
+    }
+
+    /**
+     * Prevê a posição final do caminho, usada como posição inicial do próximo comando na
+     * pré-compilação. Por padrão, o comando não desloca o robô.
+     * @param begin a posição inicial do caminho
+     * @return a posição final prevista
+     */
+    protected Pose2d predictEnd(Pose2d begin) {
+        return begin;
+    }
+
+    /**
+     * Começa a construir a action deste comando na thread do {@link TrajectoryPrecompiler},
+     * a partir de uma posição inicial prevista.
+     * @param predictedBegin a posição em que o robô deve estar quando o comando começar
+     * @return este comando, para encadear chamadas
+     */
+    public RoadRunnerAdministrator precompile(Pose2d predictedBegin) {
+        precompiled.ifPresent(future -> future.cancel(false));
+        this.predictedBegin = Optional.of(predictedBegin);
+        precompiled = Optional.of(TrajectoryPrecompiler.getInstance().submit(
+                () -> path(mecanumDrive.actionBuilder(predictedBegin)).build()));
+        return this;
+    }
+
+    /**
+     * Define o comando que será pré-compilado quando este começar.
+     * @param next o comando seguinte na sequência
+     * @return este comando, para encadear chamadas
+     */
+    public RoadRunnerAdministrator precompileNext(RoadRunnerAdministrator next) {
+        this.next = Optional.of(next);
+        return this;
+    }
+
+    /**
+     * Recupera a action pré-compilada, caso a posição prevista esteja dentro das tolerâncias
+     * do {@link TrajectoryPrecompiler} e a construção já tenha terminado. Nunca esperamos pela
+     * thread de trabalho: ela pode estar ocupada com outro caminho da fila, e o loop do
+     * scheduler não pode ficar parado por um tempo que não controlamos. Se a construção ainda
+     * não terminou, ela é cancelada e o caminho é construído aqui mesmo.
+     * @param begin a posição atual do robô
+     * @return a action pré-compilada, ou vazio se for preciso construir o caminho novamente
+     */
+    private Optional<Action> takePrecompiled(Pose2d begin) {
+        Optional<Future<Action>> future = precompiled;
+        precompiled = Optional.empty();
+        if (!future.isPresent()) {
+            return Optional.empty();
+        }
+        if (!future.get().isDone() || !TrajectoryPrecompiler.withinTolerance(predictedBegin.get(), begin)) {
+            future.get().cancel(false);
+            return Optional.empty();
+        }
+        try {
+            //já terminou, então get() não bloqueia
+            return Optional.of(future.get().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException | CancellationException e) {
+            return Optional.empty();
+        }
+    }
+
     /**
      * @return a posição atual do localizador
      */
@@ -3,8 +3,10 @@ package org.firstinspires.ftc.teamcode.RoadRunnerCommands;
 import static org.firstinspires.ftc.teamcode.Constants.Instances.mecanumDrive;
 import com.acmerobotics.roadrunner.Pose2d;
 import com.acmerobotics.roadrunner.Rotation2d;
+import com.acmerobotics.roadrunner.TrajectoryActionBuilder;
+import com.acmerobotics.roadrunner.Vector2d;
 
-import java.util.Optional;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.SequentialCommandGroup;
 
 public class RoadRunnerFactory{
     /**
@@ -17,8 +19,8 @@ public class RoadRunnerFactory{
     * do robõ (os movimetnos lineares efetuarão deslocamentos, os movimentos posicionais
     * gerarão uma linha entre a psoição atual do robô e o alvo).
     * Nessa classe, os comportamentos são manipulados a partir dos mé\todos esoclhidos.
-    * Após a escolha, a instância será sobreposta com o próprio valor acrescido da action
-    * abstraída.
+    * Após a escolha, o métod0 path() acrescenta ao valor base a action abstraída, e a
+    * superclasse constrói a action uma única vez no initialize().
     * Isso deve gerar o seguinte comportamento: Todas as vezes que o initialize() for executado,
     * a instância será sobreacarregada com o valor base. Esse valor base recuperará a posição
     * atual do robõ para o construtor da classe MecanumDrive, repassando a própria posição
@@ -31,28 +33,52 @@ public class RoadRunnerFactory{
     public static RoadRunnerAdministrator lineToX(double x){
         return new RoadRunnerAdministrator(mecanumDrive){
             @Override
-            protected void initialize() {
-                super.initialize();
-                instance = Optional.of(instance.get().lineToX(x));
+            protected TrajectoryActionBuilder path(TrajectoryActionBuilder base) {
+                return base.lineToX(x);
+            }
+
+            @Override
+            protected Pose2d predictEnd(Pose2d begin) {
+                return new Pose2d(new Vector2d(x, begin.position.y), begin.heading);
             }
         };
     }
     public static RoadRunnerAdministrator lineToY(double y){
         return new RoadRunnerAdministrator(mecanumDrive){
             @Override
-            protected void initialize() {
-                super.initialize();
-                instance = Optional.of(instance.get().lineToY(y));
+            protected TrajectoryActionBuilder path(TrajectoryActionBuilder base) {
+                return base.lineToY(y);
+            }
+
+            @Override
+            protected Pose2d predictEnd(Pose2d begin) {
+                return new Pose2d(new Vector2d(begin.position.x, y), begin.heading);
             }
         };
     }
     public static RoadRunnerAdministrator splineToLinearHeading(Pose2d pose, Rotation2d tangent){
         return new RoadRunnerAdministrator(mecanumDrive){
             @Override
-            protected void initialize() {
-                super.initialize();
-                instance = Optional.of(instance.get().splineToLinearHeading(pose, tangent));
+            protected TrajectoryActionBuilder path(TrajectoryActionBuilder base) {
+                return base.splineToLinearHeading(pose, tangent);
+            }
+
+            @Override
+            protected Pose2d predictEnd(Pose2d begin) {
+                return pose;
             }
         };
     }
+
+    /**
+     * Encadeia os comandos de trajetória em sequência. Quando cada comando começa, o seguinte
+     * é pré-compilado em segundo plano a partir da posição final prevista do atual, evitando
+     * a iteração longa do scheduler na troca de segmentos.
+     */
+    public static SequentialCommandGroup sequence(RoadRunnerAdministrator... commands){
+        for (int i = 0; i + 1 < commands.length; i++) {
+            commands[i].precompileNext(commands[i + 1]);
+        }
+        return new SequentialCommandGroup(commands);
+    }
 }
@@ -0,0 +1,67 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerCommands;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.Action;
+import com.acmerobotics.roadrunner.Pose2d;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@Config
+public final class TrajectoryPrecompiler {
+    /**
+     * Essa classe constrói as actions dos comandos de trajetória em uma thread separada,
+     * enquanto o robô ainda executa o segmento anterior. A construção parte de uma posição
+     * inicial prevista; se, no initialize() do comando, a posição real do robô estiver fora
+     * das tolerâncias abaixo, ou se a construção ainda não tiver terminado, a action
+     * pré-compilada é descartada e o comando volta a construir o caminho de forma bloqueante.
+     * Só existe uma thread de trabalho, então os segmentos são construídos na ordem em que
+     * foram pedidos.
+     */
+    public static class Params {
+        // tolerâncias para aceitar a posição prevista (em polegadas e radianos)
+        public double positionTolerance = 1.0;
+        public double headingTolerance = Math.toRadians(5.0);
+    }
+
+    public static Params PARAMS = new Params();
+
+    private static TrajectoryPrecompiler instance;
+
+    public static synchronized TrajectoryPrecompiler getInstance() {
+        if (instance == null) {
+            instance = new TrajectoryPrecompiler();
+        }
+        return instance;
+    }
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TrajectoryPrecompiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private TrajectoryPrecompiler() {}
+
+    /**
+     * Agenda a construção de uma action na thread de trabalho.
+     * @param build a construção da action, a partir da posição prevista
+     * @return o resultado futuro da construção
+     */
+    public Future<Action> submit(Callable<Action> build) {
+        return worker.submit(build);
+    }
+
+    /**
+     * @param predicted a posição inicial usada na pré-compilação
+     * @param actual a posição do robô no início do comando
+     * @return verdadeiro se a action pré-compilada ainda pode ser usada
+     */
+    public static boolean withinTolerance(Pose2d predicted, Pose2d actual) {
+        Pose2d error = predicted.minusExp(actual);
+        return error.position.norm() <= PARAMS.positionTolerance
+                && Math.abs(error.heading.toDouble()) <= PARAMS.headingTolerance;
+    }
+}
@@ -19,4 +19,24 @@ public final class Drawing {
         Vector2d p2 = p1.plus(halfv);
         c.strokeLine(p1.x, p1.y, p2.x, p2.y);
     }
+
+    /**
+     * Strokes at most maxPoints of the history, evenly strided and ending at the newest pose.
+     * The canvas keeps the arrays until its packet is sent, so they are allocated per call.
+     */
+    public static void drawPoseHistory(Canvas c, PoseHistory history, int maxPoints) {
+        int size = history.size();
+        int stride = Math.max(1, (size + maxPoints - 1) / maxPoints);
+        int n = size == 0 ? 0 : (size - 1) / stride + 1;
+
+        double[] xPoints = new double[n];
+        double[] yPoints = new double[n];
+        for (int i = 0; i < n; i++) {
+            int index = size - 1 - (n - 1 - i) * stride;
+            xPoints[i] = history.x(index);
+            yPoints[i] = history.y(index);
+        }
+
+        c.strokePolyline(xPoints, yPoints);
+    }
 }
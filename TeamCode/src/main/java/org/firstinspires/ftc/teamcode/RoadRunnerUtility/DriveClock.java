@@ -0,0 +1,45 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import com.acmerobotics.roadrunner.Actions;
+
+/**
+ * Time source for the drive actions. On the robot this is {@link Actions#now()}; the simulator
+ * swaps in its own clock so trajectories can be followed faster than real time.
+ */
+public final class DriveClock {
+    public interface Source {
+        /**
+         * @return the current time in seconds
+         */
+        double now();
+    }
+
+    private static final Source WALL = Actions::now;
+
+    private static volatile Source source = WALL;
+
+    private DriveClock() {}
+
+    public static double now() {
+        return source.now();
+    }
+
+    /**
+     * @return the current time in nanoseconds, on the same clock as {@link #now()}; on the robot
+     * this matches {@link System#nanoTime()}
+     */
+    public static long nanoTime() {
+        return Math.round(source.now() * 1e9);
+    }
+
+    public static void set(Source source) {
+        DriveClock.source = source;
+    }
+
+    /**
+     * Restores the wall clock.
+     */
+    public static void reset() {
+        source = WALL;
+    }
+}
@@ -0,0 +1,268 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.Pose2d;
+import com.acmerobotics.roadrunner.PoseVelocity2d;
+import com.acmerobotics.roadrunner.Vector2d;
+
+/**
+ * Extended Kalman filter over the robot pose that fuses the motion reported by several
+ * localizers with absolute pose measurements (e.g. AprilTags).
+ * <p>
+ * Each update, the robot-frame increment of every source localizer is combined by weight and
+ * used as the prediction step. Absolute measurements are applied as update steps. All filter math
+ * runs on preallocated 3x3 arrays.
+ * <p>
+ * The covariance starts from PARAMS' initial standard deviations on every setPose() and grows with
+ * both motion and time, so a measurement is weighed in even when the robot has not moved.
+ */
+@Config
+public final class FusedLocalizer implements Localizer {
+    public static class Params {
+        // process noise added per unit of motion (variance per inch / per radian travelled)
+        public double translationNoise = 0.01;
+        public double headingNoise = 0.001;
+
+        // process noise added per second, so a still robot's estimate loosens too
+        public double translationNoisePerSecond = 0.05;
+        public double headingNoisePerSecond = 0.0005;
+
+        // uncertainty of a pose passed to setPose() (in inches and radians)
+        public double initialPositionStdDev = 1.0;
+        public double initialHeadingStdDev = Math.toRadians(2.0);
+
+        // absolute measurement standard deviations (in inches and radians)
+        public double measurementPositionStdDev = 2.0;
+        public double measurementHeadingStdDev = Math.toRadians(3.0);
+    }
+
+    public static Params PARAMS = new Params();
+
+    public final Localizer[] sources;
+    private final double[] weights;
+
+    // last pose reported by each source
+    private final double[] lastX, lastY, lastHeading;
+    private boolean initialized;
+    private double lastTime;
+
+    // filter state and covariance (row-major 3x3)
+    private double x, y, heading;
+    private final double[] covariance = new double[9];
+
+    // scratch matrices
+    private final double[] jacobian = new double[9];
+    private final double[] tmp = new double[9];
+    private final double[] innovationCov = new double[9];
+    private final double[] inverse = new double[9];
+    private final double[] gain = new double[9];
+
+    private Pose2d pose;
+
+    public FusedLocalizer(Pose2d initialPose, Localizer... sources) {
+        this(initialPose, sources, equalWeights(sources.length));
+    }
+
+    /**
+     * @param weights relative trust in each source's motion; normalized internally
+     */
+    public FusedLocalizer(Pose2d initialPose, Localizer[] sources, double[] weights) {
+        if (sources.length == 0 || sources.length != weights.length) {
+            throw new IllegalArgumentException("need one weight per source and at least one source");
+        }
+        this.sources = sources;
+
+        double total = 0;
+        for (double w : weights) {
+            total += w;
+        }
+        this.weights = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            this.weights[i] = weights[i] / total;
+        }
+
+        lastX = new double[sources.length];
+        lastY = new double[sources.length];
+        lastHeading = new double[sources.length];
+
+        setPose(initialPose);
+    }
+
+    private static double[] equalWeights(int n) {
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = 1.0;
+        }
+        return weights;
+    }
+
+    @Override
+    public void setPose(Pose2d pose) {
+        this.pose = pose;
+        x = pose.position.x;
+        y = pose.position.y;
+        heading = pose.heading.toDouble();
+        for (int i = 0; i < 9; i++) {
+            covariance[i] = 0;
+        }
+        covariance[0] = PARAMS.initialPositionStdDev * PARAMS.initialPositionStdDev;
+        covariance[4] = covariance[0];
+        covariance[8] = PARAMS.initialHeadingStdDev * PARAMS.initialHeadingStdDev;
+    }
+
+    @Override
+    public Pose2d getPose() {
+        return pose;
+    }
+
+    @Override
+    public PoseVelocity2d update() {
+        double vx = 0, vy = 0, omega = 0;
+        for (int i = 0; i < sources.length; i++) {
+            PoseVelocity2d vel = sources[i].update();
+            vx += weights[i] * vel.linearVel.x;
+            vy += weights[i] * vel.linearVel.y;
+            omega += weights[i] * vel.angVel;
+        }
+        predictFromSources(DriveClock.now());
+
+        return new PoseVelocity2d(new Vector2d(vx, vy), omega);
+    }
+
+    /**
+     * Runs the prediction step from the sources' current poses without updating the sources, for
+     * sources that were updated elsewhere, e.g. replayed from a log by {@link LocalizerReplay}.
+     *
+     * @param timeSeconds when the sources' latest readings were taken, on the clock of
+     *                    {@link DriveClock#now()}
+     */
+    public void predictFromSources(double timeSeconds) {
+        double dx = 0, dy = 0, dHeading = 0;
+        for (int i = 0; i < sources.length; i++) {
+            Pose2d p = sources[i].getPose();
+
+            double px = p.position.x, py = p.position.y, ph = p.heading.toDouble();
+            if (initialized) {
+                // increment in the source's previous robot frame
+                double cos = Math.cos(lastHeading[i]), sin = Math.sin(lastHeading[i]);
+                double wx = px - lastX[i], wy = py - lastY[i];
+                dx += weights[i] * (cos * wx + sin * wy);
+                dy += weights[i] * (-sin * wx + cos * wy);
+                dHeading += weights[i] * angleWrap(ph - lastHeading[i]);
+            }
+            lastX[i] = px;
+            lastY[i] = py;
+            lastHeading[i] = ph;
+        }
+
+        if (initialized) {
+            predict(dx, dy, dHeading, Math.max(0, timeSeconds - lastTime));
+        }
+        lastTime = timeSeconds;
+        initialized = true;
+    }
+
+    private void predict(double dx, double dy, double dHeading, double dt) {
+        double cos = Math.cos(heading), sin = Math.sin(heading);
+
+        x += cos * dx - sin * dy;
+        y += sin * dx + cos * dy;
+        heading = angleWrap(heading + dHeading);
+
+        // P = F P F^T + Q
+        jacobian[0] = 1; jacobian[1] = 0; jacobian[2] = -sin * dx - cos * dy;
+        jacobian[3] = 0; jacobian[4] = 1; jacobian[5] = cos * dx - sin * dy;
+        jacobian[6] = 0; jacobian[7] = 0; jacobian[8] = 1;
+        multiply(jacobian, covariance, tmp);
+        multiplyTransposed(tmp, jacobian, covariance);
+
+        double distance = Math.hypot(dx, dy);
+        double translationNoise = PARAMS.translationNoise * distance + PARAMS.translationNoisePerSecond * dt;
+        covariance[0] += translationNoise;
+        covariance[4] += translationNoise;
+        covariance[8] += PARAMS.headingNoise * Math.abs(dHeading) + PARAMS.headingNoisePerSecond * dt;
+
+        pose = new Pose2d(x, y, heading);
+    }
+
+    /**
+     * Fuses an absolute pose measurement taken now, with the standard deviations in PARAMS.
+     */
+    public void addMeasurement(Pose2d measuredPose) {
+        addMeasurement(measuredPose, PARAMS.measurementPositionStdDev, PARAMS.measurementHeadingStdDev);
+    }
+
+    public void addMeasurement(Pose2d measuredPose, double positionStdDev, double headingStdDev) {
+        // S = P + R
+        System.arraycopy(covariance, 0, innovationCov, 0, 9);
+        innovationCov[0] += positionStdDev * positionStdDev;
+        innovationCov[4] += positionStdDev * positionStdDev;
+        innovationCov[8] += headingStdDev * headingStdDev;
+        if (!invert(innovationCov, inverse)) {
+            return;
+        }
+
+        // K = P S^-1
+        multiply(covariance, inverse, gain);
+
+        double ix = measuredPose.position.x - x;
+        double iy = measuredPose.position.y - y;
+        double ih = angleWrap(measuredPose.heading.toDouble() - heading);
+
+        x += gain[0] * ix + gain[1] * iy + gain[2] * ih;
+        y += gain[3] * ix + gain[4] * iy + gain[5] * ih;
+        heading = angleWrap(heading + gain[6] * ix + gain[7] * iy + gain[8] * ih);
+
+        // P = (I - K) P
+        multiply(gain, covariance, tmp);
+        for (int i = 0; i < 9; i++) {
+            covariance[i] -= tmp[i];
+        }
+
+        pose = new Pose2d(x, y, heading);
+    }
+
+    private static double angleWrap(double angle) {
+        return Math.atan2(Math.sin(angle), Math.cos(angle));
+    }
+
+    // out = a b
+    private static void multiply(double[] a, double[] b, double[] out) {
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 3; c++) {
+                out[3 * r + c] = a[3 * r] * b[c] + a[3 * r + 1] * b[3 + c] + a[3 * r + 2] * b[6 + c];
+            }
+        }
+    }
+
+    // out = a b^T
+    private static void multiplyTransposed(double[] a, double[] b, double[] out) {
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 3; c++) {
+                out[3 * r + c] = a[3 * r] * b[3 * c] + a[3 * r + 1] * b[3 * c + 1] + a[3 * r + 2] * b[3 * c + 2];
+            }
+        }
+    }
+
+    private static boolean invert(double[] m, double[] out) {
+        double c0 = m[4] * m[8] - m[5] * m[7];
+        double c1 = m[5] * m[6] - m[3] * m[8];
+        double c2 = m[3] * m[7] - m[4] * m[6];
+        double det = m[0] * c0 + m[1] * c1 + m[2] * c2;
+        if (Math.abs(det) < 1e-12) {
+            return false;
+        }
+
+        double invDet = 1.0 / det;
+        out[0] = c0 * invDet;
+        out[1] = (m[2] * m[7] - m[1] * m[8]) * invDet;
+        out[2] = (m[1] * m[5] - m[2] * m[4]) * invDet;
+        out[3] = c1 * invDet;
+        out[4] = (m[0] * m[8] - m[2] * m[6]) * invDet;
+        out[5] = (m[2] * m[3] - m[0] * m[5]) * invDet;
+        out[6] = c2 * invDet;
+        out[7] = (m[1] * m[6] - m[0] * m[7]) * invDet;
+        out[8] = (m[0] * m[4] - m[1] * m[3]) * invDet;
+        return true;
+    }
+}
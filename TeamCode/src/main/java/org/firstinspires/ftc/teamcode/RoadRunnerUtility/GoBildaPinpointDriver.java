@@ -35,10 +35,10 @@ import com.qualcomm.robotcore.util.TypeConversion;
 import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.Pose2D;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.HardwareUtility.HubIO;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Arrays;
 
 
 @I2cDeviceType
@@ -61,12 +61,22 @@ public class GoBildaPinpointDriver extends I2cDeviceSynchDevice<I2cDeviceSynchSi
     private float yVelocity    = 0;
     private float hVelocity    = 0;
 
+    private int lastReadLength = 0;
+    private boolean lastReadComplete = true;
+    private int failedReads = 0;
+
     private static final float goBILDA_SWINGARM_POD = 13.26291192f; //ticks-per-mm for the goBILDA Swingarm Pod
     private static final float goBILDA_4_BAR_POD    = 19.89436789f; //ticks-per-mm for the goBILDA 4-Bar Pod
 
     //i2c address of the device
     public static final byte DEFAULT_ADDRESS = 0x31;
 
+    //length of the BULK_READ block, in bytes
+    private static final int BULK_READ_LENGTH = 40;
+
+    //reused for every read, so decoding does not allocate
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(BULK_READ_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+
     public GoBildaPinpointDriver(I2cDeviceSynchSimple deviceClient, boolean deviceClientIsOwned) {
         super(deviceClient, deviceClientIsOwned);
 
@@ -153,6 +163,84 @@ public class GoBildaPinpointDriver extends I2cDeviceSynchDevice<I2cDeviceSynchSi
         ONLY_UPDATE_HEADING,
     }
 
+    //fields of the BULK_READ block, with their byte offset in the block and their own register
+    public enum Field {
+        DEVICE_STATUS (0,  Register.DEVICE_STATUS),
+        LOOP_TIME     (4,  Register.LOOP_TIME),
+        X_ENCODER     (8,  Register.X_ENCODER_VALUE),
+        Y_ENCODER     (12, Register.Y_ENCODER_VALUE),
+        X_POSITION    (16, Register.X_POSITION),
+        Y_POSITION    (20, Register.Y_POSITION),
+        H_ORIENTATION (24, Register.H_ORIENTATION),
+        X_VELOCITY    (28, Register.X_VELOCITY),
+        Y_VELOCITY    (32, Register.Y_VELOCITY),
+        H_VELOCITY    (36, Register.H_VELOCITY);
+
+        private final int offset;
+        private final Register register;
+
+        Field(int offset, Register register){
+            this.offset = offset;
+            this.register = register;
+        }
+    }
+
+    //cached because values() copies the array on every call
+    private static final Field[] FIELDS = Field.values();
+
+    /**
+     * The set of fields a caller needs from each update, and the smallest read that covers them.<br><br>
+     * A single field is read from its own 4 byte register. Several fields are read as a prefix of the
+     * BULK_READ block, cut after the last field needed. Fields outside the plan keep their last value.
+     */
+    public static final class ReadPlan {
+        public static final ReadPlan ALL = of(Field.values());
+        public static final ReadPlan HEADING = of(Field.H_ORIENTATION);
+        public static final ReadPlan ENCODERS = of(Field.DEVICE_STATUS, Field.X_ENCODER, Field.Y_ENCODER);
+        public static final ReadPlan POSITION = of(Field.DEVICE_STATUS, Field.X_POSITION, Field.Y_POSITION, Field.H_ORIENTATION);
+
+        private final int mask;
+        private final Register register;
+        private final int start;
+        private final int length;
+
+        private ReadPlan(int mask, Register register, int start, int length){
+            this.mask = mask;
+            this.register = register;
+            this.start = start;
+            this.length = length;
+        }
+
+        public static ReadPlan of(Field... fields){
+            if (fields.length == 0) {
+                throw new IllegalArgumentException("a read plan needs at least one field");
+            }
+            int mask = 0;
+            Field last = fields[0];
+            for (Field f : fields) {
+                mask |= 1 << f.ordinal();
+                if (f.offset > last.offset) {
+                    last = f;
+                }
+            }
+            if (Integer.bitCount(mask) == 1) {
+                return new ReadPlan(mask, last.register, last.offset, 4);
+            }
+            return new ReadPlan(mask, Register.BULK_READ, 0, last.offset + 4);
+        }
+
+        public boolean includes(Field field){
+            return (mask & (1 << field.ordinal())) != 0;
+        }
+
+        /**
+         * @return the number of bytes read from the device per update with this plan
+         */
+        public int getReadLength(){
+            return length;
+        }
+    }
+
 
     /** Writes an int to the i2c device
     @param reg the register to write the int to
@@ -255,31 +343,123 @@ public class GoBildaPinpointDriver extends I2cDeviceSynchDevice<I2cDeviceSynchSi
      * Call this once per loop to read new data from the Odometry Computer. Data will only update once this is called.
      */
     public void update(){
-        byte[] bArr   = deviceClient.read(Register.BULK_READ.bVal, 40);
-        deviceStatus  = byteArrayToInt(Arrays.copyOfRange  (bArr, 0, 4),  ByteOrder.LITTLE_ENDIAN);
-        loopTime      = byteArrayToInt(Arrays.copyOfRange  (bArr, 4, 8),  ByteOrder.LITTLE_ENDIAN);
-        xEncoderValue = byteArrayToInt(Arrays.copyOfRange  (bArr, 8, 12), ByteOrder.LITTLE_ENDIAN);
-        yEncoderValue = byteArrayToInt(Arrays.copyOfRange  (bArr, 12,16), ByteOrder.LITTLE_ENDIAN);
-        xPosition     = byteArrayToFloat(Arrays.copyOfRange(bArr, 16,20), ByteOrder.LITTLE_ENDIAN);
-        yPosition     = byteArrayToFloat(Arrays.copyOfRange(bArr, 20,24), ByteOrder.LITTLE_ENDIAN);
-        hOrientation  = byteArrayToFloat(Arrays.copyOfRange(bArr, 24,28), ByteOrder.LITTLE_ENDIAN);
-        xVelocity     = byteArrayToFloat(Arrays.copyOfRange(bArr, 28,32), ByteOrder.LITTLE_ENDIAN);
-        yVelocity     = byteArrayToFloat(Arrays.copyOfRange(bArr, 32,36), ByteOrder.LITTLE_ENDIAN);
-        hVelocity     = byteArrayToFloat(Arrays.copyOfRange(bArr, 36,40), ByteOrder.LITTLE_ENDIAN);
+        byte[] bArr   = deviceClient.read(Register.BULK_READ.bVal, BULK_READ_LENGTH);
+        HubIO.recordTransaction();
+        lastReadLength = bArr.length;
+        recordRead(decodeBulkRead(bArr));
+    }
+
+    /**
+     * Decodes a BULK_READ block into the cached fields. The block is copied into a reused
+     * little-endian buffer and read with absolute gets, so decoding allocates nothing.
+     * Public so decoding can be benchmarked apart from the I2C read.
+     * @param bArr the bytes read from the BULK_READ register
+     * @return false if the block was short, in which case no field is updated
+     */
+    public boolean decodeBulkRead(byte[] bArr){
+        if (bArr.length < BULK_READ_LENGTH){
+            return false;
+        }
+        ByteBuffer b  = fillReadBuffer(bArr, BULK_READ_LENGTH);
+        deviceStatus  = b.getInt(0);
+        loopTime      = b.getInt(4);
+        xEncoderValue = b.getInt(8);
+        yEncoderValue = b.getInt(12);
+        xPosition     = b.getFloat(16);
+        yPosition     = b.getFloat(20);
+        hOrientation  = b.getFloat(24);
+        xVelocity     = b.getFloat(28);
+        yVelocity     = b.getFloat(32);
+        hVelocity     = b.getFloat(36);
+        return true;
+    }
+
+    //only called with a full read, so nothing left in the buffer from an earlier read gets decoded
+    private ByteBuffer fillReadBuffer(byte[] bytes, int length){
+        System.arraycopy(bytes, 0, readBuffer.array(), 0, length);
+        return readBuffer;
+    }
+
+    private void recordRead(boolean complete){
+        lastReadComplete = complete;
+        if (!complete){
+            failedReads++;
+        }
+    }
+
+    /**
+     * Call this once per loop to read only the fields in a read plan from the Odometry Computer.
+     * Reading less of the device shortens the I2C transaction; fields outside the plan are not updated.
+     * @param plan the fields to read, see ReadPlan
+     */
+    public void update(ReadPlan plan){
+        byte[] bArr = deviceClient.read(plan.register.bVal, plan.length);
+        HubIO.recordTransaction();
+        lastReadLength = bArr.length;
+        recordRead(decodeFields(bArr, plan));
+    }
+
+    boolean decodeFields(byte[] bArr, ReadPlan plan){
+        if (bArr.length < plan.length){
+            return false;
+        }
+        ByteBuffer b = fillReadBuffer(bArr, plan.length);
+        for (Field f : FIELDS) {
+            if (!plan.includes(f)) {
+                continue;
+            }
+            int i = f.offset - plan.start;
+            switch (f) {
+                case DEVICE_STATUS: deviceStatus  = b.getInt(i);   break;
+                case LOOP_TIME:     loopTime      = b.getInt(i);   break;
+                case X_ENCODER:     xEncoderValue = b.getInt(i);   break;
+                case Y_ENCODER:     yEncoderValue = b.getInt(i);   break;
+                case X_POSITION:    xPosition     = b.getFloat(i); break;
+                case Y_POSITION:    yPosition     = b.getFloat(i); break;
+                case H_ORIENTATION: hOrientation  = b.getFloat(i); break;
+                case X_VELOCITY:    xVelocity     = b.getFloat(i); break;
+                case Y_VELOCITY:    yVelocity     = b.getFloat(i); break;
+                case H_VELOCITY:    hVelocity     = b.getFloat(i); break;
+            }
+        }
+        return true;
     }
 
     /**
      * Call this once per loop to read new data from the Odometry Computer. This is an override of the update() function
      * which allows a narrower range of data to be read from the device for faster read times. Currently ONLY_UPDATE_HEADING
-     * is supported.
+     * is supported; see update(ReadPlan) for other subsets.
      * @param data GoBildaPinpointDriver.readData.ONLY_UPDATE_HEADING
      */
     public void update(readData data) {
         if (data == readData.ONLY_UPDATE_HEADING) {
-            hOrientation = byteArrayToFloat(deviceClient.read(Register.H_ORIENTATION.bVal, 4), ByteOrder.LITTLE_ENDIAN);
+            update(ReadPlan.HEADING);
         }
     }
 
+    /**
+     * @return the number of bytes read from the device by the last update
+     */
+    public int getLastReadLength(){
+        return lastReadLength;
+    }
+
+    /**
+     * A read shorter than requested (a dropped or cut-off I2C transfer) is discarded: every field
+     * keeps its previous value.
+     * @return false if the last update got fewer bytes than it asked for
+     */
+    public boolean isLastReadComplete(){
+        return lastReadComplete;
+    }
+
+    /**
+     * @return the number of updates discarded because the device returned a short read
+     */
+    public int getFailedReadCount(){
+        return failedReads;
+    }
+
     /**
      * Sets the odometry pod positions relative to the point that the odometry computer tracks around.<br><br>
      * The most common tracking position is the center of the robot. <br> <br>
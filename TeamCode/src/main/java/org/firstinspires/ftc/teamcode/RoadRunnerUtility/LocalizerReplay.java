@@ -0,0 +1,126 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import com.acmerobotics.roadrunner.Pose2d;
+
+import org.firstinspires.ftc.teamcode.messages.BinaryLogReader;
+import org.firstinspires.ftc.teamcode.messages.PoseMessage;
+
+/**
+ * Streams the localizer inputs recorded in a binary log back through a localizer, as fast as it
+ * can, and compares the result against the ESTIMATED_POSE logged alongside them.
+ * <p>
+ * The replayed localizer is seeded with the first logged pose. Any correction applied on the
+ * robot after the localizer (MecanumDrive.correctPose(), a FusedLocalizer's measurements) shows
+ * up as error, so replay logs of uncorrected odometry when regression-testing localizer math.
+ * A FusedLocalizer is replayed through one of its sources with {@link #fused}.
+ */
+public final class LocalizerReplay {
+    public interface Step {
+        /**
+         * Feeds one recorded inputs record to the localizer.
+         */
+        void update(BinaryLogReader.Record inputs);
+    }
+
+    public interface SourceStep {
+        /**
+         * Feeds one recorded inputs record to a source localizer.
+         *
+         * @return the record's timestamp, in {@link System#nanoTime()} nanoseconds
+         */
+        long update(BinaryLogReader.Record inputs);
+    }
+
+    public static final class Result {
+        public final int samples;
+        public final int comparisons;
+        public final double maxPositionError;
+        public final double rmsPositionError;
+        public final double maxHeadingError;
+        public final long elapsedNanos;
+        public final long loggedNanos;
+
+        private Result(int samples, int comparisons, double maxPositionError, double rmsPositionError,
+                       double maxHeadingError, long elapsedNanos, long loggedNanos) {
+            this.samples = samples;
+            this.comparisons = comparisons;
+            this.maxPositionError = maxPositionError;
+            this.rmsPositionError = rmsPositionError;
+            this.maxHeadingError = maxHeadingError;
+            this.elapsedNanos = elapsedNanos;
+            this.loggedNanos = loggedNanos;
+        }
+
+        public double samplesPerSecond() {
+            return samples * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        /**
+         * @return how many times faster than real time the log was replayed
+         */
+        public double speedup() {
+            return (double) loggedNanos / Math.max(1, elapsedNanos);
+        }
+    }
+
+    private LocalizerReplay() {}
+
+    /**
+     * Replays a FusedLocalizer: each record is fed to one of its sources, then the filter predicts
+     * from the sources at the record's logged time.
+     *
+     * @param source decodes an inputs record and passes it to the source's update(inputs)
+     */
+    public static Step fused(FusedLocalizer fused, SourceStep source) {
+        return r -> fused.predictFromSources(source.update(r) / 1e9);
+    }
+
+    /**
+     * @param inputsChannel the channel holding the localizer's inputs, e.g. "THREE_DEAD_WHEEL_INPUTS"
+     * @param localizer the localizer being replayed, read for its pose
+     * @param step decodes an inputs record and passes it to the localizer's update(inputs)
+     */
+    public static Result run(BinaryLogReader reader, String inputsChannel, Localizer localizer, Step step) {
+        reader.rewind();
+
+        int samples = 0, comparisons = 0;
+        double maxPositionError = 0, sumSquaredError = 0, maxHeadingError = 0;
+        long firstTimestamp = 0, lastTimestamp = 0;
+        boolean seeded = false;
+
+        long start = System.nanoTime();
+        BinaryLogReader.Record record;
+        while ((record = reader.next()) != null) {
+            String channel = record.channel().name;
+            if (channel.equals(inputsChannel)) {
+                step.update(record);
+                samples++;
+            } else if (channel.equals("ESTIMATED_POSE") && samples > 0) {
+                PoseMessage logged = new PoseMessage(record);
+                if (!seeded) {
+                    // the first update only initializes the localizer, so its pose is still the start pose
+                    localizer.setPose(new Pose2d(logged.x, logged.y, logged.heading));
+                    seeded = true;
+                    firstTimestamp = logged.timestamp;
+                    continue;
+                }
+                lastTimestamp = logged.timestamp;
+
+                Pose2d replayed = localizer.getPose();
+                double positionError = Math.hypot(replayed.position.x - logged.x, replayed.position.y - logged.y);
+                double headingDelta = replayed.heading.toDouble() - logged.heading;
+                double headingError = Math.abs(Math.atan2(Math.sin(headingDelta), Math.cos(headingDelta)));
+
+                maxPositionError = Math.max(maxPositionError, positionError);
+                maxHeadingError = Math.max(maxHeadingError, headingError);
+                sumSquaredError += positionError * positionError;
+                comparisons++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return new Result(samples, comparisons, maxPositionError,
+                comparisons > 0 ? Math.sqrt(sumSquaredError / comparisons) : 0.0,
+                maxHeadingError, elapsed, lastTimestamp - firstTimestamp);
+    }
+}
@@ -38,17 +38,22 @@ import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.hardware.IMU;
 import com.qualcomm.robotcore.hardware.VoltageSensor;
 
-import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.HardwareUtility.HubIO;
 import org.firstinspires.ftc.teamcode.messages.DriveCommandMessage;
+import org.firstinspires.ftc.teamcode.messages.LogMessage;
 import org.firstinspires.ftc.teamcode.messages.MecanumCommandMessage;
 import org.firstinspires.ftc.teamcode.messages.MecanumLocalizerInputsMessage;
 import org.firstinspires.ftc.teamcode.messages.PoseMessage;
+import org.firstinspires.ftc.teamcode.messages.TelemetryLog;
 
+import java.io.File;
 import java.lang.Math;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Function;
 
 @Config
 public final class MecanumDrive {
@@ -80,6 +85,9 @@ public final class MecanumDrive {
         public double maxAngVel = Math.PI; // shared with path
         public double maxAngAccel = Math.PI;
 
+        // pose history (one sample per pose estimate update)
+        public int poseHistoryCapacity = 1000;
+
         // path controller gains
         public double axialGain = 0.0;
         public double lateralGain = 0.0;
@@ -92,6 +100,12 @@ public final class MecanumDrive {
 
     public static Params PARAMS = new Params();
 
+    // trajectory builder parameters
+    private static final double ARC_LENGTH_SAMPLING_EPS = 1e-6;
+    private static final double PROFILE_DISP_RESOLUTION = 0.25;
+    private static final double PROFILE_ANG_RESOLUTION = 0.1;
+    private static final double PROFILE_ANG_SAMPLING_EPS = 1e-2;
+
     public final MecanumKinematics kinematics = new MecanumKinematics(
             PARAMS.inPerTick * PARAMS.trackWidthTicks, PARAMS.inPerTick / PARAMS.lateralInPerTick);
 
@@ -106,19 +120,39 @@ public final class MecanumDrive {
             new ProfileAccelConstraint(PARAMS.minProfileAccel, PARAMS.maxProfileAccel);
 
     public final DcMotorEx leftFront, leftBack, rightBack, rightFront;
+    public final MotorOutputCache motorOutputs;
 
     public final VoltageSensor voltageSensor;
 
     public final LazyImu lazyImu;
 
     public final Localizer localizer;
-    private final LinkedList<Pose2d> poseHistory = new LinkedList<>();
+    // the thread updating the localizer, or null when it is updated on the main loop
+    public final OdometryService odometry;
+    public final PoseHistory poseHistory = new PoseHistory(PARAMS.poseHistoryCapacity);
+
+    // created on first use, so drives that never cache a path (simulations, JVM tests) don't need
+    // the FIRST folder
+    private TrajectoryCache trajectoryCache;
 
     private final DownsampledWriter estimatedPoseWriter = new DownsampledWriter("ESTIMATED_POSE", 50_000_000);
     private final DownsampledWriter targetPoseWriter = new DownsampledWriter("TARGET_POSE", 50_000_000);
     private final DownsampledWriter driveCommandWriter = new DownsampledWriter("DRIVE_COMMAND", 50_000_000);
     private final DownsampledWriter mecanumCommandWriter = new DownsampledWriter("MECANUM_COMMAND", 50_000_000);
 
+    // the follower reuses its controller, feedforward and messages across loops; the controller
+    // and feedforward are only rebuilt when the values in PARAMS change
+    private HolonomicController controller;
+    private final double[] controllerGains = new double[6];
+    private MotorFeedforward feedforward;
+    private final double[] feedforwardParams = new double[4];
+
+    private final PoseMessage estimatedPoseMessage = new PoseMessage(new Pose2d(0, 0, 0));
+    private final PoseMessage targetPoseMessage = new PoseMessage(new Pose2d(0, 0, 0));
+    private final DriveCommandMessage driveCommandMessage = new DriveCommandMessage(
+            PoseVelocity2dDual.constant(new PoseVelocity2d(new Vector2d(0, 0), 0), 2));
+    private final MecanumCommandMessage mecanumCommandMessage = new MecanumCommandMessage(0, 0, 0, 0, 0);
+
     public class DriveLocalizer implements Localizer {
         public final Encoder leftFront, leftBack, rightBack, rightFront;
         public final IMU imu;
@@ -160,11 +194,27 @@ public final class MecanumDrive {
             PositionVelocityPair rightFrontPosVel = rightFront.getPositionAndVelocity();
 
             YawPitchRollAngles angles = imu.getRobotYawPitchRollAngles();
+            HubIO.recordTransaction();
 
-            FlightRecorder.write("MECANUM_LOCALIZER_INPUTS", new MecanumLocalizerInputsMessage(
-                    leftFrontPosVel, leftBackPosVel, rightBackPosVel, rightFrontPosVel, angles));
+            MecanumLocalizerInputsMessage inputs = new MecanumLocalizerInputsMessage(
+                    leftFrontPosVel, leftBackPosVel, rightBackPosVel, rightFrontPosVel, angles);
+            if (!TelemetryLog.getInstance().offer("MECANUM_LOCALIZER_INPUTS", inputs)) {
+                FlightRecorder.write("MECANUM_LOCALIZER_INPUTS", inputs);
+            }
+
+            return update(inputs);
+        }
 
-            Rotation2d heading = Rotation2d.exp(angles.getYaw(AngleUnit.RADIANS));
+        /**
+         * Advances the estimate from one set of wheel and IMU readings, live or replayed from a log.
+         */
+        public PoseVelocity2d update(MecanumLocalizerInputsMessage inputs) {
+            PositionVelocityPair leftFrontPosVel = inputs.leftFront;
+            PositionVelocityPair leftBackPosVel = inputs.leftBack;
+            PositionVelocityPair rightBackPosVel = inputs.rightBack;
+            PositionVelocityPair rightFrontPosVel = inputs.rightFront;
+
+            Rotation2d heading = Rotation2d.exp(inputs.yaw);
 
             if (!initialized) {
                 initialized = true;
@@ -216,6 +266,15 @@ public final class MecanumDrive {
     }
 
     public MecanumDrive(HardwareMap hardwareMap, Pose2d pose) {
+        this(hardwareMap, pose, 0);
+    }
+
+    /**
+     * @param odometryRateHz when positive, the drive localizer runs on an {@link OdometryService}
+     *     at this rate, and {@link #localizer} is that service; start and stop it through
+     *     {@link #odometry}. 0 updates the localizer on the main loop.
+     */
+    public MecanumDrive(HardwareMap hardwareMap, Pose2d pose, double odometryRateHz) {
         LynxFirmware.throwIfModulesAreOutdated(hardwareMap);
 
         for (LynxModule module : hardwareMap.getAll(LynxModule.class)) {
@@ -234,6 +293,8 @@ public final class MecanumDrive {
         rightBack.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
         rightFront.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
 
+        motorOutputs = new MotorOutputCache(leftFront, leftBack, rightBack, rightFront);
+
         // TODO: reverse motor directions if needed
         //   leftFront.setDirection(DcMotorSimple.Direction.REVERSE);
 
@@ -244,7 +305,14 @@ public final class MecanumDrive {
 
         voltageSensor = hardwareMap.voltageSensor.iterator().next();
 
-        localizer = new DriveLocalizer(pose);
+        if (odometryRateHz > 0) {
+            odometry = new OdometryService(
+                    new DriveLocalizer(pose), hardwareMap.getAll(LynxModule.class), odometryRateHz);
+            localizer = odometry;
+        } else {
+            odometry = null;
+            localizer = new DriveLocalizer(pose);
+        }
 
         FlightRecorder.write("MECANUM_PARAMS", PARAMS);
     }
@@ -258,10 +326,27 @@ public final class MecanumDrive {
             maxPowerMag = Math.max(maxPowerMag, power.value());
         }
 
-        leftFront.setPower(wheelVels.leftFront.get(0) / maxPowerMag);
-        leftBack.setPower(wheelVels.leftBack.get(0) / maxPowerMag);
-        rightBack.setPower(wheelVels.rightBack.get(0) / maxPowerMag);
-        rightFront.setPower(wheelVels.rightFront.get(0) / maxPowerMag);
+        setMotorPowers(
+                wheelVels.leftFront.get(0) / maxPowerMag,
+                wheelVels.leftBack.get(0) / maxPowerMag,
+                wheelVels.rightBack.get(0) / maxPowerMag,
+                wheelVels.rightFront.get(0) / maxPowerMag
+        );
+    }
+
+    // goes through the logging thread while the TelemetryLog runs, inline otherwise
+    private static void log(DownsampledWriter fallback, String channel, LogMessage message) {
+        if (!TelemetryLog.getInstance().offer(channel, message)) {
+            fallback.write(message);
+        }
+    }
+
+    private void setMotorPowers(double leftFrontPower, double leftBackPower,
+                                double rightBackPower, double rightFrontPower) {
+        motorOutputs.setPower(0, leftFrontPower);
+        motorOutputs.setPower(1, leftBackPower);
+        motorOutputs.setPower(2, rightBackPower);
+        motorOutputs.setPower(3, rightFrontPower);
     }
 
     public final class FollowTrajectoryAction implements Action {
@@ -289,50 +374,20 @@ public final class MecanumDrive {
         public boolean run(@NonNull TelemetryPacket p) {
             double t;
             if (beginTs < 0) {
-                beginTs = Actions.now();
+                beginTs = DriveClock.now();
                 t = 0;
             } else {
-                t = Actions.now() - beginTs;
+                t = DriveClock.now() - beginTs;
             }
 
             if (t >= timeTrajectory.duration) {
-                leftFront.setPower(0);
-                leftBack.setPower(0);
-                rightBack.setPower(0);
-                rightFront.setPower(0);
+                setMotorPowers(0, 0, 0, 0);
 
                 return false;
             }
 
             Pose2dDual<Time> txWorldTarget = timeTrajectory.get(t);
-            targetPoseWriter.write(new PoseMessage(txWorldTarget.value()));
-
-            PoseVelocity2d robotVelRobot = updatePoseEstimate();
-
-            PoseVelocity2dDual<Time> command = new HolonomicController(
-                    PARAMS.axialGain, PARAMS.lateralGain, PARAMS.headingGain,
-                    PARAMS.axialVelGain, PARAMS.lateralVelGain, PARAMS.headingVelGain
-            )
-                    .compute(txWorldTarget, localizer.getPose(), robotVelRobot);
-            driveCommandWriter.write(new DriveCommandMessage(command));
-
-            MecanumKinematics.WheelVelocities<Time> wheelVels = kinematics.inverse(command);
-            double voltage = voltageSensor.getVoltage();
-
-            final MotorFeedforward feedforward = new MotorFeedforward(PARAMS.kS,
-                    PARAMS.kV / PARAMS.inPerTick, PARAMS.kA / PARAMS.inPerTick);
-            double leftFrontPower = feedforward.compute(wheelVels.leftFront) / voltage;
-            double leftBackPower = feedforward.compute(wheelVels.leftBack) / voltage;
-            double rightBackPower = feedforward.compute(wheelVels.rightBack) / voltage;
-            double rightFrontPower = feedforward.compute(wheelVels.rightFront) / voltage;
-            mecanumCommandWriter.write(new MecanumCommandMessage(
-                    voltage, leftFrontPower, leftBackPower, rightBackPower, rightFrontPower
-            ));
-
-            leftFront.setPower(leftFrontPower);
-            leftBack.setPower(leftBackPower);
-            rightBack.setPower(rightBackPower);
-            rightFront.setPower(rightFrontPower);
+            follow(txWorldTarget);
 
             p.put("x", localizer.getPose().position.x);
             p.put("y", localizer.getPose().position.y);
@@ -368,6 +423,68 @@ public final class MecanumDrive {
         }
     }
 
+    public final class FollowSamplesAction implements Action {
+        public final TrajectoryCache.Samples samples;
+        private double beginTs = -1;
+
+        private final double[] xPoints, yPoints;
+
+        public FollowSamplesAction(TrajectoryCache.Samples samples) {
+            this.samples = samples;
+
+            int stride = Math.max(1, samples.size() / 50);
+            int n = (samples.size() - 1) / stride + 1;
+            xPoints = new double[n];
+            yPoints = new double[n];
+            for (int i = 0; i < n; i++) {
+                xPoints[i] = samples.x(i * stride);
+                yPoints[i] = samples.y(i * stride);
+            }
+        }
+
+        @Override
+        public boolean run(@NonNull TelemetryPacket p) {
+            double t;
+            if (beginTs < 0) {
+                beginTs = DriveClock.now();
+                t = 0;
+            } else {
+                t = DriveClock.now() - beginTs;
+            }
+
+            if (t >= samples.duration) {
+                setMotorPowers(0, 0, 0, 0);
+
+                return false;
+            }
+
+            Pose2dDual<Time> txWorldTarget = samples.get(t);
+            follow(txWorldTarget);
+
+            Canvas c = p.fieldOverlay();
+            drawPoseHistory(c);
+
+            c.setStroke("#4CAF50");
+            Drawing.drawRobot(c, txWorldTarget.value());
+
+            c.setStroke("#3F51B5");
+            Drawing.drawRobot(c, localizer.getPose());
+
+            c.setStroke("#4CAF50FF");
+            c.setStrokeWidth(1);
+            c.strokePolyline(xPoints, yPoints);
+
+            return true;
+        }
+
+        @Override
+        public void preview(Canvas c) {
+            c.setStroke("#4CAF507A");
+            c.setStrokeWidth(1);
+            c.strokePolyline(xPoints, yPoints);
+        }
+    }
+
     public final class TurnAction implements Action {
         private final TimeTurn turn;
 
@@ -381,49 +498,20 @@ public final class MecanumDrive {
         public boolean run(@NonNull TelemetryPacket p) {
             double t;
             if (beginTs < 0) {
-                beginTs = Actions.now();
+                beginTs = DriveClock.now();
                 t = 0;
             } else {
-                t = Actions.now() - beginTs;
+                t = DriveClock.now() - beginTs;
             }
 
             if (t >= turn.duration) {
-                leftFront.setPower(0);
-                leftBack.setPower(0);
-                rightBack.setPower(0);
-                rightFront.setPower(0);
+                setMotorPowers(0, 0, 0, 0);
 
                 return false;
             }
 
             Pose2dDual<Time> txWorldTarget = turn.get(t);
-            targetPoseWriter.write(new PoseMessage(txWorldTarget.value()));
-
-            PoseVelocity2d robotVelRobot = updatePoseEstimate();
-
-            PoseVelocity2dDual<Time> command = new HolonomicController(
-                    PARAMS.axialGain, PARAMS.lateralGain, PARAMS.headingGain,
-                    PARAMS.axialVelGain, PARAMS.lateralVelGain, PARAMS.headingVelGain
-            )
-                    .compute(txWorldTarget, localizer.getPose(), robotVelRobot);
-            driveCommandWriter.write(new DriveCommandMessage(command));
-
-            MecanumKinematics.WheelVelocities<Time> wheelVels = kinematics.inverse(command);
-            double voltage = voltageSensor.getVoltage();
-            final MotorFeedforward feedforward = new MotorFeedforward(PARAMS.kS,
-                    PARAMS.kV / PARAMS.inPerTick, PARAMS.kA / PARAMS.inPerTick);
-            double leftFrontPower = feedforward.compute(wheelVels.leftFront) / voltage;
-            double leftBackPower = feedforward.compute(wheelVels.leftBack) / voltage;
-            double rightBackPower = feedforward.compute(wheelVels.rightBack) / voltage;
-            double rightFrontPower = feedforward.compute(wheelVels.rightFront) / voltage;
-            mecanumCommandWriter.write(new MecanumCommandMessage(
-                    voltage, leftFrontPower, leftBackPower, rightBackPower, rightFrontPower
-            ));
-
-            leftFront.setPower(feedforward.compute(wheelVels.leftFront) / voltage);
-            leftBack.setPower(feedforward.compute(wheelVels.leftBack) / voltage);
-            rightBack.setPower(feedforward.compute(wheelVels.rightBack) / voltage);
-            rightFront.setPower(feedforward.compute(wheelVels.rightFront) / voltage);
+            follow(txWorldTarget);
 
             Canvas c = p.fieldOverlay();
             drawPoseHistory(c);
@@ -447,44 +535,112 @@ public final class MecanumDrive {
         }
     }
 
-    public PoseVelocity2d updatePoseEstimate() {
-        PoseVelocity2d vel = localizer.update();
-        poseHistory.add(localizer.getPose());
-        
-        while (poseHistory.size() > 100) {
-            poseHistory.removeFirst();
+    private HolonomicController controller() {
+        if (controller == null
+                || controllerGains[0] != PARAMS.axialGain || controllerGains[1] != PARAMS.lateralGain
+                || controllerGains[2] != PARAMS.headingGain || controllerGains[3] != PARAMS.axialVelGain
+                || controllerGains[4] != PARAMS.lateralVelGain || controllerGains[5] != PARAMS.headingVelGain) {
+            controllerGains[0] = PARAMS.axialGain;
+            controllerGains[1] = PARAMS.lateralGain;
+            controllerGains[2] = PARAMS.headingGain;
+            controllerGains[3] = PARAMS.axialVelGain;
+            controllerGains[4] = PARAMS.lateralVelGain;
+            controllerGains[5] = PARAMS.headingVelGain;
+            controller = new HolonomicController(
+                    PARAMS.axialGain, PARAMS.lateralGain, PARAMS.headingGain,
+                    PARAMS.axialVelGain, PARAMS.lateralVelGain, PARAMS.headingVelGain
+            );
         }
+        return controller;
+    }
 
-        estimatedPoseWriter.write(new PoseMessage(localizer.getPose()));
-        
-        
-        return vel;
+    private MotorFeedforward feedforward() {
+        if (feedforward == null
+                || feedforwardParams[0] != PARAMS.kS || feedforwardParams[1] != PARAMS.kV
+                || feedforwardParams[2] != PARAMS.kA || feedforwardParams[3] != PARAMS.inPerTick) {
+            feedforwardParams[0] = PARAMS.kS;
+            feedforwardParams[1] = PARAMS.kV;
+            feedforwardParams[2] = PARAMS.kA;
+            feedforwardParams[3] = PARAMS.inPerTick;
+            feedforward = new MotorFeedforward(PARAMS.kS,
+                    PARAMS.kV / PARAMS.inPerTick, PARAMS.kA / PARAMS.inPerTick);
+        }
+        return feedforward;
     }
 
-    private void drawPoseHistory(Canvas c) {
-        double[] xPoints = new double[poseHistory.size()];
-        double[] yPoints = new double[poseHistory.size()];
+    private void follow(Pose2dDual<Time> txWorldTarget) {
+        log(targetPoseWriter, "TARGET_POSE", targetPoseMessage.update(txWorldTarget.value()));
+
+        PoseVelocity2d robotVelRobot = updatePoseEstimate();
+
+        PoseVelocity2dDual<Time> command = controller()
+                .compute(txWorldTarget, localizer.getPose(), robotVelRobot);
+        log(driveCommandWriter, "DRIVE_COMMAND", driveCommandMessage.update(command));
+
+        MecanumKinematics.WheelVelocities<Time> wheelVels = kinematics.inverse(command);
+        double voltage = voltageSensor.getVoltage();
+
+        MotorFeedforward feedforward = feedforward();
+        double leftFrontPower = feedforward.compute(wheelVels.leftFront) / voltage;
+        double leftBackPower = feedforward.compute(wheelVels.leftBack) / voltage;
+        double rightBackPower = feedforward.compute(wheelVels.rightBack) / voltage;
+        double rightFrontPower = feedforward.compute(wheelVels.rightFront) / voltage;
+        log(mecanumCommandWriter, "MECANUM_COMMAND", mecanumCommandMessage.update(
+                voltage, leftFrontPower, leftBackPower, rightBackPower, rightFrontPower
+        ));
+
+        setMotorPowers(leftFrontPower, leftBackPower, rightBackPower, rightFrontPower);
+    }
+
+    public PoseVelocity2d updatePoseEstimate() {
+        PoseVelocity2d vel = localizer.update();
+        poseHistory.add(localizer.getPose(), DriveClock.nanoTime());
+
+        log(estimatedPoseWriter, "ESTIMATED_POSE", estimatedPoseMessage.update(localizer.getPose()));
 
-        int i = 0;
-        for (Pose2d t : poseHistory) {
-            xPoints[i] = t.position.x;
-            yPoints[i] = t.position.y;
+        return vel;
+    }
 
-            i++;
+    /**
+     * Corrects the pose estimate with a delayed absolute measurement, e.g. an AprilTag fix whose
+     * frame was captured some time ago. The odometry motion since the capture is re-applied on top
+     * of the measurement instead of snapping the robot back to where it was then.
+     * @param measuredPose the measured pose at the capture time
+     * @param timestampNanos the capture time, on the {@link DriveClock#nanoTime()} clock that stamps the
+     *                       pose history (System.nanoTime() on the robot, simulated time in a simulation)
+     * @return false if the capture time predates the pose history, in which case nothing changes
+     */
+    public boolean correctPose(Pose2d measuredPose, long timestampNanos) {
+        Pose2d pastPose = poseHistory.poseAt(timestampNanos);
+        if (pastPose == null) {
+            return false;
         }
 
+        Pose2d correction = measuredPose.times(pastPose.inverse());
+        localizer.setPose(correction.times(localizer.getPose()));
+        poseHistory.correctSince(timestampNanos, correction);
+        return true;
+    }
+
+    private void drawPoseHistory(Canvas c) {
         c.setStrokeWidth(1);
         c.setStroke("#3F51B5");
-        c.strokePolyline(xPoints, yPoints);
+        Drawing.drawPoseHistory(c, poseHistory, 100);
     }
+
     public TrajectoryActionBuilder actionBuilder(Pose2d beginPose) {
+        return actionBuilder(beginPose, TurnAction::new, FollowTrajectoryAction::new);
+    }
+
+    private TrajectoryActionBuilder actionBuilder(Pose2d beginPose, TurnActionFactory turnActionFactory,
+                                                  TrajectoryActionFactory trajectoryActionFactory) {
         return new TrajectoryActionBuilder(
-                TurnAction::new,
-                FollowTrajectoryAction::new,
+                turnActionFactory,
+                trajectoryActionFactory,
                 new TrajectoryBuilderParams(
-                        1e-6,
+                        ARC_LENGTH_SAMPLING_EPS,
                         new ProfileParams(
-                                0.25, 0.1, 1e-2
+                                PROFILE_DISP_RESOLUTION, PROFILE_ANG_RESOLUTION, PROFILE_ANG_SAMPLING_EPS
                         )
                 ),
                 beginPose, 0.0,
@@ -492,4 +648,140 @@ public final class MecanumDrive {
                 defaultVelConstraint, defaultAccelConstraint
         );
     }
+
+    /**
+     * Starts a path whose samples are cached on disk by {@link TrajectoryCache}.
+     * <p>
+     * The cache key is derived from the begin pose, every builder call and its arguments, the drive
+     * constraints and the profile parameters, so two paths share an entry only if they are built
+     * the same way. Only motion segments can be added: markers and waits would run on a miss but
+     * not on a hit, so paths that need them should use {@link #actionBuilder} and compose the
+     * cached action with the rest in a {@link SequentialAction}.
+     */
+    public CachedPathBuilder cachedPathBuilder(Pose2d beginPose) {
+        return new CachedPathBuilder(beginPose);
+    }
+
+    /**
+     * Sets the cache {@link #cachedPathBuilder} reads and writes, instead of the default one under
+     * the FIRST folder.
+     */
+    public synchronized void setTrajectoryCache(TrajectoryCache trajectoryCache) {
+        this.trajectoryCache = trajectoryCache;
+    }
+
+    private synchronized TrajectoryCache trajectoryCache() {
+        if (trajectoryCache == null) {
+            trajectoryCache = new TrajectoryCache(new File(AppUtil.FIRST_FOLDER, "RoadRunner/trajectories"));
+        }
+        return trajectoryCache;
+    }
+
+    public final class CachedPathBuilder {
+        private final TrajectoryCache.Key key;
+        private final List<Function<TrajectoryActionBuilder, TrajectoryActionBuilder>> steps = new ArrayList<>();
+
+        private CachedPathBuilder(Pose2d beginPose) {
+            key = new TrajectoryCache.Key(beginPose)
+                    .add(PARAMS.inPerTick, PARAMS.lateralInPerTick, PARAMS.trackWidthTicks)
+                    .add(PARAMS.maxWheelVel, PARAMS.minProfileAccel, PARAMS.maxProfileAccel)
+                    .add(PARAMS.maxAngVel, PARAMS.maxAngAccel)
+                    .add(ARC_LENGTH_SAMPLING_EPS, PROFILE_DISP_RESOLUTION, PROFILE_ANG_RESOLUTION, PROFILE_ANG_SAMPLING_EPS);
+        }
+
+        private CachedPathBuilder step(String name, Function<TrajectoryActionBuilder, TrajectoryActionBuilder> step,
+                                       double... args) {
+            key.add(name).add(args);
+            steps.add(step);
+            return this;
+        }
+
+        public CachedPathBuilder setTangent(double r) {
+            return step("setTangent", b -> b.setTangent(r), r);
+        }
+
+        public CachedPathBuilder setReversed(boolean reversed) {
+            return step("setReversed", b -> b.setReversed(reversed), reversed ? 1 : 0);
+        }
+
+        public CachedPathBuilder turn(double angle) {
+            return step("turn", b -> b.turn(angle), angle);
+        }
+
+        public CachedPathBuilder turnTo(double heading) {
+            return step("turnTo", b -> b.turnTo(heading), heading);
+        }
+
+        public CachedPathBuilder lineToX(double posX) {
+            return step("lineToX", b -> b.lineToX(posX), posX);
+        }
+
+        public CachedPathBuilder lineToY(double posY) {
+            return step("lineToY", b -> b.lineToY(posY), posY);
+        }
+
+        public CachedPathBuilder strafeTo(Vector2d pos) {
+            return step("strafeTo", b -> b.strafeTo(pos), pos.x, pos.y);
+        }
+
+        public CachedPathBuilder strafeToLinearHeading(Vector2d pos, double heading) {
+            return step("strafeToLinearHeading", b -> b.strafeToLinearHeading(pos, heading), pos.x, pos.y, heading);
+        }
+
+        public CachedPathBuilder strafeToSplineHeading(Vector2d pos, double heading) {
+            return step("strafeToSplineHeading", b -> b.strafeToSplineHeading(pos, heading), pos.x, pos.y, heading);
+        }
+
+        public CachedPathBuilder splineTo(Vector2d pos, double tangent) {
+            return step("splineTo", b -> b.splineTo(pos, tangent), pos.x, pos.y, tangent);
+        }
+
+        public CachedPathBuilder splineToConstantHeading(Vector2d pos, double tangent) {
+            return step("splineToConstantHeading", b -> b.splineToConstantHeading(pos, tangent), pos.x, pos.y, tangent);
+        }
+
+        public CachedPathBuilder splineToLinearHeading(Pose2d pose, double tangent) {
+            return step("splineToLinearHeading", b -> b.splineToLinearHeading(pose, tangent),
+                    pose.position.x, pose.position.y, pose.heading.toDouble(), tangent);
+        }
+
+        public CachedPathBuilder splineToSplineHeading(Pose2d pose, double tangent) {
+            return step("splineToSplineHeading", b -> b.splineToSplineHeading(pose, tangent),
+                    pose.position.x, pose.position.y, pose.heading.toDouble(), tangent);
+        }
+
+        /**
+         * Returns an action following the cached samples, building the path and writing it to the
+         * cache on a miss.
+         */
+        public Action build() {
+            TrajectoryCache trajectoryCache = trajectoryCache();
+            List<TrajectoryCache.Samples> segments = trajectoryCache.load(key);
+            if (segments == null) {
+                List<TrajectoryCache.Samples> recorded = new ArrayList<>();
+                TrajectoryActionBuilder builder = actionBuilder(key.getBeginPose(),
+                        turn -> {
+                            recorded.add(TrajectoryCache.sample(turn));
+                            return new TurnAction(turn);
+                        },
+                        trajectory -> {
+                            recorded.add(TrajectoryCache.sample(trajectory));
+                            return new FollowTrajectoryAction(trajectory);
+                        }
+                );
+                for (int i = 0; i < steps.size(); i++) {
+                    builder = steps.get(i).apply(builder);
+                }
+                Action action = builder.build();
+                trajectoryCache.store(key, recorded);
+                return action;
+            }
+
+            List<Action> actions = new ArrayList<>(segments.size());
+            for (TrajectoryCache.Samples samples : segments) {
+                actions.add(new FollowSamplesAction(samples));
+            }
+            return new SequentialAction(actions);
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+
+import org.firstinspires.ftc.teamcode.FTCCommandBased.HardwareUtility.HubIO;
+
+import java.util.List;
+
+/**
+ * Write-through cache for motor powers. Every setPower() on a motor is a blocking hub
+ * transaction, so writes that change the power by less than PARAMS.epsilon are skipped.
+ * Stopping a motor (writing exactly zero) is never skipped.
+ * <p>
+ * The cache assumes it is the only writer; call {@link #invalidate()} after writing to the
+ * motors through any other path.
+ */
+@Config
+public final class MotorOutputCache {
+    public static class Params {
+        public double epsilon = 1e-3;
+    }
+
+    public static Params PARAMS = new Params();
+
+    private final DcMotorEx[] motors;
+    private final double[] lastPowers;
+
+    private long windowStartNanos = System.nanoTime();
+    private int skippedInWindow;
+    private double skippedWritesPerSecond;
+
+    public MotorOutputCache(DcMotorEx... motors) {
+        this.motors = motors;
+        lastPowers = new double[motors.length];
+        invalidate();
+    }
+
+    public MotorOutputCache(List<DcMotorEx> motors) {
+        this(motors.toArray(new DcMotorEx[0]));
+    }
+
+    public int size() {
+        return motors.length;
+    }
+
+    public void setPower(int i, double power) {
+        double last = lastPowers[i];
+        if (!Double.isNaN(last) && Math.abs(power - last) < PARAMS.epsilon && (power != 0 || last == 0)) {
+            skippedInWindow++;
+        } else {
+            motors[i].setPower(power);
+            lastPowers[i] = power;
+            HubIO.recordTransaction();
+        }
+
+        long now = System.nanoTime();
+        if (now - windowStartNanos >= 1_000_000_000L) {
+            skippedWritesPerSecond = skippedInWindow * 1e9 / (now - windowStartNanos);
+            skippedInWindow = 0;
+            windowStartNanos = now;
+        }
+    }
+
+    /**
+     * Forgets the cached powers, so the next write to every motor goes through.
+     */
+    public void invalidate() {
+        for (int i = 0; i < lastPowers.length; i++) {
+            lastPowers[i] = Double.NaN;
+        }
+    }
+
+    /**
+     * @return the number of skipped writes per second, over the last complete one-second window
+     */
+    public double getSkippedWritesPerSecond() {
+        return skippedWritesPerSecond;
+    }
+}
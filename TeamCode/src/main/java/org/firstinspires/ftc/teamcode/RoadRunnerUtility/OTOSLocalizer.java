@@ -3,7 +3,6 @@ package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
 import com.acmerobotics.dashboard.config.Config;
 import com.acmerobotics.roadrunner.Pose2d;
 import com.acmerobotics.roadrunner.PoseVelocity2d;
-import com.acmerobotics.roadrunner.Rotation2d;
 import com.acmerobotics.roadrunner.Vector2d;
 import com.acmerobotics.roadrunner.ftc.OTOSKt;
 import com.qualcomm.hardware.sparkfun.SparkFunOTOS;
@@ -11,6 +10,10 @@ import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.HardwareUtility.HubIO;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 @Config
 public class OTOSLocalizer implements Localizer {
@@ -20,13 +23,38 @@ public class OTOSLocalizer implements Localizer {
 
         // Note: units are in inches and radians
         public SparkFunOTOS.Pose2D offset = new SparkFunOTOS.Pose2D(0, 0, 0);
+
+        // also read the acceleration registers each update (6 more bytes on the bus)
+        public boolean readAcceleration = false;
     }
 
+    // position, velocity and acceleration registers, each x, y, h as little-endian int16
+    private static final int REG_POS_XL = 0x20;
+    private static final int POS_VEL_BYTES = 12;
+    private static final int POS_VEL_ACC_BYTES = 18;
+
+    // raw int16 scales from the OTOS datasheet, converted to inches and radians
+    private static final double INT16_TO_INCH = 10.0 / 32768 / 0.0254;
+    private static final double INT16_TO_RAD = Math.PI / 32768;
+    private static final double INT16_TO_INCH_PER_SEC = 5.0 / 32768 / 0.0254;
+    private static final double INT16_TO_RAD_PER_SEC = Math.toRadians(2000.0) / 32768;
+    private static final double INT16_TO_INCH_PER_SEC2 = 16.0 * 9.80665 / 32768 / 0.0254;
+    private static final double INT16_TO_RAD_PER_SEC2 = Math.PI * 1000.0 / 32768;
+
     public static Params PARAMS = new Params();
 
     public final SparkFunOTOS otos;
     private Pose2d currentPose;
 
+    // x, y, heading, then velocity and acceleration in the same order (field frame)
+    private final double[] sample = new double[9];
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(POS_VEL_ACC_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    // robot-frame acceleration from the last update, if PARAMS.readAcceleration is set
+    private double accelX, accelY, angularAccel;
+    private SensorPoller poller;
+    private long captureNanos = -1;
+    private long setPoseNanos = -1;
+
     public OTOSLocalizer(HardwareMap hardwareMap, Pose2d initialPose) {
         // TODO: make sure your config has an OTOS device with this name
         //   see https://ftc-docs.firstinspires.org/en/latest/hardware_and_software_configuration/configuring/index.html
@@ -51,18 +79,98 @@ public class OTOSLocalizer implements Localizer {
     public void setPose(Pose2d pose) {
         currentPose = pose;
         otos.setPosition(OTOSKt.toOTOSPose(currentPose));
+        setPoseNanos = System.nanoTime();
+    }
+
+    /**
+     * Moves the OTOS reads to a background thread; update() then returns the newest complete
+     * sample instead of reading the device, and throws if the thread has died. setPose() still
+     * writes the sensor from the caller's thread; the I2C layer serializes it with the poller's
+     * reads.
+     */
+    public void startPolling(double rateHz) {
+        if (poller == null) {
+            poller = new SensorPoller("OTOSPoller", sample.length, rateHz, this::read);
+            poller.start();
+        }
+    }
+
+    public void stopPolling() {
+        if (poller != null) {
+            poller.stop();
+            poller = null;
+        }
+    }
+
+    // reads position and velocity (and acceleration, if enabled) in a single transaction,
+    // decoding the registers directly instead of through getPosVelAcc()'s Pose2D objects
+    private void read(double[] out) {
+        boolean withAcceleration = PARAMS.readAcceleration;
+        byte[] raw = otos.getDeviceClient().read(REG_POS_XL, withAcceleration ? POS_VEL_ACC_BYTES : POS_VEL_BYTES);
+        HubIO.recordTransaction();
+
+        System.arraycopy(raw, 0, readBuffer.array(), 0, Math.min(raw.length, POS_VEL_ACC_BYTES));
+        ByteBuffer b = readBuffer;
+        out[0] = b.getShort(0) * INT16_TO_INCH;
+        out[1] = b.getShort(2) * INT16_TO_INCH;
+        out[2] = b.getShort(4) * INT16_TO_RAD;
+        out[3] = b.getShort(6) * INT16_TO_INCH_PER_SEC;
+        out[4] = b.getShort(8) * INT16_TO_INCH_PER_SEC;
+        out[5] = b.getShort(10) * INT16_TO_RAD_PER_SEC;
+        if (withAcceleration) {
+            out[6] = b.getShort(12) * INT16_TO_INCH_PER_SEC2;
+            out[7] = b.getShort(14) * INT16_TO_INCH_PER_SEC2;
+            out[8] = b.getShort(16) * INT16_TO_RAD_PER_SEC2;
+        } else {
+            out[6] = 0;
+            out[7] = 0;
+            out[8] = 0;
+        }
+    }
+
+    /**
+     * @return when the sample used by the last update was read, in System.nanoTime() terms
+     */
+    public long getCaptureNanos() {
+        return captureNanos;
     }
 
     @Override
     public PoseVelocity2d update() {
-        SparkFunOTOS.Pose2D otosPose = new SparkFunOTOS.Pose2D();
-        SparkFunOTOS.Pose2D otosVel = new SparkFunOTOS.Pose2D();
-        SparkFunOTOS.Pose2D otosAcc = new SparkFunOTOS.Pose2D();
-        otos.getPosVelAcc(otosPose, otosVel, otosAcc);
-
-        currentPose = OTOSKt.toRRPose(otosPose);
-        Vector2d fieldVel = new Vector2d(otosVel.x, otosVel.y);
-        Vector2d robotVel = Rotation2d.exp(otosPose.h).inverse().times(fieldVel);
-        return new PoseVelocity2d(robotVel, otosVel.h);
+        if (poller != null) {
+            long timestamp = poller.latest(sample);
+            // samples read before the last setPose() still hold the old position
+            if (timestamp < 0 || timestamp < setPoseNanos) {
+                return new PoseVelocity2d(new Vector2d(0, 0), 0);
+            }
+            captureNanos = timestamp;
+        } else {
+            read(sample);
+            captureNanos = System.nanoTime();
+        }
+
+        currentPose = new Pose2d(sample[0], sample[1], sample[2]);
+
+        // rotate the field-frame readings into the robot frame
+        double cos = Math.cos(sample[2]), sin = Math.sin(sample[2]);
+        accelX = cos * sample[6] + sin * sample[7];
+        accelY = -sin * sample[6] + cos * sample[7];
+        angularAccel = sample[8];
+        return new PoseVelocity2d(new Vector2d(
+                cos * sample[3] + sin * sample[4],
+                -sin * sample[3] + cos * sample[4]
+        ), sample[5]);
+    }
+
+    /**
+     * Measured robot-frame acceleration from the last update, in in/s^2 and rad/s^2, usable as an
+     * acceleration input to a feedforward. Zero unless PARAMS.readAcceleration is set.
+     */
+    public Vector2d getLinearAcceleration() {
+        return new Vector2d(accelX, accelY);
+    }
+
+    public double getAngularAcceleration() {
+        return angularAccel;
     }
 }
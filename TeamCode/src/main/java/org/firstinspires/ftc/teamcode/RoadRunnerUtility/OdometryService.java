@@ -0,0 +1,195 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import com.acmerobotics.roadrunner.Pose2d;
+import com.acmerobotics.roadrunner.PoseVelocity2d;
+import com.acmerobotics.roadrunner.Vector2d;
+import com.qualcomm.hardware.lynx.LynxModule;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.CommandScheduler;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.HardwareUtility.HubIO;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a localizer on its own fixed-rate thread, decoupled from the main loop.
+ * <p>
+ * The odometry thread is the only writer: it publishes an immutable {@link Snapshot} after every
+ * update, and any number of readers take the newest one without locking. As a {@link Localizer},
+ * update() and getPose() only read the latest snapshot and never touch the hardware, and
+ * setPose() is handed to the odometry thread.
+ * <p>
+ * If the localizer throws while the service is running, the thread logs the exception and stops.
+ * The last snapshot is then republished marked {@link Snapshot#stale}, {@link #isRunning()}
+ * turns false, {@link #getFailure()} returns the exception, and update() rethrows it, so the main
+ * loop does not keep following a pose that no longer moves.
+ * <p>
+ * Bulk caching contract: the service is the only owner of the bulk caches of the hubs it is
+ * given. start() claims them from the {@link CommandScheduler}, which then neither refreshes them
+ * nor takes them back in registerHubs(), switches them to MANUAL and refreshes them with one bulk
+ * read each at the start of every odometry update, on its own thread. Other code on the main
+ * loop may keep reading those hubs; it sees bulk data at most one odometry period old.
+ * {@link #stop()}, which must be called before the OpMode ends, releases the claim and puts the
+ * hubs back in AUTO caching.
+ */
+public final class OdometryService implements Localizer {
+    private static final String TAG = "OdometryService";
+
+    public static final class Snapshot {
+        public final Pose2d pose;
+        public final PoseVelocity2d velocity;
+        public final long timestampNanos;
+        // true once the odometry thread has died; the pose is the last one it computed
+        public final boolean stale;
+
+        public Snapshot(Pose2d pose, PoseVelocity2d velocity, long timestampNanos) {
+            this(pose, velocity, timestampNanos, false);
+        }
+
+        private Snapshot(Pose2d pose, PoseVelocity2d velocity, long timestampNanos, boolean stale) {
+            this.pose = pose;
+            this.velocity = velocity;
+            this.timestampNanos = timestampNanos;
+            this.stale = stale;
+        }
+    }
+
+    public final Localizer localizer;
+    private final List<LynxModule> modules;
+    private final long periodNanos;
+
+    private final AtomicReference<Snapshot> latest;
+    private final AtomicReference<Pose2d> pendingPose = new AtomicReference<>();
+
+    private volatile boolean running;
+    private volatile RuntimeException failure;
+    private Thread thread;
+
+    public OdometryService(Localizer localizer, List<LynxModule> modules, double rateHz) {
+        this.localizer = localizer;
+        this.modules = modules;
+        this.periodNanos = (long) (1e9 / rateHz);
+
+        latest = new AtomicReference<>(new Snapshot(
+                localizer.getPose(), new PoseVelocity2d(new Vector2d(0.0, 0.0), 0.0), System.nanoTime()));
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        failure = null;
+        CommandScheduler.getInstance().claimHubs(modules);
+        for (LynxModule module : modules) {
+            module.setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
+        }
+
+        running = true;
+        thread = new Thread(this::loop, "OdometryService");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+            CommandScheduler.getInstance().releaseHubs(modules);
+        }
+    }
+
+    private void loop() {
+        long next = System.nanoTime();
+        while (running && !Thread.currentThread().isInterrupted()) {
+            // the pending pose stays visible to getPose() until a snapshot built from it is out
+            Pose2d pose = pendingPose.get();
+            if (pose != null) {
+                localizer.setPose(pose);
+            }
+
+            for (int i = 0; i < modules.size(); i++) {
+                modules.get(i).clearBulkCache();
+                modules.get(i).getBulkData();
+                HubIO.recordBulkRead();
+            }
+
+            PoseVelocity2d velocity;
+            try {
+                velocity = localizer.update();
+            } catch (RuntimeException e) {
+                if (running) {
+                    RobotLog.ee(TAG, e, "localizer update failed; odometry stopped");
+                    failure = e;
+                    running = false;
+                    Snapshot last = latest.get();
+                    latest.set(new Snapshot(last.pose, last.velocity, last.timestampNanos, true));
+                }
+                // else stop() was called, and the hardware may already be gone
+                return;
+            }
+            latest.set(new Snapshot(localizer.getPose(), velocity, System.nanoTime()));
+            if (pose != null) {
+                // a newer setPose() is left for the next update
+                pendingPose.compareAndSet(pose, null);
+            }
+
+            next += periodNanos;
+            long remaining = next - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+            } else {
+                // overran the period; don't try to catch up with back-to-back updates
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Returns the newest snapshot. Its {@link Snapshot#timestampNanos} tells how old it is, and
+     * {@link Snapshot#stale} is set once the odometry thread has failed.
+     * @return the newest snapshot
+     */
+    public Snapshot getSnapshot() {
+        return latest.get();
+    }
+
+    /**
+     * @return whether the odometry thread is running; false before start(), after stop() and
+     *     after a failure
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the exception that stopped the odometry thread, or null if it has not failed since
+     *     the last start()
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void setPose(Pose2d pose) {
+        pendingPose.set(pose);
+    }
+
+    @Override
+    public Pose2d getPose() {
+        Pose2d pose = pendingPose.get();
+        return pose != null ? pose : latest.get().pose;
+    }
+
+    @Override
+    public PoseVelocity2d update() {
+        RuntimeException failure = this.failure;
+        if (failure != null) {
+            throw new IllegalStateException("odometry thread failed", failure);
+        }
+        return latest.get().velocity;
+    }
+}
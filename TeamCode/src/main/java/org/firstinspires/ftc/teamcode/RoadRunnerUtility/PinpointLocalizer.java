@@ -7,23 +7,34 @@ import com.acmerobotics.roadrunner.Rotation2d;
 import com.acmerobotics.roadrunner.Vector2d;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
-import java.util.Objects;
-
 @Config
 public final class PinpointLocalizer implements Localizer {
     public static class Params {
         public double parYTicks = 0.0; // y position of the parallel encoder (in tick units)
         public double perpXTicks = 0.0; // x position of the perpendicular encoder (in tick units)
+        // false reads 28 instead of 40 bytes per update and differentiates the pose instead of
+        // reading the velocity registers; read when the localizer is constructed
+        public boolean readVelocities = true;
     }
 
     public static Params PARAMS = new Params();
 
     public final GoBildaPinpointDriver driver;
     public final GoBildaPinpointDriver.EncoderDirection initialParDirection, initialPerpDirection;
+    public final GoBildaPinpointDriver.ReadPlan readPlan;
 
     private Pose2d txWorldPinpoint;
     private Pose2d txPinpointRobot = new Pose2d(0, 0, 0);
 
+    // status, x, y, heading, x velocity, y velocity, heading velocity
+    private final double[] sample = new double[7];
+    private SensorPoller poller;
+    private long captureNanos = -1;
+
+    // last pose and velocity for differentiation when the velocity registers aren't read
+    private double lastX, lastY, lastHeading, xVel, yVel, headingVel;
+    private long lastCaptureNanos = -1;
+
     public PinpointLocalizer(HardwareMap hardwareMap, double inPerTick, Pose2d initialPose) {
         // TODO: make sure your config has a Pinpoint device with this name
         //   see https://ftc-docs.firstinspires.org/en/latest/hardware_and_software_configuration/configuring/index.html
@@ -41,6 +52,8 @@ public final class PinpointLocalizer implements Localizer {
 
         driver.resetPosAndIMU();
 
+        readPlan = PARAMS.readVelocities ? GoBildaPinpointDriver.ReadPlan.ALL : GoBildaPinpointDriver.ReadPlan.POSITION;
+
         txWorldPinpoint = initialPose;
     }
 
@@ -54,15 +67,84 @@ public final class PinpointLocalizer implements Localizer {
         return txWorldPinpoint.times(txPinpointRobot);
     }
 
+    /**
+     * Moves the Pinpoint reads to a background thread; update() then returns the newest
+     * complete sample instead of reading the device, and throws if the thread has died.
+     */
+    public void startPolling(double rateHz) {
+        if (poller == null) {
+            poller = new SensorPoller("PinpointPoller", sample.length, rateHz, this::read);
+            poller.start();
+        }
+    }
+
+    public void stopPolling() {
+        if (poller != null) {
+            poller.stop();
+            poller = null;
+        }
+    }
+
+    private void read(double[] out) {
+        driver.update(readPlan);
+        out[0] = driver.getDeviceStatus().ordinal();
+        out[1] = driver.getPosX();
+        out[2] = driver.getPosY();
+        out[3] = driver.getHeading();
+        out[4] = driver.getVelX();
+        out[5] = driver.getVelY();
+        out[6] = driver.getHeadingVelocity();
+    }
+
+    /**
+     * @return when the sample used by the last update was read, in System.nanoTime() terms
+     */
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
     @Override
     public PoseVelocity2d update() {
-        driver.update();
-        if (Objects.requireNonNull(driver.getDeviceStatus()) == GoBildaPinpointDriver.DeviceStatus.READY) {
-            txPinpointRobot = new Pose2d(driver.getPosX() / 25.4, driver.getPosY() / 25.4, driver.getHeading());
-            Vector2d worldVelocity = new Vector2d(driver.getVelX() / 25.4, driver.getVelY() / 25.4);
-            Vector2d robotVelocity = Rotation2d.fromDouble(-driver.getHeading()).times(worldVelocity);
-            return new PoseVelocity2d(robotVelocity, driver.getHeadingVelocity());
+        if (poller != null) {
+            long timestamp = poller.latest(sample);
+            if (timestamp < 0) {
+                return new PoseVelocity2d(new Vector2d(0, 0), 0);
+            }
+            captureNanos = timestamp;
+        } else {
+            read(sample);
+            captureNanos = System.nanoTime();
+        }
+        if (!readPlan.includes(GoBildaPinpointDriver.Field.X_VELOCITY)) {
+            differentiate();
+        }
+
+        if ((int) sample[0] == GoBildaPinpointDriver.DeviceStatus.READY.ordinal()) {
+            txPinpointRobot = new Pose2d(sample[1] / 25.4, sample[2] / 25.4, sample[3]);
+            Vector2d worldVelocity = new Vector2d(sample[4] / 25.4, sample[5] / 25.4);
+            Vector2d robotVelocity = Rotation2d.fromDouble(-sample[3]).times(worldVelocity);
+            return new PoseVelocity2d(robotVelocity, sample[6]);
         }
         return new PoseVelocity2d(new Vector2d(0, 0), 0);
     }
+
+    // fills the velocity part of the sample from the change in pose since the last new sample
+    private void differentiate() {
+        if (captureNanos != lastCaptureNanos) {
+            if (lastCaptureNanos >= 0) {
+                double dt = (captureNanos - lastCaptureNanos) * 1e-9;
+                double dHeading = sample[3] - lastHeading;
+                xVel = (sample[1] - lastX) / dt;
+                yVel = (sample[2] - lastY) / dt;
+                headingVel = Math.atan2(Math.sin(dHeading), Math.cos(dHeading)) / dt;
+            }
+            lastX = sample[1];
+            lastY = sample[2];
+            lastHeading = sample[3];
+            lastCaptureNanos = captureNanos;
+        }
+        sample[4] = xVel;
+        sample[5] = yVel;
+        sample[6] = headingVel;
+    }
 }
@@ -0,0 +1,141 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import com.acmerobotics.roadrunner.Pose2d;
+
+/**
+ * Fixed-capacity history of timestamped poses, stored in parallel primitive arrays.
+ * Index 0 is the oldest retained sample and size() - 1 the newest; once full, each add
+ * overwrites the oldest sample.
+ */
+public final class PoseHistory {
+    private final double[] x, y, heading;
+    private final long[] timestamps;
+
+    // slot of the next write
+    private int head;
+    private int size;
+
+    public PoseHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        x = new double[capacity];
+        y = new double[capacity];
+        heading = new double[capacity];
+        timestamps = new long[capacity];
+    }
+
+    public int capacity() {
+        return x.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public void add(Pose2d pose, long timestampNanos) {
+        x[head] = pose.position.x;
+        y[head] = pose.position.y;
+        heading[head] = pose.heading.toDouble();
+        timestamps[head] = timestampNanos;
+
+        head = (head + 1) % x.length;
+        if (size < x.length) {
+            size++;
+        }
+    }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + " out of " + size);
+        }
+        int s = head - size + i;
+        return s < 0 ? s + x.length : s;
+    }
+
+    public double x(int i) {
+        return x[slot(i)];
+    }
+
+    public double y(int i) {
+        return y[slot(i)];
+    }
+
+    public double heading(int i) {
+        return heading[slot(i)];
+    }
+
+    public long timestamp(int i) {
+        return timestamps[slot(i)];
+    }
+
+    public Pose2d get(int i) {
+        int s = slot(i);
+        return new Pose2d(x[s], y[s], heading[s]);
+    }
+
+    /**
+     * @return the index of the newest sample taken at or before the timestamp, or -1 if every
+     * retained sample is newer
+     */
+    public int indexAt(long timestampNanos) {
+        int lo = 0, hi = size - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[slot(mid)] <= timestampNanos) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Interpolates the pose at a past timestamp. Timestamps newer than the newest sample return
+     * the newest pose.
+     * @return the interpolated pose, or null if the timestamp predates the retained history
+     */
+    public Pose2d poseAt(long timestampNanos) {
+        int i = indexAt(timestampNanos);
+        if (i < 0) {
+            return null;
+        }
+        int a = slot(i);
+        if (i == size - 1 || timestamps[a] == timestampNanos) {
+            return new Pose2d(x[a], y[a], heading[a]);
+        }
+
+        int b = slot(i + 1);
+        double alpha = (double) (timestampNanos - timestamps[a]) / (timestamps[b] - timestamps[a]);
+        double headingDelta = Math.atan2(Math.sin(heading[b] - heading[a]), Math.cos(heading[b] - heading[a]));
+        return new Pose2d(
+                x[a] + alpha * (x[b] - x[a]),
+                y[a] + alpha * (y[b] - y[a]),
+                heading[a] + alpha * headingDelta
+        );
+    }
+
+    /**
+     * Applies a world-frame correction (correction * pose) to every sample newer than the
+     * timestamp, so that later lookups see the corrected estimate.
+     */
+    public void correctSince(long timestampNanos, Pose2d correction) {
+        double cos = correction.heading.real;
+        double sin = correction.heading.imag;
+        double headingDelta = correction.heading.toDouble();
+        for (int i = indexAt(timestampNanos) + 1; i < size; i++) {
+            int s = slot(i);
+            double px = x[s], py = y[s];
+            x[s] = correction.position.x + cos * px - sin * py;
+            y[s] = correction.position.y + sin * px + cos * py;
+            heading[s] += headingDelta;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads a sensor at a fixed rate on its own thread, so the main loop never blocks on the bus.
+ * <p>
+ * Samples are double-buffered: the polling thread fills the slot readers are not looking at and
+ * then flips it to the front. Each slot carries a sequence number that is odd while it is being
+ * written, and readers retry if the number changed under them, so {@link #latest(double[])} always
+ * returns one complete sample without locking. Values are stored as raw long bits in atomic arrays
+ * to keep the sequence checks ordered on Android, which has no standalone memory fences.
+ * <p>
+ * If the source throws while the poller is running, the polling thread logs the exception and
+ * stops, and {@link #latest(double[])} rethrows it instead of handing out the last sample as if
+ * it were current.
+ */
+public final class SensorPoller {
+    private static final String TAG = "SensorPoller";
+
+    public interface Source {
+        /**
+         * Reads the sensor once, on the polling thread.
+         * @param out the values of the sample, written in place
+         */
+        void read(double[] out);
+    }
+
+    private final Source source;
+    private final String name;
+    private final int width;
+    private final long periodNanos;
+
+    private final double[] scratch;
+    private final AtomicLongArray values;
+    private final AtomicLongArray sequences = new AtomicLongArray(2);
+    private final AtomicLongArray captureNanos = new AtomicLongArray(2);
+    // slot holding the newest complete sample, or -1 before the first one
+    private volatile int front = -1;
+
+    private volatile boolean running;
+    private volatile RuntimeException failure;
+    private Thread thread;
+
+    public SensorPoller(String name, int width, double rateHz, Source source) {
+        this.name = name;
+        this.width = width;
+        this.periodNanos = (long) (1e9 / rateHz);
+        this.source = source;
+
+        scratch = new double[width];
+        values = new AtomicLongArray(2 * width);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        failure = null;
+        running = true;
+        thread = new Thread(this::loop, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * @return whether the polling thread is running; false before start(), after stop() and after
+     *     a failure
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the exception that stopped the polling thread, or null if it has not failed since
+     *     the last start()
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    private void loop() {
+        long next = System.nanoTime();
+        while (running && !Thread.currentThread().isInterrupted()) {
+            long before = System.nanoTime();
+            try {
+                source.read(scratch);
+            } catch (RuntimeException e) {
+                if (running) {
+                    RobotLog.ee(TAG, e, "%s: read failed; polling stopped", name);
+                    failure = e;
+                    running = false;
+                }
+                // else stop() was called, and the hardware may already be gone
+                return;
+            }
+            // the sample was taken somewhere during the read; the midpoint is the best guess
+            publish((before + System.nanoTime()) / 2);
+
+            next += periodNanos;
+            long remaining = next - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+            } else {
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    private void publish(long timestampNanos) {
+        int back = front == 0 ? 1 : 0;
+        sequences.incrementAndGet(back);
+        for (int i = 0; i < width; i++) {
+            values.set(back * width + i, Double.doubleToRawLongBits(scratch[i]));
+        }
+        captureNanos.set(back, timestampNanos);
+        sequences.incrementAndGet(back);
+        front = back;
+    }
+
+    /**
+     * Copies the newest complete sample without blocking on the polling thread.
+     * @param out receives the values of the sample
+     * @return the capture time of the sample in System.nanoTime() terms, or -1 if there is none yet
+     * @throws IllegalStateException if the polling thread has failed, with the failure as cause
+     */
+    public long latest(double[] out) {
+        RuntimeException failure = this.failure;
+        if (failure != null) {
+            throw new IllegalStateException(name + " stopped polling", failure);
+        }
+        while (true) {
+            int slot = front;
+            if (slot < 0) {
+                return -1;
+            }
+            long sequence = sequences.get(slot);
+            if ((sequence & 1) != 0) {
+                // the writer has lapped us and is refilling this slot; the other one is complete
+                continue;
+            }
+            for (int i = 0; i < width; i++) {
+                out[i] = Double.longBitsToDouble(values.get(slot * width + i));
+            }
+            long timestamp = captureNanos.get(slot);
+            if (sequences.get(slot) == sequence) {
+                return timestamp;
+            }
+        }
+    }
+}
@@ -7,7 +7,6 @@ import com.acmerobotics.dashboard.config.Config;
 import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
 import com.acmerobotics.roadrunner.AccelConstraint;
 import com.acmerobotics.roadrunner.Action;
-import com.acmerobotics.roadrunner.Actions;
 import com.acmerobotics.roadrunner.AngularVelConstraint;
 import com.acmerobotics.roadrunner.Arclength;
 import com.acmerobotics.roadrunner.DualNum;
@@ -48,14 +47,15 @@ import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.hardware.VoltageSensor;
 
 import org.firstinspires.ftc.teamcode.messages.DriveCommandMessage;
+import org.firstinspires.ftc.teamcode.messages.LogMessage;
 import org.firstinspires.ftc.teamcode.messages.PoseMessage;
 import org.firstinspires.ftc.teamcode.messages.TankCommandMessage;
 import org.firstinspires.ftc.teamcode.messages.TankLocalizerInputsMessage;
+import org.firstinspires.ftc.teamcode.messages.TelemetryLog;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 @Config
@@ -87,6 +87,9 @@ public final class TankDrive {
         public double maxAngVel = Math.PI; // shared with path
         public double maxAngAccel = Math.PI;
 
+        // pose history (one sample per pose estimate update)
+        public int poseHistoryCapacity = 1000;
+
         // path controller gains
         public double ramseteZeta = 0.7; // in the range (0, 1)
         public double ramseteBBar = 2.0; // positive
@@ -111,13 +114,14 @@ public final class TankDrive {
             new ProfileAccelConstraint(PARAMS.minProfileAccel, PARAMS.maxProfileAccel);
 
     public final List<DcMotorEx> leftMotors, rightMotors;
+    public final MotorOutputCache leftOutputs, rightOutputs;
 
     public final LazyImu lazyImu;
 
     public final VoltageSensor voltageSensor;
 
     public final Localizer localizer;
-    private final LinkedList<Pose2d> poseHistory = new LinkedList<>();
+    public final PoseHistory poseHistory = new PoseHistory(PARAMS.poseHistoryCapacity);
 
     private final DownsampledWriter estimatedPoseWriter = new DownsampledWriter("ESTIMATED_POSE", 50_000_000);
     private final DownsampledWriter targetPoseWriter = new DownsampledWriter("TARGET_POSE", 50_000_000);
@@ -125,6 +129,19 @@ public final class TankDrive {
 
     private final DownsampledWriter tankCommandWriter = new DownsampledWriter("TANK_COMMAND", 50_000_000);
 
+    // the followers reuse their controller, feedforward and messages across loops; the controller
+    // and feedforward are only rebuilt when the values in PARAMS change
+    private RamseteController controller;
+    private final double[] controllerGains = new double[2];
+    private MotorFeedforward feedforward;
+    private final double[] feedforwardParams = new double[4];
+
+    private final PoseMessage estimatedPoseMessage = new PoseMessage(new Pose2d(0, 0, 0));
+    private final PoseMessage targetPoseMessage = new PoseMessage(new Pose2d(0, 0, 0));
+    private final DriveCommandMessage driveCommandMessage = new DriveCommandMessage(
+            PoseVelocity2dDual.constant(new PoseVelocity2d(new Vector2d(0, 0), 0), 2));
+    private final TankCommandMessage tankCommandMessage = new TankCommandMessage(0, 0, 0);
+
     public class DriveLocalizer implements Localizer {
         public final List<Encoder> leftEncs, rightEncs;
         private Pose2d pose;
@@ -169,31 +186,42 @@ public final class TankDrive {
 
         @Override
         public PoseVelocity2d update() {
-            Twist2dDual<Time> delta;
-
+            // encoder reads are served from the bulk cache, so there is no HubIO transaction to record
             List<PositionVelocityPair> leftReadings = new ArrayList<>(), rightReadings = new ArrayList<>();
-            double meanLeftPos = 0.0, meanLeftVel = 0.0;
             for (Encoder e : leftEncs) {
-                PositionVelocityPair p = e.getPositionAndVelocity();
+                leftReadings.add(e.getPositionAndVelocity());
+            }
+            for (Encoder e : rightEncs) {
+                rightReadings.add(e.getPositionAndVelocity());
+            }
+
+            TankLocalizerInputsMessage inputs = new TankLocalizerInputsMessage(leftReadings, rightReadings);
+            if (!TelemetryLog.getInstance().offer("TANK_LOCALIZER_INPUTS", inputs)) {
+                FlightRecorder.write("TANK_LOCALIZER_INPUTS", inputs);
+            }
+
+            return update(inputs);
+        }
+
+        /**
+         * Advances the estimate from one set of wheel readings, live or replayed from a log.
+         */
+        public PoseVelocity2d update(TankLocalizerInputsMessage inputs) {
+            double meanLeftPos = 0.0, meanLeftVel = 0.0;
+            for (PositionVelocityPair p : inputs.left) {
                 meanLeftPos += p.position;
                 meanLeftVel += p.velocity;
-                leftReadings.add(p);
             }
-            meanLeftPos /= leftEncs.size();
-            meanLeftVel /= leftEncs.size();
+            meanLeftPos /= inputs.left.length;
+            meanLeftVel /= inputs.left.length;
 
             double meanRightPos = 0.0, meanRightVel = 0.0;
-            for (Encoder e : rightEncs) {
-                PositionVelocityPair p = e.getPositionAndVelocity();
+            for (PositionVelocityPair p : inputs.right) {
                 meanRightPos += p.position;
                 meanRightVel += p.velocity;
-                rightReadings.add(p);
             }
-            meanRightPos /= rightEncs.size();
-            meanRightVel /= rightEncs.size();
-
-            FlightRecorder.write("TANK_LOCALIZER_INPUTS",
-                     new TankLocalizerInputsMessage(leftReadings, rightReadings));
+            meanRightPos /= inputs.right.length;
+            meanRightVel /= inputs.right.length;
 
             if (!initialized) {
                 initialized = true;
@@ -245,6 +273,9 @@ public final class TankDrive {
             m.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
         }
 
+        leftOutputs = new MotorOutputCache(leftMotors);
+        rightOutputs = new MotorOutputCache(rightMotors);
+
         // TODO: reverse motor directions if needed
         //   leftMotors.get(0).setDirection(DcMotorSimple.Direction.REVERSE);
 
@@ -269,11 +300,46 @@ public final class TankDrive {
             maxPowerMag = Math.max(maxPowerMag, power.value());
         }
 
-        for (DcMotorEx m : leftMotors) {
-            m.setPower(wheelVels.left.get(0) / maxPowerMag);
+        setMotorPowers(wheelVels.left.get(0) / maxPowerMag, wheelVels.right.get(0) / maxPowerMag);
+    }
+
+    private RamseteController controller() {
+        if (controller == null
+                || controllerGains[0] != PARAMS.ramseteZeta || controllerGains[1] != PARAMS.ramseteBBar) {
+            controllerGains[0] = PARAMS.ramseteZeta;
+            controllerGains[1] = PARAMS.ramseteBBar;
+            controller = new RamseteController(kinematics.trackWidth, PARAMS.ramseteZeta, PARAMS.ramseteBBar);
         }
-        for (DcMotorEx m : rightMotors) {
-            m.setPower(wheelVels.right.get(0) / maxPowerMag);
+        return controller;
+    }
+
+    private MotorFeedforward feedforward() {
+        if (feedforward == null
+                || feedforwardParams[0] != PARAMS.kS || feedforwardParams[1] != PARAMS.kV
+                || feedforwardParams[2] != PARAMS.kA || feedforwardParams[3] != PARAMS.inPerTick) {
+            feedforwardParams[0] = PARAMS.kS;
+            feedforwardParams[1] = PARAMS.kV;
+            feedforwardParams[2] = PARAMS.kA;
+            feedforwardParams[3] = PARAMS.inPerTick;
+            feedforward = new MotorFeedforward(PARAMS.kS,
+                    PARAMS.kV / PARAMS.inPerTick, PARAMS.kA / PARAMS.inPerTick);
+        }
+        return feedforward;
+    }
+
+    // goes through the logging thread while the TelemetryLog runs, inline otherwise
+    private static void log(DownsampledWriter fallback, String channel, LogMessage message) {
+        if (!TelemetryLog.getInstance().offer(channel, message)) {
+            fallback.write(message);
+        }
+    }
+
+    private void setMotorPowers(double leftPower, double rightPower) {
+        for (int i = 0; i < leftOutputs.size(); i++) {
+            leftOutputs.setPower(i, leftPower);
+        }
+        for (int i = 0; i < rightOutputs.size(); i++) {
+            rightOutputs.setPower(i, rightPower);
         }
     }
 
@@ -302,19 +368,14 @@ public final class TankDrive {
         public boolean run(@NonNull TelemetryPacket p) {
             double t;
             if (beginTs < 0) {
-                beginTs = Actions.now();
+                beginTs = DriveClock.now();
                 t = 0;
             } else {
-                t = Actions.now() - beginTs;
+                t = DriveClock.now() - beginTs;
             }
 
             if (t >= timeTrajectory.duration) {
-                for (DcMotorEx m : leftMotors) {
-                    m.setPower(0);
-                }
-                for (DcMotorEx m : rightMotors) {
-                    m.setPower(0);
-                }
+                setMotorPowers(0, 0);
 
                 return false;
             }
@@ -322,28 +383,22 @@ public final class TankDrive {
             DualNum<Time> x = timeTrajectory.profile.get(t);
 
             Pose2dDual<Arclength> txWorldTarget = timeTrajectory.path.get(x.value(), 3);
-            targetPoseWriter.write(new PoseMessage(txWorldTarget.value()));
+            log(targetPoseWriter, "TARGET_POSE", targetPoseMessage.update(txWorldTarget.value()));
 
             updatePoseEstimate();
 
-            PoseVelocity2dDual<Time> command = new RamseteController(kinematics.trackWidth, PARAMS.ramseteZeta, PARAMS.ramseteBBar)
+            PoseVelocity2dDual<Time> command = controller()
                     .compute(x, txWorldTarget, localizer.getPose());
-            driveCommandWriter.write(new DriveCommandMessage(command));
+            log(driveCommandWriter, "DRIVE_COMMAND", driveCommandMessage.update(command));
 
             TankKinematics.WheelVelocities<Time> wheelVels = kinematics.inverse(command);
             double voltage = voltageSensor.getVoltage();
-            final MotorFeedforward feedforward = new MotorFeedforward(PARAMS.kS,
-                    PARAMS.kV / PARAMS.inPerTick, PARAMS.kA / PARAMS.inPerTick);
+            MotorFeedforward feedforward = feedforward();
             double leftPower = feedforward.compute(wheelVels.left) / voltage;
             double rightPower = feedforward.compute(wheelVels.right) / voltage;
-            tankCommandWriter.write(new TankCommandMessage(voltage, leftPower, rightPower));
+            log(tankCommandWriter, "TANK_COMMAND", tankCommandMessage.update(voltage, leftPower, rightPower));
 
-            for (DcMotorEx m : leftMotors) {
-                m.setPower(leftPower);
-            }
-            for (DcMotorEx m : rightMotors) {
-                m.setPower(rightPower);
-            }
+            setMotorPowers(leftPower, rightPower);
 
             p.put("x", localizer.getPose().position.x);
             p.put("y", localizer.getPose().position.y);
@@ -392,25 +447,20 @@ public final class TankDrive {
         public boolean run(@NonNull TelemetryPacket p) {
             double t;
             if (beginTs < 0) {
-                beginTs = Actions.now();
+                beginTs = DriveClock.now();
                 t = 0;
             } else {
-                t = Actions.now() - beginTs;
+                t = DriveClock.now() - beginTs;
             }
 
             if (t >= turn.duration) {
-                for (DcMotorEx m : leftMotors) {
-                    m.setPower(0);
-                }
-                for (DcMotorEx m : rightMotors) {
-                    m.setPower(0);
-                }
+                setMotorPowers(0, 0);
 
                 return false;
             }
 
             Pose2dDual<Time> txWorldTarget = turn.get(t);
-            targetPoseWriter.write(new PoseMessage(txWorldTarget.value()));
+            log(targetPoseWriter, "TARGET_POSE", targetPoseMessage.update(txWorldTarget.value()));
 
             PoseVelocity2d robotVelRobot = updatePoseEstimate();
 
@@ -421,22 +471,16 @@ public final class TankDrive {
                             PARAMS.turnVelGain * (robotVelRobot.angVel - txWorldTarget.heading.velocity().value())
                     )
             );
-            driveCommandWriter.write(new DriveCommandMessage(command));
+            log(driveCommandWriter, "DRIVE_COMMAND", driveCommandMessage.update(command));
 
             TankKinematics.WheelVelocities<Time> wheelVels = kinematics.inverse(command);
             double voltage = voltageSensor.getVoltage();
-            final MotorFeedforward feedforward = new MotorFeedforward(PARAMS.kS,
-                    PARAMS.kV / PARAMS.inPerTick, PARAMS.kA / PARAMS.inPerTick);
+            MotorFeedforward feedforward = feedforward();
             double leftPower = feedforward.compute(wheelVels.left) / voltage;
             double rightPower = feedforward.compute(wheelVels.right) / voltage;
-            tankCommandWriter.write(new TankCommandMessage(voltage, leftPower, rightPower));
+            log(tankCommandWriter, "TANK_COMMAND", tankCommandMessage.update(voltage, leftPower, rightPower));
 
-            for (DcMotorEx m : leftMotors) {
-                m.setPower(leftPower);
-            }
-            for (DcMotorEx m : rightMotors) {
-                m.setPower(rightPower);
-            }
+            setMotorPowers(leftPower, rightPower);
 
             Canvas c = p.fieldOverlay();
             drawPoseHistory(c);
@@ -462,33 +506,38 @@ public final class TankDrive {
 
     public PoseVelocity2d updatePoseEstimate() {
         PoseVelocity2d vel = localizer.update();
-        poseHistory.add(localizer.getPose());
-
-        while (poseHistory.size() > 100) {
-            poseHistory.removeFirst();
-        }
-
-        estimatedPoseWriter.write(new PoseMessage(localizer.getPose()));
+        poseHistory.add(localizer.getPose(), DriveClock.nanoTime());
 
+        log(estimatedPoseWriter, "ESTIMATED_POSE", estimatedPoseMessage.update(localizer.getPose()));
 
         return vel;
     }
 
-    private void drawPoseHistory(Canvas c) {
-        double[] xPoints = new double[poseHistory.size()];
-        double[] yPoints = new double[poseHistory.size()];
-
-        int i = 0;
-        for (Pose2d t : poseHistory) {
-            xPoints[i] = t.position.x;
-            yPoints[i] = t.position.y;
-
-            i++;
+    /**
+     * Corrects the pose estimate with a delayed absolute measurement, e.g. an AprilTag fix whose
+     * frame was captured some time ago. The odometry motion since the capture is re-applied on top
+     * of the measurement instead of snapping the robot back to where it was then.
+     * @param measuredPose the measured pose at the capture time
+     * @param timestampNanos the capture time, on the {@link DriveClock#nanoTime()} clock that stamps the
+     *                       pose history (System.nanoTime() on the robot, simulated time in a simulation)
+     * @return false if the capture time predates the pose history, in which case nothing changes
+     */
+    public boolean correctPose(Pose2d measuredPose, long timestampNanos) {
+        Pose2d pastPose = poseHistory.poseAt(timestampNanos);
+        if (pastPose == null) {
+            return false;
         }
 
+        Pose2d correction = measuredPose.times(pastPose.inverse());
+        localizer.setPose(correction.times(localizer.getPose()));
+        poseHistory.correctSince(timestampNanos, correction);
+        return true;
+    }
+
+    private void drawPoseHistory(Canvas c) {
         c.setStrokeWidth(1);
         c.setStroke("#3F51B5");
-        c.strokePolyline(xPoints, yPoints);
+        Drawing.drawPoseHistory(c, poseHistory, 100);
     }
 
     public TrajectoryActionBuilder actionBuilder(Pose2d beginPose) {
@@ -16,6 +16,7 @@ import com.acmerobotics.roadrunner.ftc.RawEncoder;
 import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
+import org.firstinspires.ftc.teamcode.messages.TelemetryLog;
 import org.firstinspires.ftc.teamcode.messages.ThreeDeadWheelInputsMessage;
 
 @Config
@@ -66,11 +67,26 @@ public final class ThreeDeadWheelLocalizer implements Localizer {
 
     @Override
     public PoseVelocity2d update() {
+        // encoder reads are served from the bulk cache, so there is no HubIO transaction to record
         PositionVelocityPair par0PosVel = par0.getPositionAndVelocity();
         PositionVelocityPair par1PosVel = par1.getPositionAndVelocity();
         PositionVelocityPair perpPosVel = perp.getPositionAndVelocity();
 
-        FlightRecorder.write("THREE_DEAD_WHEEL_INPUTS", new ThreeDeadWheelInputsMessage(par0PosVel, par1PosVel, perpPosVel));
+        ThreeDeadWheelInputsMessage inputs = new ThreeDeadWheelInputsMessage(par0PosVel, par1PosVel, perpPosVel);
+        if (!TelemetryLog.getInstance().offer("THREE_DEAD_WHEEL_INPUTS", inputs)) {
+            FlightRecorder.write("THREE_DEAD_WHEEL_INPUTS", inputs);
+        }
+
+        return update(inputs);
+    }
+
+    /**
+     * Advances the estimate from one set of encoder readings, live or replayed from a log.
+     */
+    public PoseVelocity2d update(ThreeDeadWheelInputsMessage inputs) {
+        PositionVelocityPair par0PosVel = inputs.par0;
+        PositionVelocityPair par1PosVel = inputs.par1;
+        PositionVelocityPair perpPosVel = inputs.perp;
 
         if (!initialized) {
             initialized = true;
@@ -0,0 +1,293 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import com.acmerobotics.roadrunner.DualNum;
+import com.acmerobotics.roadrunner.Pose2d;
+import com.acmerobotics.roadrunner.Pose2dDual;
+import com.acmerobotics.roadrunner.Rotation2d;
+import com.acmerobotics.roadrunner.Rotation2dDual;
+import com.acmerobotics.roadrunner.Time;
+import com.acmerobotics.roadrunner.TimeTrajectory;
+import com.acmerobotics.roadrunner.TimeTurn;
+import com.acmerobotics.roadrunner.Vector2dDual;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.DoubleFunction;
+
+/**
+ * On-disk cache of time-parameterized trajectory samples.
+ * <p>
+ * Each entry holds the segments of one built path, sampled at a fixed period, in a little-endian
+ * binary file named after the hash of its {@link Key}. Entries are memory-mapped on load, so a cache
+ * hit costs a file open instead of path fitting and profile generation.
+ * <p>
+ * Only motion segments are stored, so entries are built through
+ * {@link MecanumDrive.CachedPathBuilder}, which does not accept markers or waits.
+ */
+public final class TrajectoryCache {
+    private static final String TAG = "TrajectoryCache";
+
+    private static final int MAGIC = 0x52525443; // "RRTC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final int SEGMENT_HEADER_BYTES = 4 + 8 + 8;
+    // x, y and heading, each with its first two time derivatives
+    private static final int SAMPLE_FLOATS = 9;
+    private static final int SAMPLE_BYTES = 4 * SAMPLE_FLOATS;
+
+    public static final double SAMPLE_PERIOD = 0.01;
+
+    /**
+     * Identifies a cached path: its begin pose, the builder calls that produced its segments and
+     * the constraints it was built with.
+     */
+    public static final class Key {
+        private final Pose2d beginPose;
+        private long hash = 0xcbf29ce484222325L;
+
+        public Key(Pose2d beginPose) {
+            this.beginPose = beginPose;
+            add(beginPose.position.x, beginPose.position.y, beginPose.heading.toDouble());
+        }
+
+        public Key add(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                mix(name.charAt(i));
+            }
+            return this;
+        }
+
+        public Key add(double... values) {
+            for (double value : values) {
+                long bits = Double.doubleToLongBits(value);
+                for (int i = 0; i < 8; i++) {
+                    mix((bits >>> (8 * i)) & 0xff);
+                }
+            }
+            return this;
+        }
+
+        private void mix(long b) {
+            // 64-bit FNV-1a
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+
+        public Pose2d getBeginPose() {
+            return beginPose;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+    }
+
+    /**
+     * Samples of a single trajectory or turn, read in place from a (possibly memory-mapped) buffer.
+     */
+    public static final class Samples {
+        public final double dt;
+        public final double duration;
+
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int count;
+
+        private Samples(double dt, double duration, ByteBuffer buffer, int offset, int count) {
+            this.dt = dt;
+            this.duration = duration;
+            this.buffer = buffer;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public double x(int i) {
+            return buffer.getFloat(offset + i * SAMPLE_BYTES);
+        }
+
+        public double y(int i) {
+            return buffer.getFloat(offset + i * SAMPLE_BYTES + 3 * 4);
+        }
+
+        /**
+         * Linearly interpolates the target pose and its derivatives at a time.
+         */
+        public Pose2dDual<Time> get(double t) {
+            double index = Math.max(0.0, Math.min(t, duration)) / dt;
+            int i = Math.max(0, Math.min((int) index, count - 2));
+            double alpha = count > 1 ? Math.min(1.0, index - i) : 0.0;
+
+            return new Pose2dDual<>(
+                    new Vector2dDual<>(
+                            new DualNum<Time>(new double[] {
+                                    lerp(i, 0, alpha), lerp(i, 1, alpha), lerp(i, 2, alpha)
+                            }),
+                            new DualNum<Time>(new double[] {
+                                    lerp(i, 3, alpha), lerp(i, 4, alpha), lerp(i, 5, alpha)
+                            })
+                    ),
+                    Rotation2dDual.exp(new DualNum<Time>(new double[] {
+                            lerp(i, 6, alpha), lerp(i, 7, alpha), lerp(i, 8, alpha)
+                    }))
+            );
+        }
+
+        private double lerp(int i, int field, double alpha) {
+            float a = buffer.getFloat(offset + i * SAMPLE_BYTES + 4 * field);
+            if (alpha == 0.0) {
+                return a;
+            }
+            float b = buffer.getFloat(offset + (i + 1) * SAMPLE_BYTES + 4 * field);
+            return a + (b - a) * alpha;
+        }
+    }
+
+    private final File dir;
+
+    public TrajectoryCache(File dir) {
+        this.dir = dir;
+    }
+
+    public static Samples sample(TimeTrajectory trajectory) {
+        return sample(trajectory.duration, trajectory::get);
+    }
+
+    public static Samples sample(TimeTurn turn) {
+        return sample(turn.duration, turn::get);
+    }
+
+    private static Samples sample(double duration, DoubleFunction<Pose2dDual<Time>> target) {
+        int count = Math.max(2, (int) Math.ceil(duration / SAMPLE_PERIOD) + 1);
+        ByteBuffer buffer = ByteBuffer.allocate(count * SAMPLE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        // headings are unwrapped so that interpolation never crosses the +/- pi seam
+        Rotation2d lastHeading = null;
+        double heading = 0.0;
+        for (int i = 0; i < count; i++) {
+            Pose2dDual<Time> pose = target.apply(Math.min(i * SAMPLE_PERIOD, duration));
+
+            Rotation2d rotation = pose.heading.value();
+            heading = lastHeading == null ? rotation.toDouble() : heading + rotation.minus(lastHeading);
+            lastHeading = rotation;
+            DualNum<Time> headingVel = pose.heading.velocity();
+
+            putDual(buffer, pose.position.x);
+            putDual(buffer, pose.position.y);
+            buffer.putFloat((float) heading);
+            buffer.putFloat((float) component(headingVel, 0));
+            buffer.putFloat((float) component(headingVel, 1));
+        }
+
+        return new Samples(SAMPLE_PERIOD, duration, buffer, 0, count);
+    }
+
+    private static void putDual(ByteBuffer buffer, DualNum<Time> n) {
+        buffer.putFloat((float) component(n, 0));
+        buffer.putFloat((float) component(n, 1));
+        buffer.putFloat((float) component(n, 2));
+    }
+
+    private static double component(DualNum<Time> n, int i) {
+        return i < n.size() ? n.get(i) : 0.0;
+    }
+
+    private File fileFor(Key key) {
+        return new File(dir, String.format(Locale.US, "%016x.bin", key.getHash()));
+    }
+
+    /**
+     * @return the cached segments for the key, or null on a miss
+     */
+    public List<Samples> load(Key key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != key.getHash()) {
+                return null;
+            }
+
+            int segmentCount = buffer.getInt(16);
+            List<Samples> segments = new ArrayList<>(segmentCount);
+            int position = HEADER_BYTES;
+            for (int i = 0; i < segmentCount; i++) {
+                int count = buffer.getInt(position);
+                double dt = buffer.getDouble(position + 4);
+                double duration = buffer.getDouble(position + 12);
+                position += SEGMENT_HEADER_BYTES;
+                if (count < 0 || position + (long) count * SAMPLE_BYTES > buffer.limit()) {
+                    // the samples are read lazily, so a truncated entry has to be caught here
+                    throw new IndexOutOfBoundsException("segment " + i + " runs past the end of the entry");
+                }
+
+                segments.add(new Samples(dt, duration, buffer, position, count));
+                position += count * SAMPLE_BYTES;
+            }
+            return segments;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            RobotLog.ww(TAG, e, "ignoring unreadable cache entry %s", file);
+            return null;
+        }
+    }
+
+    public void store(Key key, List<Samples> segments) {
+        int size = HEADER_BYTES;
+        for (Samples s : segments) {
+            size += SEGMENT_HEADER_BYTES + s.count * SAMPLE_BYTES;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(key.getHash());
+        buffer.putInt(segments.size());
+        for (Samples s : segments) {
+            buffer.putInt(s.count);
+            buffer.putDouble(s.dt);
+            buffer.putDouble(s.duration);
+            for (int i = 0; i < s.count * SAMPLE_BYTES; i++) {
+                buffer.put(s.buffer.get(s.offset + i));
+            }
+        }
+        buffer.flip();
+
+        File file = fileFor(key);
+        File tmp = new File(dir, file.getName() + ".tmp");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            RobotLog.ww(TAG, "could not create %s", dir);
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            RobotLog.ww(TAG, e, "failed to write cache entry %s", file);
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            RobotLog.ww(TAG, "failed to move cache entry into place: %s", file);
+        }
+    }
+}
@@ -22,6 +22,8 @@ import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
 import org.firstinspires.ftc.robotcore.external.navigation.UnnormalizedAngleUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.HardwareUtility.HubIO;
+import org.firstinspires.ftc.teamcode.messages.TelemetryLog;
 import org.firstinspires.ftc.teamcode.messages.TwoDeadWheelInputsMessage;
 
 @Config
@@ -82,6 +84,7 @@ public final class TwoDeadWheelLocalizer implements Localizer {
         YawPitchRollAngles angles = imu.getRobotYawPitchRollAngles();
         // Use degrees here to work around https://github.com/FIRST-Tech-Challenge/FtcRobotController/issues/1070
         AngularVelocity angularVelocityDegrees = imu.getRobotAngularVelocity(AngleUnit.DEGREES);
+        HubIO.recordTransactions(2);
         AngularVelocity angularVelocity = new AngularVelocity(
                 UnnormalizedAngleUnit.RADIANS,
                 (float) Math.toRadians(angularVelocityDegrees.xRotationRate),
@@ -90,12 +93,25 @@ public final class TwoDeadWheelLocalizer implements Localizer {
                 angularVelocityDegrees.acquisitionTime
         );
 
-        FlightRecorder.write("TWO_DEAD_WHEEL_INPUTS", new TwoDeadWheelInputsMessage(parPosVel, perpPosVel, angles, angularVelocity));
+        TwoDeadWheelInputsMessage inputs = new TwoDeadWheelInputsMessage(parPosVel, perpPosVel, angles, angularVelocity);
+        if (!TelemetryLog.getInstance().offer("TWO_DEAD_WHEEL_INPUTS", inputs)) {
+            FlightRecorder.write("TWO_DEAD_WHEEL_INPUTS", inputs);
+        }
+
+        return update(inputs);
+    }
+
+    /**
+     * Advances the estimate from one set of encoder and IMU readings, live or replayed from a log.
+     */
+    public PoseVelocity2d update(TwoDeadWheelInputsMessage inputs) {
+        PositionVelocityPair parPosVel = inputs.par;
+        PositionVelocityPair perpPosVel = inputs.perp;
 
-        Rotation2d heading = Rotation2d.exp(angles.getYaw(AngleUnit.RADIANS));
+        Rotation2d heading = Rotation2d.exp(inputs.yaw);
 
         // see https://github.com/FIRST-Tech-Challenge/FtcRobotController/issues/617
-        double rawHeadingVel = angularVelocity.zRotationRate;
+        double rawHeadingVel = inputs.zRotationRate;
         if (Math.abs(rawHeadingVel - lastRawHeadingVel) > Math.PI) {
             headingVelOffset -= Math.signum(rawHeadingVel) * 2 * Math.PI;
         }
@@ -0,0 +1,150 @@
+package org.firstinspires.ftc.teamcode.messages;
+
+import com.acmerobotics.roadrunner.ftc.PositionVelocityPair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads back a log written by {@link BinaryLogWriter}, one record at a time.
+ * <p>
+ * The file is memory-mapped and records are read in place: {@link #next()} returns the same
+ * {@link Record} object each time, pointed at the next data record. Definition records are
+ * consumed internally.
+ */
+public final class BinaryLogReader {
+    public static final class Channel {
+        public final int id;
+        public final String name;
+        public final LogSchema schema;
+
+        private Channel(int id, String name, LogSchema schema) {
+            this.id = id;
+            this.name = name;
+            this.schema = schema;
+        }
+    }
+
+    /**
+     * A data record, valid until the next call to {@link #next()}. Fields are read in schema
+     * order, the same order {@link LogMessage#write} puts them.
+     */
+    public final class Record {
+        private Channel channel;
+        private int cursor;
+
+        public Channel channel() {
+            return channel;
+        }
+
+        public int readInt() {
+            int value = buffer.getInt(cursor);
+            cursor += 4;
+            return value;
+        }
+
+        public long readLong() {
+            long value = buffer.getLong(cursor);
+            cursor += 8;
+            return value;
+        }
+
+        public double readDouble() {
+            double value = buffer.getDouble(cursor);
+            cursor += 8;
+            return value;
+        }
+
+        public PositionVelocityPair readPair() {
+            return new PositionVelocityPair(readInt(), readInt(), readInt(), readInt());
+        }
+    }
+
+    private final MappedByteBuffer buffer;
+    private final List<Channel> channels = new ArrayList<>();
+    private final Record record = new Record();
+
+    public BinaryLogReader(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.remaining() < BinaryLogWriter.HEADER_BYTES
+                || buffer.getInt() != BinaryLogWriter.MAGIC
+                || buffer.getInt() != BinaryLogWriter.VERSION) {
+            throw new IOException(file + " is not a binary log");
+        }
+    }
+
+    /**
+     * @return the next data record, or null at the end of the log
+     */
+    public Record next() {
+        while (buffer.remaining() >= 2) {
+            int id = buffer.getShort() & 0xffff;
+            if (id == BinaryLogWriter.END) {
+                return null;
+            }
+            if (id == BinaryLogWriter.DEFINITION) {
+                readDefinition();
+                continue;
+            }
+
+            Channel channel = channels.get(id - 1);
+            if (buffer.remaining() < channel.schema.size()) {
+                // truncated tail
+                return null;
+            }
+            record.channel = channel;
+            record.cursor = buffer.position();
+            buffer.position(buffer.position() + channel.schema.size());
+            return record;
+        }
+        return null;
+    }
+
+    private void readDefinition() {
+        int id = buffer.getShort() & 0xffff;
+        String name = getString();
+        LogSchema schema = new LogSchema(getString());
+        int fieldCount = buffer.getShort() & 0xffff;
+        for (int i = 0; i < fieldCount; i++) {
+            LogSchema.Type type = LogSchema.Type.values()[buffer.get()];
+            schema.add(getString(), type);
+        }
+
+        while (channels.size() < id) {
+            channels.add(null);
+        }
+        channels.set(id - 1, new Channel(id, name, schema));
+    }
+
+    private String getString() {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the channels defined so far
+     */
+    public List<Channel> channels() {
+        return channels;
+    }
+
+    /**
+     * Restarts reading from the first record.
+     */
+    public void rewind() {
+        buffer.position(BinaryLogWriter.HEADER_BYTES);
+    }
+}
@@ -0,0 +1,190 @@
+package org.firstinspires.ftc.teamcode.messages;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only binary log of {@link LogMessage} records, written through a memory-mapped window.
+ * <p>
+ * Layout (little-endian): a header with the magic "RRBL" and the format version, then records.
+ * Each record starts with a u16 channel id. The first time a channel is written, a definition
+ * record (id 0xFFFF) gives its id, name and schema; after that each data record is just the id
+ * and schema().size() bytes of fields. An id of 0 marks the end of the data, which is where an
+ * unclosed log's zero-filled tail begins.
+ * <p>
+ * Writing a record is a few relative puts into the mapped window, with no reflection or
+ * allocation. The writer is not thread-safe; use it from a single thread.
+ */
+public final class BinaryLogWriter implements Closeable {
+    private static final String TAG = "BinaryLogWriter";
+
+    static final int MAGIC = 0x4c425252; // "RRBL"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int END = 0;
+    static final int DEFINITION = 0xffff;
+
+    private static final int WINDOW_BYTES = 4 << 20;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<LogSchema> schemas = new ArrayList<>();
+    private boolean failed;
+
+    public BinaryLogWriter(File file) throws IOException {
+        this.file = file;
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("could not create " + dir);
+        }
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        channel = raf.getChannel();
+
+        map(0);
+        window.putInt(MAGIC);
+        window.putInt(VERSION);
+    }
+
+    private void map(long position) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_WRITE, position, WINDOW_BYTES);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = position;
+    }
+
+    private boolean reserve(int bytes) {
+        if (failed) {
+            return false;
+        }
+        if (window.remaining() < bytes) {
+            try {
+                map(windowStart + window.position());
+            } catch (IOException e) {
+                RobotLog.ww(TAG, e, "stopped logging to %s", file);
+                failed = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a record on a channel, defining the channel on first use.
+     */
+    public void write(String channelName, LogMessage message) {
+        Integer id = ids.get(channelName);
+        write(id != null ? id : register(channelName, message.schema()), message);
+    }
+
+    /**
+     * Defines a channel and writes its definition record.
+     * @return the channel id, for {@link #write(int, LogMessage)}
+     */
+    public int register(String channelName, LogSchema schema) {
+        Integer existing = ids.get(channelName);
+        if (existing != null) {
+            if (!schemas.get(existing - 1).sameLayout(schema)) {
+                throw new IllegalArgumentException("channel " + channelName + " already has a different schema");
+            }
+            return existing;
+        }
+        if (schemas.size() + 1 >= DEFINITION) {
+            throw new IllegalStateException("too many channels");
+        }
+
+        schemas.add(schema);
+        int id = schemas.size();
+        ids.put(channelName, id);
+
+        byte[] name = channelName.getBytes(StandardCharsets.UTF_8);
+        byte[] schemaName = schema.name.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> fieldNames = new ArrayList<>();
+        int bytes = 2 + 2 + 2 + name.length + 2 + schemaName.length + 2;
+        for (String field : schema.fieldNames()) {
+            byte[] fieldName = field.getBytes(StandardCharsets.UTF_8);
+            fieldNames.add(fieldName);
+            bytes += 1 + 2 + fieldName.length;
+        }
+        if (!reserve(bytes)) {
+            return id;
+        }
+
+        window.putShort((short) DEFINITION);
+        window.putShort((short) id);
+        putString(name);
+        putString(schemaName);
+        window.putShort((short) schema.fieldCount());
+        for (int i = 0; i < schema.fieldCount(); i++) {
+            window.put((byte) schema.fieldTypes().get(i).ordinal());
+            putString(fieldNames.get(i));
+        }
+        return id;
+    }
+
+    private void putString(byte[] bytes) {
+        window.putShort((short) bytes.length);
+        window.put(bytes);
+    }
+
+    public void write(int id, LogMessage message) {
+        int size = schemas.get(id - 1).size();
+        if (!reserve(2 + size)) {
+            return;
+        }
+        window.putShort((short) id);
+        int start = window.position();
+        message.write(window);
+        if (window.position() - start != size) {
+            throw new IllegalStateException(message.getClass().getSimpleName() + " does not match its schema");
+        }
+    }
+
+    /**
+     * Writes a record whose fields were already serialized, e.g. by a {@link LogQueue}.
+     * @param payload the record's fields, from position to limit
+     */
+    public void write(int id, ByteBuffer payload) {
+        int size = schemas.get(id - 1).size();
+        if (payload.remaining() != size) {
+            throw new IllegalArgumentException("payload does not match the schema of channel " + id);
+        }
+        if (!reserve(2 + size)) {
+            return;
+        }
+        window.putShort((short) id);
+        window.put(payload);
+    }
+
+    /**
+     * @return the number of bytes written so far, header included
+     */
+    public long length() {
+        return windowStart + window.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        long end = length();
+        window.force();
+        channel.truncate(end);
+        raf.close();
+    }
+}
@@ -3,7 +3,18 @@ package org.firstinspires.ftc.teamcode.messages;
 import com.acmerobotics.roadrunner.PoseVelocity2dDual;
 import com.acmerobotics.roadrunner.Time;
 
-public final class DriveCommandMessage {
+import java.nio.ByteBuffer;
+
+public final class DriveCommandMessage implements LogMessage {
+    private static final LogSchema SCHEMA = new LogSchema("DriveCommandMessage")
+            .addLong("timestamp")
+            .addDouble("forwardVelocity")
+            .addDouble("forwardAcceleration")
+            .addDouble("lateralVelocity")
+            .addDouble("lateralAcceleration")
+            .addDouble("angularVelocity")
+            .addDouble("angularAcceleration");
+
     public long timestamp;
     public double forwardVelocity;
     public double forwardAcceleration;
@@ -13,6 +24,10 @@ public final class DriveCommandMessage {
     public double angularAcceleration;
 
     public DriveCommandMessage(PoseVelocity2dDual<Time> poseVelocity) {
+        update(poseVelocity);
+    }
+
+    public DriveCommandMessage update(PoseVelocity2dDual<Time> poseVelocity) {
         this.timestamp = System.nanoTime();
         this.forwardVelocity = poseVelocity.linearVel.x.get(0);
         this.forwardAcceleration = poseVelocity.linearVel.x.get(1);
@@ -20,5 +35,22 @@ public final class DriveCommandMessage {
         this.lateralAcceleration = poseVelocity.linearVel.y.get(1);
         this.angularVelocity = poseVelocity.angVel.get(0);
         this.angularAcceleration = poseVelocity.angVel.get(1);
+        return this;
+    }
+
+    @Override
+    public LogSchema schema() {
+        return SCHEMA;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        buffer.putDouble(forwardVelocity);
+        buffer.putDouble(forwardAcceleration);
+        buffer.putDouble(lateralVelocity);
+        buffer.putDouble(lateralAcceleration);
+        buffer.putDouble(angularVelocity);
+        buffer.putDouble(angularAcceleration);
     }
 }
@@ -0,0 +1,15 @@
+package org.firstinspires.ftc.teamcode.messages;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A message with a fixed binary layout, written by {@link BinaryLogWriter} without reflection.
+ */
+public interface LogMessage {
+    LogSchema schema();
+
+    /**
+     * Writes the fields in schema order with relative puts, exactly schema().size() bytes.
+     */
+    void write(ByteBuffer buffer);
+}
@@ -0,0 +1,94 @@
+package org.firstinspires.ftc.teamcode.messages;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer/single-consumer ring of preallocated log records.
+ * <p>
+ * The producer serializes each message into the next free slot and publishes it by advancing
+ * the tail; the consumer reads slots up to the tail and frees them by advancing the head. Neither
+ * side locks or allocates. When the ring is full the record is dropped and counted, so a slow
+ * consumer never stalls the producer.
+ * <p>
+ * Each record is tagged with the logging session it was offered in, and the consumer skips
+ * records of other sessions, so a record offered while the log was stopping never ends up in the
+ * next session's file.
+ */
+final class LogQueue {
+    static final int SLOT_BYTES = 256;
+
+    interface Consumer {
+        void accept(int channel, ByteBuffer payload);
+    }
+
+    private final ByteBuffer[] slots;
+    private final int[] channels;
+    private final int[] sessions;
+    private final int mask;
+
+    final Thread producer;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped;
+
+    /**
+     * @param capacity number of slots, a power of two
+     * @param dropped counter incremented for every record dropped on a full ring
+     */
+    LogQueue(Thread producer, int capacity, AtomicLong dropped) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        slots = new ByteBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = ByteBuffer.allocate(SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        channels = new int[capacity];
+        sessions = new int[capacity];
+        mask = capacity - 1;
+        this.producer = producer;
+        this.dropped = dropped;
+    }
+
+    /**
+     * Producer side.
+     * @return false if the ring was full and the record was dropped
+     */
+    boolean offer(int channel, int session, LogMessage message) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int i = (int) (t & mask);
+        ByteBuffer slot = slots[i];
+        slot.clear();
+        message.write(slot);
+        slot.flip();
+        channels[i] = channel;
+        sessions[i] = session;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side: hands every published record of the given session to the consumer, oldest
+     * first, and discards the records of other sessions.
+     * @return the number of records drained, discarded ones included
+     */
+    int drain(Consumer consumer, int session) {
+        long h = head.get();
+        long t = tail.get();
+        for (long n = h; n < t; n++) {
+            int i = (int) (n & mask);
+            if (sessions[i] == session) {
+                consumer.accept(channels[i], slots[i]);
+            }
+            head.lazySet(n + 1);
+        }
+        return (int) (t - h);
+    }
+}
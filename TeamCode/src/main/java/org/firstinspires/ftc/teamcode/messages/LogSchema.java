@@ -0,0 +1,105 @@
+package org.firstinspires.ftc.teamcode.messages;
+
+import com.acmerobotics.roadrunner.ftc.PositionVelocityPair;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixed record layout of a message type: an ordered list of primitive fields. Every record of a
+ * channel has exactly size() bytes, written little-endian in field order.
+ */
+public final class LogSchema {
+    public enum Type {
+        INT(4),
+        LONG(8),
+        DOUBLE(8);
+
+        public final int size;
+
+        Type(int size) {
+            this.size = size;
+        }
+    }
+
+    public final String name;
+    private final List<String> fieldNames = new ArrayList<>();
+    private final List<Type> fieldTypes = new ArrayList<>();
+    private int size;
+
+    public LogSchema(String name) {
+        this.name = name;
+    }
+
+    public LogSchema addInt(String field) {
+        return add(field, Type.INT);
+    }
+
+    public LogSchema addLong(String field) {
+        return add(field, Type.LONG);
+    }
+
+    public LogSchema addDouble(String field) {
+        return add(field, Type.DOUBLE);
+    }
+
+    /**
+     * Adds the four int fields of a {@link PositionVelocityPair}, written by {@link #putPair}.
+     */
+    public LogSchema addPair(String field) {
+        return addInt(field + ".position")
+                .addInt(field + ".velocity")
+                .addInt(field + ".rawPosition")
+                .addInt(field + ".rawVelocity");
+    }
+
+    public LogSchema add(String field, Type type) {
+        fieldNames.add(field);
+        fieldTypes.add(type);
+        size += type.size;
+        return this;
+    }
+
+    public static void putPair(ByteBuffer buffer, PositionVelocityPair pair) {
+        buffer.putInt(pair.position);
+        buffer.putInt(pair.velocity);
+        buffer.putInt(pair.rawPosition);
+        buffer.putInt(pair.rawVelocity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int fieldCount() {
+        return fieldNames.size();
+    }
+
+    public List<String> fieldNames() {
+        return Collections.unmodifiableList(fieldNames);
+    }
+
+    public List<Type> fieldTypes() {
+        return Collections.unmodifiableList(fieldTypes);
+    }
+
+    /**
+     * @return the byte offset of a field within a record, or -1 if the schema has no such field
+     */
+    public int offsetOf(String field) {
+        int offset = 0;
+        for (int i = 0; i < fieldNames.size(); i++) {
+            if (fieldNames.get(i).equals(field)) {
+                return offset;
+            }
+            offset += fieldTypes.get(i).size;
+        }
+        return -1;
+    }
+
+    public boolean sameLayout(LogSchema other) {
+        return fieldNames.equals(other.fieldNames) && fieldTypes.equals(other.fieldTypes);
+    }
+}
@@ -1,6 +1,16 @@
 package org.firstinspires.ftc.teamcode.messages;
 
-public final class MecanumCommandMessage {
+import java.nio.ByteBuffer;
+
+public final class MecanumCommandMessage implements LogMessage {
+    private static final LogSchema SCHEMA = new LogSchema("MecanumCommandMessage")
+            .addLong("timestamp")
+            .addDouble("voltage")
+            .addDouble("leftFrontPower")
+            .addDouble("leftBackPower")
+            .addDouble("rightBackPower")
+            .addDouble("rightFrontPower");
+
     public long timestamp;
     public double voltage;
     public double leftFrontPower;
@@ -9,11 +19,31 @@ public final class MecanumCommandMessage {
     public double rightFrontPower;
 
     public MecanumCommandMessage(double voltage, double leftFrontPower, double leftBackPower, double rightBackPower, double rightFrontPower) {
+        update(voltage, leftFrontPower, leftBackPower, rightBackPower, rightFrontPower);
+    }
+
+    public MecanumCommandMessage update(double voltage, double leftFrontPower, double leftBackPower, double rightBackPower, double rightFrontPower) {
         this.timestamp = System.nanoTime();
         this.voltage = voltage;
         this.leftFrontPower = leftFrontPower;
         this.leftBackPower = leftBackPower;
         this.rightBackPower = rightBackPower;
         this.rightFrontPower = rightFrontPower;
+        return this;
+    }
+
+    @Override
+    public LogSchema schema() {
+        return SCHEMA;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        buffer.putDouble(voltage);
+        buffer.putDouble(leftFrontPower);
+        buffer.putDouble(leftBackPower);
+        buffer.putDouble(rightBackPower);
+        buffer.putDouble(rightFrontPower);
     }
 }
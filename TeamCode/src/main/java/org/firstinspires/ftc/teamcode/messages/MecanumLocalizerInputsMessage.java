@@ -5,7 +5,19 @@ import com.acmerobotics.roadrunner.ftc.PositionVelocityPair;
 import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
 
-public final class MecanumLocalizerInputsMessage {
+import java.nio.ByteBuffer;
+
+public final class MecanumLocalizerInputsMessage implements LogMessage {
+    private static final LogSchema SCHEMA = new LogSchema("MecanumLocalizerInputsMessage")
+            .addLong("timestamp")
+            .addPair("leftFront")
+            .addPair("leftBack")
+            .addPair("rightBack")
+            .addPair("rightFront")
+            .addDouble("yaw")
+            .addDouble("pitch")
+            .addDouble("roll");
+
     public long timestamp;
     public PositionVelocityPair leftFront;
     public PositionVelocityPair leftBack;
@@ -27,4 +39,32 @@ public final class MecanumLocalizerInputsMessage {
             this.roll = angles.getRoll(AngleUnit.RADIANS);
         }
     }
+
+    public MecanumLocalizerInputsMessage(BinaryLogReader.Record record) {
+        this.timestamp = record.readLong();
+        this.leftFront = record.readPair();
+        this.leftBack = record.readPair();
+        this.rightBack = record.readPair();
+        this.rightFront = record.readPair();
+        this.yaw = record.readDouble();
+        this.pitch = record.readDouble();
+        this.roll = record.readDouble();
+    }
+
+    @Override
+    public LogSchema schema() {
+        return SCHEMA;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        LogSchema.putPair(buffer, leftFront);
+        LogSchema.putPair(buffer, leftBack);
+        LogSchema.putPair(buffer, rightBack);
+        LogSchema.putPair(buffer, rightFront);
+        buffer.putDouble(yaw);
+        buffer.putDouble(pitch);
+        buffer.putDouble(roll);
+    }
 }
@@ -2,17 +2,50 @@ package org.firstinspires.ftc.teamcode.messages;
 
 import com.acmerobotics.roadrunner.Pose2d;
 
-public final class PoseMessage {
+import java.nio.ByteBuffer;
+
+public final class PoseMessage implements LogMessage {
+    // private, so that FlightRecorder's reflection over public fields doesn't pick it up
+    private static final LogSchema SCHEMA = new LogSchema("PoseMessage")
+            .addLong("timestamp")
+            .addDouble("x")
+            .addDouble("y")
+            .addDouble("heading");
+
     public long timestamp;
     public double x;
     public double y;
     public double heading;
 
     public PoseMessage(Pose2d pose) {
+        update(pose);
+    }
+
+    public PoseMessage(BinaryLogReader.Record record) {
+        this.timestamp = record.readLong();
+        this.x = record.readDouble();
+        this.y = record.readDouble();
+        this.heading = record.readDouble();
+    }
+
+    public PoseMessage update(Pose2d pose) {
         this.timestamp = System.nanoTime();
         this.x = pose.position.x;
         this.y = pose.position.y;
         this.heading = pose.heading.toDouble();
+        return this;
+    }
+
+    @Override
+    public LogSchema schema() {
+        return SCHEMA;
     }
-}
 
+    @Override
+    public void write(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+        buffer.putDouble(heading);
+    }
+}
@@ -1,15 +1,41 @@
 package org.firstinspires.ftc.teamcode.messages;
 
-public final class TankCommandMessage {
+import java.nio.ByteBuffer;
+
+public final class TankCommandMessage implements LogMessage {
+    private static final LogSchema SCHEMA = new LogSchema("TankCommandMessage")
+            .addLong("timestamp")
+            .addDouble("voltage")
+            .addDouble("leftPower")
+            .addDouble("rightPower");
+
     public long timestamp;
     public double voltage;
     public double leftPower;
     public double rightPower;
 
     public TankCommandMessage(double voltage, double leftPower, double rightPower) {
+        update(voltage, leftPower, rightPower);
+    }
+
+    public TankCommandMessage update(double voltage, double leftPower, double rightPower) {
         this.timestamp = System.nanoTime();
         this.voltage = voltage;
         this.leftPower = leftPower;
         this.rightPower = rightPower;
+        return this;
+    }
+
+    @Override
+    public LogSchema schema() {
+        return SCHEMA;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        buffer.putDouble(voltage);
+        buffer.putDouble(leftPower);
+        buffer.putDouble(rightPower);
     }
 }
@@ -2,9 +2,14 @@ package org.firstinspires.ftc.teamcode.messages;
 
 import com.acmerobotics.roadrunner.ftc.PositionVelocityPair;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
-public final class TankLocalizerInputsMessage {
+public final class TankLocalizerInputsMessage implements LogMessage {
+    // the layout depends on the motor count per side; the last one built is kept
+    private static LogSchema schema;
+    private static int schemaLeft = -1, schemaRight = -1;
+
     public long timestamp;
     public PositionVelocityPair[] left;
     public PositionVelocityPair[] right;
@@ -14,4 +19,51 @@ public final class TankLocalizerInputsMessage {
         this.left = left.toArray(new PositionVelocityPair[0]);
         this.right = right.toArray(new PositionVelocityPair[0]);
     }
+
+    /**
+     * @param leftCount the number of left motors in the recorded drive
+     */
+    public TankLocalizerInputsMessage(BinaryLogReader.Record record, int leftCount) {
+        int rightCount = (record.channel().schema.fieldCount() - 1) / 4 - leftCount;
+        this.timestamp = record.readLong();
+        this.left = new PositionVelocityPair[leftCount];
+        for (int i = 0; i < leftCount; i++) {
+            left[i] = record.readPair();
+        }
+        this.right = new PositionVelocityPair[rightCount];
+        for (int i = 0; i < rightCount; i++) {
+            right[i] = record.readPair();
+        }
+    }
+
+    @Override
+    public LogSchema schema() {
+        return schemaFor(left.length, right.length);
+    }
+
+    private static synchronized LogSchema schemaFor(int leftCount, int rightCount) {
+        if (schema == null || schemaLeft != leftCount || schemaRight != rightCount) {
+            schema = new LogSchema("TankLocalizerInputsMessage").addLong("timestamp");
+            for (int i = 0; i < leftCount; i++) {
+                schema.addPair("left[" + i + "]");
+            }
+            for (int i = 0; i < rightCount; i++) {
+                schema.addPair("right[" + i + "]");
+            }
+            schemaLeft = leftCount;
+            schemaRight = rightCount;
+        }
+        return schema;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        for (PositionVelocityPair pair : left) {
+            LogSchema.putPair(buffer, pair);
+        }
+        for (PositionVelocityPair pair : right) {
+            LogSchema.putPair(buffer, pair);
+        }
+    }
 }
@@ -0,0 +1,196 @@
+package org.firstinspires.ftc.teamcode.messages;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves log serialization and I/O off the control loop.
+ * <p>
+ * While running, {@link #offer} copies a message into the calling thread's {@link LogQueue}
+ * and returns; a background thread drains every queue into a {@link BinaryLogWriter}. Each
+ * producer thread gets its own single-producer ring, so the drive loop and an odometry thread
+ * can both log. Records that do not fit are dropped and counted in {@link #getDropped()}.
+ * Each start() begins a new session; records still queued from an earlier one are discarded.
+ * <p>
+ * When the log is not running, offer() returns false and callers log inline as before.
+ */
+public final class TelemetryLog {
+    private static final String TAG = "TelemetryLog";
+
+    private static final int QUEUE_CAPACITY = 256;
+    private static final long IDLE_NANOS = 2_000_000;
+
+    private static final TelemetryLog instance = new TelemetryLog();
+
+    public static TelemetryLog getInstance() {
+        return instance;
+    }
+
+    // channel registry shared by all producers; ids start at 1
+    private final Map<String, Integer> channelIds = new ConcurrentHashMap<>();
+    private final List<String> channelNames = new CopyOnWriteArrayList<>();
+    private final List<LogSchema> channelSchemas = new CopyOnWriteArrayList<>();
+
+    private final List<LogQueue> queues = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ThreadLocal<LogQueue> localQueue = new ThreadLocal<LogQueue>() {
+        @Override
+        protected LogQueue initialValue() {
+            LogQueue queue = new LogQueue(Thread.currentThread(), QUEUE_CAPACITY, dropped);
+            queues.add(queue);
+            return queue;
+        }
+    };
+
+    // owned by the logging thread
+    private BinaryLogWriter writer;
+    private int[] writerIds = new int[16];
+    private final LogQueue.Consumer sink = this::writeRecord;
+
+    // bumped by start() before running is set, read by producers before they check running
+    private volatile int session;
+    private volatile boolean running;
+    private Thread thread;
+
+    private TelemetryLog() {}
+
+    /**
+     * Opens a new log file and starts the logging thread.
+     * @return false if the file could not be opened
+     */
+    public synchronized boolean start(File file) {
+        if (running) {
+            return true;
+        }
+        try {
+            writer = new BinaryLogWriter(file);
+        } catch (IOException e) {
+            RobotLog.ww(TAG, e, "could not open %s", file);
+            return false;
+        }
+        Arrays.fill(writerIds, 0);
+        dropped.set(0);
+
+        session++;
+        running = true;
+        thread = new Thread(this::loop, "TelemetryLog");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Stops accepting records, writes out what is queued and closes the file.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the number of records dropped because the logging thread fell behind
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Queues a record for the logging thread. Never blocks.
+     * @return false if the log is not running, in which case nothing was queued
+     */
+    public boolean offer(String channel, LogMessage message) {
+        // a producer that races stop() and start() tags its record with the old session
+        int session = this.session;
+        if (!running) {
+            return false;
+        }
+        Integer id = channelIds.get(channel);
+        if (id == null) {
+            id = register(channel, message.schema());
+        }
+        localQueue.get().offer(id, session, message);
+        return true;
+    }
+
+    private synchronized int register(String channel, LogSchema schema) {
+        Integer id = channelIds.get(channel);
+        if (id != null) {
+            return id;
+        }
+        if (schema.size() > LogQueue.SLOT_BYTES) {
+            throw new IllegalArgumentException(schema.name + " records are larger than a queue slot");
+        }
+        channelNames.add(channel);
+        channelSchemas.add(schema);
+        id = channelNames.size();
+        channelIds.put(channel, id);
+        return id;
+    }
+
+    private void loop() {
+        while (running) {
+            if (drainAll() == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+        drainAll();
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            RobotLog.ww(TAG, e, "failed to close the log");
+        }
+        writer = null;
+        if (dropped.get() > 0) {
+            RobotLog.ww(TAG, "dropped %d records", dropped.get());
+        }
+    }
+
+    private int drainAll() {
+        int session = this.session;
+        int drained = 0;
+        for (LogQueue queue : queues) {
+            // only a producer that was already dead before the drain leaves nothing behind it
+            boolean dead = !queue.producer.isAlive();
+            drained += queue.drain(sink, session);
+            if (dead) {
+                queues.remove(queue);
+            }
+        }
+        return drained;
+    }
+
+    private void writeRecord(int channel, ByteBuffer payload) {
+        if (channel >= writerIds.length) {
+            writerIds = Arrays.copyOf(writerIds, 2 * channel);
+        }
+        int id = writerIds[channel];
+        if (id == 0) {
+            id = writer.register(channelNames.get(channel - 1), channelSchemas.get(channel - 1));
+            writerIds[channel] = id;
+        }
+        writer.write(id, payload);
+    }
+}
@@ -2,7 +2,15 @@ package org.firstinspires.ftc.teamcode.messages;
 
 import com.acmerobotics.roadrunner.ftc.PositionVelocityPair;
 
-public final class ThreeDeadWheelInputsMessage {
+import java.nio.ByteBuffer;
+
+public final class ThreeDeadWheelInputsMessage implements LogMessage {
+    private static final LogSchema SCHEMA = new LogSchema("ThreeDeadWheelInputsMessage")
+            .addLong("timestamp")
+            .addPair("par0")
+            .addPair("par1")
+            .addPair("perp");
+
     public long timestamp;
     public PositionVelocityPair par0;
     public PositionVelocityPair par1;
@@ -14,4 +22,24 @@ public final class ThreeDeadWheelInputsMessage {
         this.par1 = par1;
         this.perp = perp;
     }
-}
\ No newline at end of file
+
+    public ThreeDeadWheelInputsMessage(BinaryLogReader.Record record) {
+        this.timestamp = record.readLong();
+        this.par0 = record.readPair();
+        this.par1 = record.readPair();
+        this.perp = record.readPair();
+    }
+
+    @Override
+    public LogSchema schema() {
+        return SCHEMA;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        LogSchema.putPair(buffer, par0);
+        LogSchema.putPair(buffer, par1);
+        LogSchema.putPair(buffer, perp);
+    }
+}
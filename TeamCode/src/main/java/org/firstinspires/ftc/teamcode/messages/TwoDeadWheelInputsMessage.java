@@ -6,7 +6,20 @@ import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
 import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
 
-public final class TwoDeadWheelInputsMessage {
+import java.nio.ByteBuffer;
+
+public final class TwoDeadWheelInputsMessage implements LogMessage {
+    private static final LogSchema SCHEMA = new LogSchema("TwoDeadWheelInputsMessage")
+            .addLong("timestamp")
+            .addPair("par")
+            .addPair("perp")
+            .addDouble("yaw")
+            .addDouble("pitch")
+            .addDouble("roll")
+            .addDouble("xRotationRate")
+            .addDouble("yRotationRate")
+            .addDouble("zRotationRate");
+
     public long timestamp;
     public PositionVelocityPair par;
     public PositionVelocityPair perp;
@@ -32,4 +45,34 @@ public final class TwoDeadWheelInputsMessage {
             this.zRotationRate = angularVelocity.zRotationRate;
         }
     }
+
+    public TwoDeadWheelInputsMessage(BinaryLogReader.Record record) {
+        this.timestamp = record.readLong();
+        this.par = record.readPair();
+        this.perp = record.readPair();
+        this.yaw = record.readDouble();
+        this.pitch = record.readDouble();
+        this.roll = record.readDouble();
+        this.xRotationRate = record.readDouble();
+        this.yRotationRate = record.readDouble();
+        this.zRotationRate = record.readDouble();
+    }
+
+    @Override
+    public LogSchema schema() {
+        return SCHEMA;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        LogSchema.putPair(buffer, par);
+        LogSchema.putPair(buffer, perp);
+        buffer.putDouble(yaw);
+        buffer.putDouble(pitch);
+        buffer.putDouble(roll);
+        buffer.putDouble(xRotationRate);
+        buffer.putDouble(yRotationRate);
+        buffer.putDouble(zRotationRate);
+    }
 }
@@ -0,0 +1,130 @@
+package org.firstinspires.ftc.teamcode.simulation;
+
+import com.qualcomm.robotcore.hardware.I2cDeviceSynchSimple;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An I2C device whose registers hold fixed bytes, for driving I2C drivers without hardware.
+ * <p>
+ * Reads return the bytes stored for the register, cut or zero-padded to the requested length,
+ * and are counted so callers can check how much a driver reads. A read limit makes longer reads
+ * come back short, as a cut-off transfer would. Writes replace the register's
+ * bytes. Every other call on the device is accepted and does nothing. The SDK interface is large
+ * and only reads and writes matter here, so the device is a {@link Proxy}; calls through it box
+ * their arguments, which shows up in allocation measurements.
+ */
+public final class SimI2cDevice implements InvocationHandler {
+    public final I2cDeviceSynchSimple device = (I2cDeviceSynchSimple) Proxy.newProxyInstance(
+            I2cDeviceSynchSimple.class.getClassLoader(), new Class<?>[] {I2cDeviceSynchSimple.class}, this);
+
+    private final Map<Integer, byte[]> registers = new HashMap<>();
+
+    private int reads;
+    private long bytesRead;
+    private int lastReadRegister = -1;
+    private int lastReadLength;
+    private int maxReadLength = Integer.MAX_VALUE;
+
+    public void setRegister(int register, byte[] bytes) {
+        registers.put(register, bytes.clone());
+    }
+
+    public byte[] getRegister(int register) {
+        byte[] bytes = registers.get(register);
+        return bytes == null ? new byte[0] : bytes.clone();
+    }
+
+    /**
+     * Cuts every later read to at most this many bytes.
+     */
+    public void setMaxReadLength(int maxReadLength) {
+        this.maxReadLength = maxReadLength;
+    }
+
+    public int getReads() {
+        return reads;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getLastReadRegister() {
+        return lastReadRegister;
+    }
+
+    public int getLastReadLength() {
+        return lastReadLength;
+    }
+
+    public void resetCounts() {
+        reads = 0;
+        bytesRead = 0;
+        lastReadRegister = -1;
+        lastReadLength = 0;
+    }
+
+    private byte[] read(int register, int length) {
+        reads++;
+        bytesRead += length;
+        lastReadRegister = register;
+        lastReadLength = length;
+
+        byte[] bytes = registers.get(register);
+        int returned = Math.min(length, maxReadLength);
+        return bytes == null ? new byte[returned] : Arrays.copyOf(bytes, returned);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        Class<?>[] types = method.getParameterTypes();
+        if (name.equals("read") && types.length == 2 && types[0] == int.class && types[1] == int.class) {
+            return read((Integer) args[0], (Integer) args[1]);
+        }
+        if (name.equals("read8") && types.length == 1 && types[0] == int.class) {
+            return read((Integer) args[0], 1)[0];
+        }
+        if (name.equals("write") && types.length >= 2 && types[0] == int.class && types[1] == byte[].class) {
+            setRegister((Integer) args[0], (byte[]) args[1]);
+            return null;
+        }
+        if (name.equals("equals") && types.length == 1) {
+            return proxy == args[0];
+        }
+        if (name.equals("hashCode") && types.length == 0) {
+            return System.identityHashCode(proxy);
+        }
+        if (name.equals("toString") && types.length == 0) {
+            return "SimI2cDevice";
+        }
+        return defaultValue(method.getReturnType());
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == char.class) {
+            return (char) 0;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0.0;
+        }
+        return null;
+    }
+}
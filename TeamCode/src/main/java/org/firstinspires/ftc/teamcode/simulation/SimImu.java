@@ -0,0 +1,97 @@
+package org.firstinspires.ftc.teamcode.simulation;
+
+import com.qualcomm.robotcore.hardware.IMU;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+import org.firstinspires.ftc.robotcore.external.navigation.Quaternion;
+import org.firstinspires.ftc.robotcore.external.navigation.UnnormalizedAngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+
+/**
+ * An IMU that reports the simulated robot's heading and turn rate. The robot stays flat, so
+ * pitch and roll are always zero, and the hub orientation passed to initialize() is ignored.
+ */
+public final class SimImu implements IMU {
+    private final SimulatedRobot robot;
+
+    // heading at the last resetYaw(), in radians
+    private double yawOffset;
+
+    SimImu(SimulatedRobot robot) {
+        this.robot = robot;
+    }
+
+    private double yaw() {
+        double yaw = robot.getPose().heading.toDouble() - yawOffset;
+        return Math.atan2(Math.sin(yaw), Math.cos(yaw));
+    }
+
+    @Override
+    public boolean initialize(Parameters parameters) {
+        return true;
+    }
+
+    @Override
+    public void resetYaw() {
+        yawOffset = robot.getPose().heading.toDouble();
+    }
+
+    @Override
+    public YawPitchRollAngles getRobotYawPitchRollAngles() {
+        return new YawPitchRollAngles(AngleUnit.RADIANS, yaw(), 0, 0, robot.getNanos());
+    }
+
+    @Override
+    public Orientation getRobotOrientation(AxesReference reference, AxesOrder order, AngleUnit angleUnit) {
+        return new Orientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS,
+                (float) yaw(), 0, 0, robot.getNanos())
+                .toAxesReference(reference)
+                .toAxesOrder(order)
+                .toAngleUnit(angleUnit);
+    }
+
+    @Override
+    public Quaternion getRobotOrientationAsQuaternion() {
+        double half = yaw() / 2;
+        return new Quaternion((float) Math.cos(half), 0, 0, (float) Math.sin(half), robot.getNanos());
+    }
+
+    @Override
+    public AngularVelocity getRobotAngularVelocity(AngleUnit angleUnit) {
+        UnnormalizedAngleUnit unit = angleUnit.getUnnormalized();
+        return new AngularVelocity(unit, 0, 0,
+                (float) unit.fromRadians(robot.getAngularVelocity()), robot.getNanos());
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated IMU";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+        yawOffset = 0;
+    }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,414 @@
+package org.firstinspires.ftc.teamcode.simulation;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorController;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.PIDCoefficients;
+import com.qualcomm.robotcore.hardware.PIDFCoefficients;
+import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigurationType;
+import com.qualcomm.robotcore.util.Range;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.CurrentUnit;
+
+/**
+ * A drive motor and its encoder, stepped by {@link SimulatedRobot}.
+ * <p>
+ * The motor follows the same model the drive's feedforward assumes, in tick units:
+ * {@code volts = kS * sign(v) + kV * v + kA * a}. The encoder reports the wheel's travel like a
+ * REV hub port does, negated when the motor direction is REVERSE, so RawEncoder sees the same
+ * numbers it would on the robot. The motor is mounted so that positive wheel travel moves the
+ * robot forward; no direction changes are needed in the drive.
+ * <p>
+ * RUN_WITHOUT_ENCODER is open loop, as the drives use it. RUN_USING_ENCODER and RUN_TO_POSITION
+ * run a simplified version of the hub's controllers on every substep, using the stored PIDF
+ * coefficients in the hub's units (output in 1/32767ths of full power, velocities in ticks/s):
+ * a velocity PIDF towards {@link #setVelocity(double)}, or towards power times the free speed
+ * after {@link #setPower(double)}; and for RUN_TO_POSITION a proportional position loop whose
+ * velocity is capped at power times the free speed, feeding the same velocity PIDF. Only the
+ * shape of the response is modeled, not the firmware's exact timing and filtering.
+ */
+public final class SimMotor implements DcMotorEx {
+    private final String name;
+    private final int port;
+    private final double kS, kV, kA;
+
+    private Direction direction = Direction.FORWARD;
+    private ZeroPowerBehavior zeroPowerBehavior = ZeroPowerBehavior.UNKNOWN;
+    private RunMode mode = RunMode.RUN_WITHOUT_ENCODER;
+    private MotorConfigurationType motorType = MotorConfigurationType.getUnspecifiedMotorType();
+    private boolean enabled = true;
+
+    private double power;
+
+    // velocity controller state, in encoder ticks/s; a velocity target replaces power until the
+    // next setPower()
+    private boolean velocityTargetSet;
+    private double velocityTarget;
+    private double integral, lastError;
+    private boolean busy;
+
+    // wheel state, in ticks and ticks/s, positive forward regardless of direction
+    private double position, velocity;
+    private double positionOffset;
+
+    private PIDFCoefficients velocityPidf = new PIDFCoefficients(10, 3, 0, 0);
+    private PIDFCoefficients positionPidf = new PIDFCoefficients(10, 0, 0, 0);
+    private int targetPosition;
+    private int targetPositionTolerance = 5;
+    private double currentAlert = 5;
+
+    SimMotor(String name, int port, double kS, double kV, double kA) {
+        if (kV <= 0 || kA <= 0) {
+            throw new IllegalArgumentException("kV and kA must be positive");
+        }
+        this.name = name;
+        this.port = port;
+        this.kS = kS;
+        this.kV = kV;
+        this.kA = kA;
+    }
+
+    /**
+     * Advances the wheel by dt seconds at the given battery voltage.
+     */
+    void step(double dt, double batteryVoltage) {
+        double applied = enabled ? output(dt, batteryVoltage) * batteryVoltage : 0;
+        if (direction == Direction.REVERSE) {
+            applied = -applied;
+        }
+        if (applied == 0 && zeroPowerBehavior == ZeroPowerBehavior.FLOAT) {
+            // coasting: only friction slows the wheel
+            double decel = kS / kA * dt;
+            velocity = Math.abs(velocity) <= decel ? 0 : velocity - Math.signum(velocity) * decel;
+        } else if (velocity == 0 && Math.abs(applied) <= kS) {
+            // static friction holds
+            return;
+        } else {
+            double frictionSign = velocity != 0 ? Math.signum(velocity) : Math.signum(applied);
+            double next = velocity + (applied - kS * frictionSign - kV * velocity) / kA * dt;
+            // friction stops the wheel rather than reversing it
+            if (Math.signum(next) == -frictionSign && Math.abs(applied) <= kS) {
+                next = 0;
+            }
+            position += (velocity + next) / 2 * dt;
+            velocity = next;
+            return;
+        }
+        position += velocity * dt;
+    }
+
+    /**
+     * The power the hub applies this substep, in the encoder's direction like setPower().
+     */
+    private double output(double dt, double batteryVoltage) {
+        double freeSpeed = Math.max(0, batteryVoltage - kS) / kV;
+        double target;
+        switch (mode) {
+            case RUN_USING_ENCODER:
+                target = velocityTargetSet ? velocityTarget : Range.clip(power, -1, 1) * freeSpeed;
+                break;
+            case RUN_TO_POSITION:
+                double positionError = targetPosition - getCurrentPosition();
+                busy = Math.abs(positionError) > targetPositionTolerance;
+                double maxSpeed = Math.abs(Range.clip(power, -1, 1)) * freeSpeed;
+                target = busy ? Range.clip(positionPidf.p * positionError, -maxSpeed, maxSpeed) : 0;
+                break;
+            case STOP_AND_RESET_ENCODER:
+                return 0;
+            default:
+                return Range.clip(power, -1, 1);
+        }
+
+        double error = target - sign() * velocity;
+        integral += error * dt;
+        double derivative = (error - lastError) / dt;
+        lastError = error;
+        double out = (velocityPidf.p * error + velocityPidf.i * integral
+                + velocityPidf.d * derivative + velocityPidf.f * target) / 32767;
+        if (Math.abs(out) > 1) {
+            // no windup while saturated
+            integral -= error * dt;
+        }
+        return Range.clip(out, -1, 1);
+    }
+
+    private void resetController() {
+        integral = 0;
+        lastError = 0;
+    }
+
+    /**
+     * Moves an unpowered encoder, e.g. a dead wheel, by the given travel.
+     */
+    void move(double deltaTicks, double velocityTicks) {
+        position += deltaTicks;
+        velocity = velocityTicks;
+    }
+
+    /**
+     * @return the wheel's travel in ticks, positive forward
+     */
+    public double getWheelPosition() {
+        return position;
+    }
+
+    /**
+     * @return the wheel's speed in ticks/s, positive forward
+     */
+    public double getWheelVelocity() {
+        return velocity;
+    }
+
+    private double sign() {
+        return direction == Direction.REVERSE ? -1 : 1;
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated Motor";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated port " + port + " (" + name + ")";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+        direction = Direction.FORWARD;
+        power = 0;
+    }
+
+    @Override
+    public void close() {
+        power = 0;
+    }
+
+    @Override
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    @Override
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public void setPower(double power) {
+        this.power = power;
+        velocityTargetSet = false;
+    }
+
+    @Override
+    public double getPower() {
+        return power;
+    }
+
+    @Override
+    public MotorConfigurationType getMotorType() {
+        return motorType;
+    }
+
+    @Override
+    public void setMotorType(MotorConfigurationType motorType) {
+        this.motorType = motorType;
+    }
+
+    @Override
+    public DcMotorController getController() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return port;
+    }
+
+    @Override
+    public void setZeroPowerBehavior(ZeroPowerBehavior zeroPowerBehavior) {
+        this.zeroPowerBehavior = zeroPowerBehavior;
+    }
+
+    @Override
+    public ZeroPowerBehavior getZeroPowerBehavior() {
+        return zeroPowerBehavior;
+    }
+
+    @Override
+    @Deprecated
+    public void setPowerFloat() {
+        zeroPowerBehavior = ZeroPowerBehavior.FLOAT;
+        power = 0;
+    }
+
+    @Override
+    public boolean getPowerFloat() {
+        return zeroPowerBehavior == ZeroPowerBehavior.FLOAT && power == 0;
+    }
+
+    @Override
+    public void setTargetPosition(int position) {
+        targetPosition = position;
+    }
+
+    @Override
+    public int getTargetPosition() {
+        return targetPosition;
+    }
+
+    @Override
+    public boolean isBusy() {
+        return mode == RunMode.RUN_TO_POSITION && busy;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return (int) Math.round(sign() * (position - positionOffset));
+    }
+
+    @Override
+    public void setMode(RunMode mode) {
+        if (mode == RunMode.STOP_AND_RESET_ENCODER) {
+            power = 0;
+            velocityTargetSet = false;
+            positionOffset = position;
+        }
+        if (mode == RunMode.RUN_TO_POSITION) {
+            busy = targetPosition != getCurrentPosition();
+        }
+        if (mode != this.mode) {
+            resetController();
+        }
+        this.mode = mode;
+    }
+
+    @Override
+    public RunMode getMode() {
+        return mode;
+    }
+
+    @Override
+    public void setMotorEnable() {
+        enabled = true;
+    }
+
+    @Override
+    public void setMotorDisable() {
+        enabled = false;
+    }
+
+    @Override
+    public boolean isMotorEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets a velocity target in ticks/s. Like on the hub, it only takes effect in
+     * RUN_USING_ENCODER.
+     */
+    @Override
+    public void setVelocity(double angularRate) {
+        velocityTarget = angularRate;
+        velocityTargetSet = true;
+    }
+
+    @Override
+    public void setVelocity(double angularRate, AngleUnit unit) {
+        double ticksPerRev = motorType.getTicksPerRev();
+        double degreesPerSecond = unit.getUnnormalized().toDegrees(angularRate);
+        setVelocity(degreesPerSecond / 360 * (ticksPerRev > 0 ? ticksPerRev : 1));
+    }
+
+    @Override
+    public double getVelocity() {
+        return sign() * velocity;
+    }
+
+    @Override
+    public double getVelocity(AngleUnit unit) {
+        double ticksPerRev = motorType.getTicksPerRev();
+        double revsPerSecond = getVelocity() / (ticksPerRev > 0 ? ticksPerRev : 1);
+        return unit.getUnnormalized().fromDegrees(revsPerSecond * 360);
+    }
+
+    @Override
+    @Deprecated
+    public void setPIDCoefficients(RunMode mode, PIDCoefficients pidCoefficients) {
+        setPIDFCoefficients(mode, new PIDFCoefficients(pidCoefficients.p, pidCoefficients.i, pidCoefficients.d, 0));
+    }
+
+    @Override
+    public void setPIDFCoefficients(RunMode mode, PIDFCoefficients pidfCoefficients) {
+        if (mode == RunMode.RUN_TO_POSITION) {
+            positionPidf = new PIDFCoefficients(pidfCoefficients);
+        } else {
+            velocityPidf = new PIDFCoefficients(pidfCoefficients);
+        }
+    }
+
+    @Override
+    public void setVelocityPIDFCoefficients(double p, double i, double d, double f) {
+        velocityPidf = new PIDFCoefficients(p, i, d, f);
+    }
+
+    @Override
+    public void setPositionPIDFCoefficients(double p) {
+        positionPidf = new PIDFCoefficients(p, 0, 0, 0);
+    }
+
+    @Override
+    @Deprecated
+    public PIDCoefficients getPIDCoefficients(RunMode mode) {
+        PIDFCoefficients c = getPIDFCoefficients(mode);
+        return new PIDCoefficients(c.p, c.i, c.d);
+    }
+
+    @Override
+    public PIDFCoefficients getPIDFCoefficients(RunMode mode) {
+        return new PIDFCoefficients(mode == RunMode.RUN_TO_POSITION ? positionPidf : velocityPidf);
+    }
+
+    @Override
+    public void setTargetPositionTolerance(int tolerance) {
+        targetPositionTolerance = tolerance;
+    }
+
+    @Override
+    public int getTargetPositionTolerance() {
+        return targetPositionTolerance;
+    }
+
+    // current draw is not modeled
+
+    @Override
+    public double getCurrent(CurrentUnit unit) {
+        return 0;
+    }
+
+    @Override
+    public double getCurrentAlert(CurrentUnit unit) {
+        return unit.convert(currentAlert, CurrentUnit.AMPS);
+    }
+
+    @Override
+    public void setCurrentAlert(double current, CurrentUnit unit) {
+        currentAlert = CurrentUnit.AMPS.convert(current, unit);
+    }
+
+    @Override
+    public boolean isOverCurrent() {
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package org.firstinspires.ftc.teamcode.simulation;
+
+import com.qualcomm.robotcore.hardware.VoltageSensor;
+
+/**
+ * Reports the simulated battery voltage.
+ */
+public final class SimVoltageSensor implements VoltageSensor {
+    private final SimulatedRobot robot;
+
+    SimVoltageSensor(SimulatedRobot robot) {
+        this.robot = robot;
+    }
+
+    @Override
+    public double getVoltage() {
+        return robot.getBatteryVoltage();
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated Voltage Sensor";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {}
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,326 @@
+package org.firstinspires.ftc.teamcode.simulation;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
+import com.acmerobotics.roadrunner.Action;
+import com.acmerobotics.roadrunner.Pose2d;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.DriveClock;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.MecanumDrive;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.TankDrive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * A simulated drivetrain behind a HardwareMap, for running the real MecanumDrive/TankDrive code
+ * without a robot:
+ * <pre>
+ * try (SimulatedRobot sim = SimulatedRobot.mecanum(new Pose2d(0, 0, 0))) {
+ *     MecanumDrive drive = new MecanumDrive(sim.hardwareMap, new Pose2d(0, 0, 0));
+ *     double seconds = sim.run(drive.actionBuilder(drive.localizer.getPose())
+ *             .splineTo(new Vector2d(30, 30), Math.PI / 2)
+ *             .build(), 0.01);
+ * }
+ * </pre>
+ * Time only moves in {@link #step(double)}, integrated in fixed PARAMS.stepSeconds substeps, and
+ * the drive actions read it through {@link DriveClock} while the simulator is open, so a
+ * trajectory runs as fast as the follower can be computed.
+ * <p>
+ * Wheels follow the kS/kV/kA motor model with no slip; the robot's motion comes from the same
+ * forward kinematics the drive localizer uses. The plant takes the drive's tuned PARAMS where
+ * there are any, and this class's PARAMS for the rest. Drive PARAMS that are still at their
+ * untuned zeros are filled in with the plant's values while the simulator is open, so the drive
+ * can run and its feedforward matches the plant; {@link #close()} puts the zeros back, so nothing
+ * carries over into the OpModes that run after it.
+ */
+@Config
+public final class SimulatedRobot implements AutoCloseable {
+    public static class Params {
+        public double stepSeconds = 0.001;
+        public double batteryVoltage = 12.5;
+
+        // used only where the drive PARAMS are still zero
+        public double inPerTick = 1.0;
+        public double trackWidthTicks = 14.0;
+        public double kS = 0.8; // volts
+        public double kV = 0.16; // volts per tick/s
+        public double kA = 0.03; // volts per tick/s^2
+    }
+
+    public static Params PARAMS = new Params();
+
+    private interface Kinematics {
+        /**
+         * Maps per-wheel travel to robot-frame travel, written to out as (x, y, heading).
+         * Linear, so it maps wheel velocities to robot velocity as well.
+         */
+        void forward(double[] wheels, double[] out);
+    }
+
+    private static final class DeadWheel {
+        final SimMotor encoder;
+        final boolean parallel;
+        final double offsetTicks, inPerTick;
+
+        DeadWheel(SimMotor encoder, boolean parallel, double offsetTicks, double inPerTick) {
+            this.encoder = encoder;
+            this.parallel = parallel;
+            this.offsetTicks = offsetTicks;
+            this.inPerTick = inPerTick;
+        }
+
+        // travel along the wheel's axis, in the sign convention of the dead wheel localizers
+        double ticks(double[] twist) {
+            return (parallel ? twist[0] : twist[1]) / inPerTick + offsetTicks * twist[2];
+        }
+    }
+
+    public final HardwareMap hardwareMap = new HardwareMap(null, null);
+
+    private final SimMotor[] motors;
+    private final Kinematics kinematics;
+    private final double stepSeconds;
+
+    private final double[] wheelPositions, wheelDeltas;
+    private final double[] twist = new double[3];
+    private final List<DeadWheel> deadWheels = new ArrayList<>();
+    // undoes the values filled into the drive PARAMS
+    private final List<Runnable> restoreParams;
+
+    private double x, y, heading;
+    private double angularVelocity;
+    private long nanos;
+
+    private SimulatedRobot(Pose2d pose, String[] motorNames, double kS, double kV, double kA,
+                           Kinematics kinematics, List<Runnable> restoreParams) {
+        this.kinematics = kinematics;
+        this.restoreParams = restoreParams;
+        stepSeconds = PARAMS.stepSeconds;
+
+        motors = new SimMotor[motorNames.length];
+        for (int i = 0; i < motors.length; i++) {
+            motors[i] = new SimMotor(motorNames[i], i, kS, kV, kA);
+            hardwareMap.dcMotor.put(motorNames[i], motors[i]);
+            hardwareMap.put(motorNames[i], motors[i]);
+        }
+        wheelPositions = new double[motors.length];
+        wheelDeltas = new double[motors.length];
+
+        hardwareMap.put("imu", new SimImu(this));
+        SimVoltageSensor voltageSensor = new SimVoltageSensor(this);
+        hardwareMap.voltageSensor.put("Control Hub", voltageSensor);
+        hardwareMap.put("Control Hub", voltageSensor);
+
+        setPose(pose);
+        DriveClock.set(this::getTime);
+    }
+
+    /**
+     * Simulates MecanumDrive's four motors and IMU.
+     */
+    public static SimulatedRobot mecanum(Pose2d pose) {
+        MecanumDrive.Params p = MecanumDrive.PARAMS;
+        List<Runnable> restore = new ArrayList<>();
+        double trackWidthTicks = plant(p.trackWidthTicks, PARAMS.trackWidthTicks, v -> p.trackWidthTicks = v, restore);
+        double kS = plant(p.kS, PARAMS.kS, v -> p.kS = v, restore);
+        double kV = plant(p.kV, PARAMS.kV, v -> p.kV = v, restore);
+        double kA = plant(p.kA, PARAMS.kA, v -> p.kA = v, restore);
+
+        double trackWidth = p.inPerTick * trackWidthTicks;
+        double lateralMultiplier = p.inPerTick / p.lateralInPerTick;
+        double inPerTick = p.inPerTick;
+        return new SimulatedRobot(pose, new String[] {"leftFront", "leftBack", "rightBack", "rightFront"},
+                kS, kV, kA, (w, out) -> {
+                    double lf = w[0] * inPerTick, lb = w[1] * inPerTick,
+                            rb = w[2] * inPerTick, rf = w[3] * inPerTick;
+                    out[0] = (lf + lb + rb + rf) * 0.25;
+                    out[1] = (-lf + lb - rb + rf) * (0.25 / lateralMultiplier);
+                    out[2] = (-lf - lb + rb + rf) * (0.25 / trackWidth);
+                }, restore);
+    }
+
+    /**
+     * Simulates TankDrive's two motors and IMU.
+     */
+    public static SimulatedRobot tank(Pose2d pose) {
+        TankDrive.Params p = TankDrive.PARAMS;
+        List<Runnable> restore = new ArrayList<>();
+        double inPerTick = plant(p.inPerTick, PARAMS.inPerTick, v -> p.inPerTick = v, restore);
+        double trackWidthTicks = plant(p.trackWidthTicks, PARAMS.trackWidthTicks, v -> p.trackWidthTicks = v, restore);
+        double kS = plant(p.kS, PARAMS.kS, v -> p.kS = v, restore);
+        double kV = plant(p.kV, PARAMS.kV, v -> p.kV = v, restore);
+        double kA = plant(p.kA, PARAMS.kA, v -> p.kA = v, restore);
+
+        double trackWidth = inPerTick * trackWidthTicks;
+        return new SimulatedRobot(pose, new String[] {"left", "right"},
+                kS, kV, kA, (w, out) -> {
+                    double left = w[0] * inPerTick, right = w[1] * inPerTick;
+                    out[0] = (left + right) * 0.5;
+                    out[1] = 0;
+                    out[2] = (right - left) / trackWidth;
+                }, restore);
+    }
+
+    /**
+     * Picks a plant constant: the drive's tuned value if it has one, else the simulator's, which
+     * is then also lent to the drive PARAMS until {@link #close()}.
+     *
+     * @param driveValue the drive PARAMS field's current value
+     * @param simValue the simulator's default
+     * @param setDrive writes the drive PARAMS field
+     * @param restore collects the undo for close()
+     * @return the value for the plant
+     */
+    private static double plant(double driveValue, double simValue, DoubleConsumer setDrive,
+                                List<Runnable> restore) {
+        if (driveValue > 0) {
+            return driveValue;
+        }
+        setDrive.accept(simValue);
+        restore.add(() -> setDrive.accept(driveValue));
+        return simValue;
+    }
+
+    /**
+     * Adds an encoder that rolls with the robot, for the dead wheel localizers.
+     *
+     * @param parallel true for a wheel measuring forward travel, false for lateral travel
+     * @param offsetTicks the wheel's offset as the localizer's PARAMS define it, e.g. parYTicks
+     *                    for a parallel wheel or perpXTicks for a perpendicular one
+     */
+    public SimMotor addDeadWheel(String name, boolean parallel, double offsetTicks, double inPerTick) {
+        SimMotor encoder = new SimMotor(name, motors.length + deadWheels.size(), 1, 1, 1);
+        hardwareMap.dcMotor.put(name, encoder);
+        hardwareMap.put(name, encoder);
+        deadWheels.add(new DeadWheel(encoder, parallel, offsetTicks, inPerTick));
+        return encoder;
+    }
+
+    /**
+     * Advances the simulation by the given time, in fixed substeps.
+     */
+    public void step(double seconds) {
+        int n = Math.max(1, (int) Math.round(seconds / stepSeconds));
+        double dt = seconds / n;
+        double voltage = getBatteryVoltage();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < motors.length; j++) {
+                motors[j].step(dt, voltage);
+                double position = motors[j].getWheelPosition();
+                wheelDeltas[j] = position - wheelPositions[j];
+                wheelPositions[j] = position;
+            }
+            kinematics.forward(wheelDeltas, twist);
+            integrate(twist[0], twist[1], twist[2]);
+            for (int j = 0; j < deadWheels.size(); j++) {
+                DeadWheel w = deadWheels.get(j);
+                w.encoder.move(w.ticks(twist), w.encoder.getWheelVelocity());
+            }
+        }
+
+        for (int j = 0; j < motors.length; j++) {
+            wheelDeltas[j] = motors[j].getWheelVelocity();
+        }
+        kinematics.forward(wheelDeltas, twist);
+        angularVelocity = twist[2];
+        for (int j = 0; j < deadWheels.size(); j++) {
+            DeadWheel w = deadWheels.get(j);
+            w.encoder.move(0, w.ticks(twist));
+        }
+
+        nanos += Math.round(seconds * 1e9);
+    }
+
+    // applies a robot-frame twist, exactly like Pose2d.plus(Twist2d)
+    private void integrate(double dx, double dy, double dTheta) {
+        double a, b;
+        if (Math.abs(dTheta) < 1e-6) {
+            a = 1 - dTheta * dTheta / 6;
+            b = dTheta / 2;
+        } else {
+            a = Math.sin(dTheta) / dTheta;
+            b = (1 - Math.cos(dTheta)) / dTheta;
+        }
+        double localX = a * dx - b * dy;
+        double localY = b * dx + a * dy;
+
+        double cos = Math.cos(heading), sin = Math.sin(heading);
+        x += cos * localX - sin * localY;
+        y += sin * localX + cos * localY;
+        heading += dTheta;
+    }
+
+    /**
+     * Runs an action to completion, stepping the simulation by loopSeconds between calls.
+     *
+     * @return the simulated time the action took, in seconds
+     */
+    public double run(Action action, double loopSeconds) {
+        double start = getTime();
+        while (action.run(new TelemetryPacket())) {
+            step(loopSeconds);
+        }
+        return getTime() - start;
+    }
+
+    /**
+     * @return the true pose of the simulated robot, which the drive's estimate should track
+     */
+    public Pose2d getPose() {
+        return new Pose2d(x, y, heading);
+    }
+
+    /**
+     * Moves the robot without it driving there; the drive's localizer is not told.
+     */
+    public void setPose(Pose2d pose) {
+        x = pose.position.x;
+        y = pose.position.y;
+        heading = pose.heading.toDouble();
+    }
+
+    /**
+     * @return the robot's turn rate in rad/s
+     */
+    public double getAngularVelocity() {
+        return angularVelocity;
+    }
+
+    public double getBatteryVoltage() {
+        return PARAMS.batteryVoltage;
+    }
+
+    public SimMotor getMotor(int index) {
+        return motors[index];
+    }
+
+    /**
+     * @return simulated time since the simulator was created, in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return simulated time since the simulator was created, in seconds
+     */
+    public double getTime() {
+        return nanos / 1e9;
+    }
+
+    /**
+     * Hands the drive actions back to the wall clock and puts back the drive PARAMS that were
+     * filled in. Drives built on the simulator should not be used afterwards.
+     */
+    @Override
+    public void close() {
+        DriveClock.reset();
+        for (int i = restoreParams.size() - 1; i >= 0; i--) {
+            restoreParams.get(i).run();
+        }
+        restoreParams.clear();
+    }
+}
@@ -0,0 +1,105 @@
+package org.firstinspires.ftc.teamcode.tuning;
+
+import android.os.Debug;
+
+import java.util.Locale;
+
+/**
+ * A small microbenchmark harness for the benchmark OpModes. Each measurement warms the operation
+ * up so ART compiles it, then times a batch of calls and reads ART's allocation counter around
+ * the batch.
+ * <p>
+ * The allocation counter is process-wide, so allocations by other threads (the event loop, the
+ * dashboard) during a measurement are counted too; treat bytes/op as an upper bound, and look for
+ * it going from zero to non-zero rather than at small differences.
+ */
+public final class Benchmark {
+    public static final class Result {
+        public final String name;
+        public final int iterations;
+        public final double nanosPerOp;
+        /** NaN when the runtime doesn't expose an allocation counter. */
+        public final double bytesPerOp;
+
+        private Result(String name, int iterations, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.iterations = iterations;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            if (Double.isNaN(bytesPerOp)) {
+                return String.format(Locale.US, "%,.0f ns/op", nanosPerOp);
+            }
+            return String.format(Locale.US, "%,.0f ns/op, %,.0f B/op", nanosPerOp, bytesPerOp);
+        }
+    }
+
+    private Benchmark() {}
+
+    /**
+     * Times a batch of calls to op.
+     */
+    public static Result run(String name, int warmup, int iterations, Runnable op) {
+        for (int i = 0; i < warmup; i++) {
+            op.run();
+        }
+
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytesAfter = allocatedBytes();
+
+        return result(name, iterations, elapsed, bytesBefore, bytesAfter);
+    }
+
+    /**
+     * Times calls to op one at a time, running between after each call outside the timed region,
+     * e.g. to step a simulation. Allocations by between are still counted.
+     */
+    public static Result run(String name, int warmup, int iterations, Runnable op, Runnable between) {
+        for (int i = 0; i < warmup; i++) {
+            op.run();
+            between.run();
+        }
+
+        long elapsed = 0;
+        long bytesBefore = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            op.run();
+            elapsed += System.nanoTime() - start;
+            between.run();
+        }
+        long bytesAfter = allocatedBytes();
+
+        return result(name, iterations, elapsed, bytesBefore, bytesAfter);
+    }
+
+    private static Result result(String name, int iterations, long elapsed, long bytesBefore, long bytesAfter) {
+        double bytesPerOp = bytesBefore < 0 || bytesAfter < 0
+                ? Double.NaN
+                : (double) (bytesAfter - bytesBefore) / iterations;
+        return new Result(name, iterations, (double) elapsed / iterations, bytesPerOp);
+    }
+
+    /**
+     * @return the bytes allocated by the process so far, or -1 if unknown
+     */
+    private static long allocatedBytes() {
+        String stat = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        if (stat == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(stat);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.firstinspires.ftc.teamcode.tuning;
+
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.telemetry.MultipleTelemetry;
+import com.acmerobotics.roadrunner.Pose2d;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.Localizer;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.LocalizerReplay;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.MecanumDrive;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.TankDrive;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.ThreeDeadWheelLocalizer;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.TwoDeadWheelLocalizer;
+import org.firstinspires.ftc.teamcode.messages.BinaryLogReader;
+import org.firstinspires.ftc.teamcode.messages.MecanumLocalizerInputsMessage;
+import org.firstinspires.ftc.teamcode.messages.TankLocalizerInputsMessage;
+import org.firstinspires.ftc.teamcode.messages.ThreeDeadWheelInputsMessage;
+import org.firstinspires.ftc.teamcode.messages.TwoDeadWheelInputsMessage;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays the newest binary log through the configured drive's localizer and reports how
+ * closely it reproduces the logged pose, and how fast. The robot does not move.
+ */
+public final class LocalizerReplayTuner extends LinearOpMode {
+    @Override
+    public void runOpMode() throws InterruptedException {
+        telemetry = new MultipleTelemetry(telemetry, FtcDashboard.getInstance().getTelemetry());
+
+        File log = newestLog(new File(AppUtil.FIRST_FOLDER, "RoadRunner/logs"));
+        if (log == null) {
+            telemetry.addLine("no .rrbl logs found");
+            telemetry.update();
+            waitForStart();
+            return;
+        }
+
+        LocalizerReplay.Step step;
+        String channel;
+        Localizer localizer;
+        if (TuningOpModes.DRIVE_CLASS.equals(MecanumDrive.class)) {
+            MecanumDrive drive = new MecanumDrive(hardwareMap, new Pose2d(0, 0, 0));
+            localizer = drive.localizer;
+            if (localizer instanceof MecanumDrive.DriveLocalizer) {
+                MecanumDrive.DriveLocalizer dl = (MecanumDrive.DriveLocalizer) localizer;
+                channel = "MECANUM_LOCALIZER_INPUTS";
+                step = r -> dl.update(new MecanumLocalizerInputsMessage(r));
+            } else {
+                step = deadWheelStep(localizer);
+                channel = deadWheelChannel(localizer);
+            }
+        } else if (TuningOpModes.DRIVE_CLASS.equals(TankDrive.class)) {
+            TankDrive drive = new TankDrive(hardwareMap, new Pose2d(0, 0, 0));
+            localizer = drive.localizer;
+            if (localizer instanceof TankDrive.DriveLocalizer) {
+                TankDrive.DriveLocalizer dl = (TankDrive.DriveLocalizer) localizer;
+                int leftCount = drive.leftMotors.size();
+                channel = "TANK_LOCALIZER_INPUTS";
+                step = r -> dl.update(new TankLocalizerInputsMessage(r, leftCount));
+            } else {
+                step = deadWheelStep(localizer);
+                channel = deadWheelChannel(localizer);
+            }
+        } else {
+            throw new RuntimeException();
+        }
+
+        if (step == null) {
+            telemetry.addLine(localizer.getClass().getSimpleName() + " does not log its inputs and cannot be replayed");
+            telemetry.update();
+            waitForStart();
+            return;
+        }
+
+        telemetry.addData("log", log.getName());
+        telemetry.addLine("press play to replay");
+        telemetry.update();
+        waitForStart();
+
+        LocalizerReplay.Result result;
+        try {
+            result = LocalizerReplay.run(new BinaryLogReader(log), channel, localizer, step);
+        } catch (IOException e) {
+            telemetry.addData("could not read " + log.getName(), e.getMessage());
+            telemetry.update();
+            return;
+        }
+
+        telemetry.addData("log", log.getName());
+        telemetry.addData("samples", result.samples);
+        telemetry.addData("throughput", "%.0f samples/s (%.0fx real time)",
+                result.samplesPerSecond(), result.speedup());
+        telemetry.addData("position error", "max %.3f in, rms %.3f in",
+                result.maxPositionError, result.rmsPositionError);
+        telemetry.addData("heading error", "max %.3f deg", Math.toDegrees(result.maxHeadingError));
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    private static LocalizerReplay.Step deadWheelStep(Localizer localizer) {
+        if (localizer instanceof TwoDeadWheelLocalizer) {
+            TwoDeadWheelLocalizer l = (TwoDeadWheelLocalizer) localizer;
+            return r -> l.update(new TwoDeadWheelInputsMessage(r));
+        }
+        if (localizer instanceof ThreeDeadWheelLocalizer) {
+            ThreeDeadWheelLocalizer l = (ThreeDeadWheelLocalizer) localizer;
+            return r -> l.update(new ThreeDeadWheelInputsMessage(r));
+        }
+        return null;
+    }
+
+    private static String deadWheelChannel(Localizer localizer) {
+        return localizer instanceof TwoDeadWheelLocalizer ? "TWO_DEAD_WHEEL_INPUTS" : "THREE_DEAD_WHEEL_INPUTS";
+    }
+
+    private static File newestLog(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".rrbl"));
+        if (files == null) {
+            return null;
+        }
+        File newest = null;
+        for (File f : files) {
+            if (newest == null || f.lastModified() > newest.lastModified()) {
+                newest = f;
+            }
+        }
+        return newest;
+    }
+}
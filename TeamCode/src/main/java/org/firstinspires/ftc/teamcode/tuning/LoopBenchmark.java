@@ -0,0 +1,242 @@
+package org.firstinspires.ftc.teamcode.tuning;
+
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.telemetry.MultipleTelemetry;
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
+import com.acmerobotics.roadrunner.Action;
+import com.acmerobotics.roadrunner.Pose2d;
+import com.acmerobotics.roadrunner.PoseVelocity2d;
+import com.acmerobotics.roadrunner.TrajectoryActionBuilder;
+import com.acmerobotics.roadrunner.Vector2d;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.Command;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility.CommandScheduler;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.EventUtility.Event;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.EventUtility.Trigger;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.SubsystemUtility.Subsystem;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.SubsystemUtility.SubsystemBase;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.GoBildaPinpointDriver;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.Localizer;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.MecanumDrive;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.TankDrive;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.ThreeDeadWheelLocalizer;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.TwoDeadWheelLocalizer;
+import org.firstinspires.ftc.teamcode.simulation.SimI2cDevice;
+import org.firstinspires.ftc.teamcode.simulation.SimulatedRobot;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Times the loop's hot paths: the command scheduler, trigger polling, each localizer's update,
+ * the trajectory follower, trajectory building and Pinpoint decoding, plus a real Pinpoint read if
+ * one is configured. The drive code runs against a {@link SimulatedRobot} and the Pinpoint driver
+ * against a {@link SimI2cDevice}, so the robot does not move.
+ * <p>
+ * Results are shown as ns/op and B/op and written to the robot log under "LoopBenchmark".
+ * The scheduler cases run on their own {@link CommandScheduler}, so the shared one is untouched.
+ */
+public final class LoopBenchmark extends LinearOpMode {
+    private static final String TAG = "LoopBenchmark";
+
+    public static int[] SIZES = {10, 50, 200};
+    public static int WARMUP = 2000;
+    public static int ITERATIONS = 5000;
+
+    // the follower runs in simulated time, so it has to stay inside the trajectory's duration
+    public static int FOLLOW_WARMUP = 100;
+    public static int FOLLOW_ITERATIONS = 400;
+    public static double LOOP_SECONDS = 0.005;
+
+    public static int BUILD_ITERATIONS = 200;
+
+    @Override
+    public void runOpMode() throws InterruptedException {
+        telemetry = new MultipleTelemetry(telemetry, FtcDashboard.getInstance().getTelemetry());
+
+        GoBildaPinpointDriver pinpoint = hardwareMap.tryGet(GoBildaPinpointDriver.class, "pinpoint");
+
+        telemetry.addLine("runs against a simulated drivetrain; the robot does not move");
+        telemetry.update();
+        waitForStart();
+
+        for (int size : SIZES) {
+            if (!opModeIsActive()) {
+                return;
+            }
+            scheduler(size);
+            triggers(size);
+        }
+
+        if (opModeIsActive()) {
+            try (SimulatedRobot sim = SimulatedRobot.mecanum(new Pose2d(0, 0, 0))) {
+                MecanumDrive drive = new MecanumDrive(sim.hardwareMap, new Pose2d(0, 0, 0));
+                deadWheels(sim, drive);
+                drive("mecanum", sim, drive.localizer, drive::actionBuilder, drive::setDrivePowers);
+            }
+        }
+
+        if (opModeIsActive()) {
+            try (SimulatedRobot sim = SimulatedRobot.tank(new Pose2d(0, 0, 0))) {
+                TankDrive drive = new TankDrive(sim.hardwareMap, new Pose2d(0, 0, 0));
+                drive("tank", sim, drive.localizer, drive::actionBuilder, drive::setDrivePowers);
+            }
+        }
+
+        if (opModeIsActive()) {
+            pinpoint();
+        }
+
+        if (opModeIsActive() && pinpoint != null) {
+            report(Benchmark.run("pinpoint update (I2C)", 50, 200, pinpoint::update));
+        }
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    private void scheduler(int size) {
+        CommandScheduler scheduler = new CommandScheduler();
+
+        Subsystem[] subsystems = new Subsystem[size];
+        Command[] interrupting = new Command[size];
+        for (int i = 0; i < size; i++) {
+            subsystems[i] = new SubsystemBase();
+            scheduler.registerSubsystem(subsystems[i]);
+            scheduler.setDefaultCommand(subsystems[i], new BenchmarkCommand(false, subsystems[i]));
+            interrupting[i] = new BenchmarkCommand(true, subsystems[i]);
+        }
+        scheduler.run();
+
+        report(Benchmark.run("scheduler run, " + size + " subsystems", WARMUP, ITERATIONS, scheduler::run));
+
+        // every loop one command interrupts a default command and finishes, and the default
+        // command is rescheduled
+        int[] next = new int[1];
+        report(Benchmark.run("scheduler churn, " + size + " subsystems", WARMUP, ITERATIONS, () -> {
+            scheduler.schedule(interrupting[next[0]]);
+            next[0] = (next[0] + 1) % size;
+            scheduler.run();
+        }));
+
+        // one command requiring every subsystem interrupts all the default commands, finishes,
+        // and they are all rescheduled: the worst case for requirement tracking
+        Command wide = new BenchmarkCommand(true, subsystems);
+        report(Benchmark.run("scheduler wide command, " + size + " subsystems", WARMUP / 10, ITERATIONS / 10, () -> {
+            scheduler.schedule(wide);
+            scheduler.run();
+        }));
+
+        // a command without requirements, like the trajectory commands, never conflicts
+        Command free = new BenchmarkCommand(true);
+        report(Benchmark.run("scheduler requirement-less command, " + size + " subsystems", WARMUP, ITERATIONS, () -> {
+            scheduler.schedule(free);
+            scheduler.run();
+        }));
+
+        scheduler.cancelAll();
+    }
+
+    private void triggers(int size) {
+        Event loop = new Event();
+        boolean[] pressed = new boolean[1];
+        for (int i = 0; i < size; i++) {
+            new Trigger(loop, () -> pressed[0]).onTrue(new BenchmarkCommand(true, new SubsystemBase()));
+        }
+
+        report(Benchmark.run("event poll, " + size + " triggers", WARMUP, ITERATIONS, loop::poll));
+    }
+
+    // the dead wheels roll with the simulated robot; they only need to exist to time the updates,
+    // so the three wheel localizer shares the two wheel localizer's perpendicular wheel
+    private void deadWheels(SimulatedRobot sim, MecanumDrive drive) {
+        double inPerTick = MecanumDrive.PARAMS.inPerTick;
+        Pose2d pose = drive.localizer.getPose();
+        sim.addDeadWheel("par", true, TwoDeadWheelLocalizer.PARAMS.parYTicks, inPerTick);
+        sim.addDeadWheel("perp", false, TwoDeadWheelLocalizer.PARAMS.perpXTicks, inPerTick);
+        sim.addDeadWheel("par0", true, ThreeDeadWheelLocalizer.PARAMS.par0YTicks, inPerTick);
+        sim.addDeadWheel("par1", true, ThreeDeadWheelLocalizer.PARAMS.par1YTicks, inPerTick);
+
+        localizer("two dead wheel", sim,
+                new TwoDeadWheelLocalizer(sim.hardwareMap, drive.lazyImu.get(), inPerTick, pose),
+                drive::setDrivePowers);
+        localizer("three dead wheel", sim,
+                new ThreeDeadWheelLocalizer(sim.hardwareMap, inPerTick, pose),
+                drive::setDrivePowers);
+    }
+
+    // decoding runs against a simulated bus, so it is timed even without a Pinpoint configured
+    private void pinpoint() {
+        SimI2cDevice bus = new SimI2cDevice();
+        GoBildaPinpointDriver pinpoint = new GoBildaPinpointDriver(bus.device, true);
+
+        byte[] bulkRead = new byte[40];
+        report(Benchmark.run("pinpoint decode", WARMUP, ITERATIONS, () -> pinpoint.decodeBulkRead(bulkRead)));
+        report(Benchmark.run("pinpoint update (simulated bus)", WARMUP, ITERATIONS, pinpoint::update));
+
+        // the I2C time saved by a plan scales with the bytes it reads, which the simulated bus can't show
+        GoBildaPinpointDriver.ReadPlan[] plans = {
+                GoBildaPinpointDriver.ReadPlan.POSITION,
+                GoBildaPinpointDriver.ReadPlan.ENCODERS,
+                GoBildaPinpointDriver.ReadPlan.HEADING,
+        };
+        for (GoBildaPinpointDriver.ReadPlan plan : plans) {
+            report(Benchmark.run("pinpoint update, " + plan.getReadLength() + " byte plan (simulated bus)",
+                    WARMUP, ITERATIONS, () -> pinpoint.update(plan)));
+        }
+    }
+
+    private void drive(String name, SimulatedRobot sim, Localizer localizer,
+                       Function<Pose2d, TrajectoryActionBuilder> actionBuilder,
+                       Consumer<PoseVelocity2d> setDrivePowers) {
+        localizer(name + " drive localizer", sim, localizer, setDrivePowers);
+
+        Action action = path(actionBuilder.apply(localizer.getPose()), 8).build();
+        report(Benchmark.run(name + " follow tick", FOLLOW_WARMUP, FOLLOW_ITERATIONS,
+                () -> action.run(new TelemetryPacket()), () -> sim.step(LOOP_SECONDS)));
+        setDrivePowers.accept(new PoseVelocity2d(new Vector2d(0.0, 0.0), 0.0));
+
+        Pose2d start = localizer.getPose();
+        report(Benchmark.run(name + " actionBuilder, 4 splines", BUILD_ITERATIONS / 4, BUILD_ITERATIONS,
+                () -> path(actionBuilder.apply(start), 4).build()));
+    }
+
+    private void localizer(String name, SimulatedRobot sim, Localizer localizer,
+                           Consumer<PoseVelocity2d> setDrivePowers) {
+        setDrivePowers.accept(new PoseVelocity2d(new Vector2d(0.5, 0.0), 0.2));
+        report(Benchmark.run(name + " update", WARMUP, ITERATIONS,
+                localizer::update, () -> sim.step(LOOP_SECONDS)));
+        setDrivePowers.accept(new PoseVelocity2d(new Vector2d(0.0, 0.0), 0.0));
+    }
+
+    private void report(Benchmark.Result result) {
+        RobotLog.ii(TAG, "%s: %s", result.name, result);
+        telemetry.addData(result.name, result);
+        telemetry.update();
+    }
+
+    private static TrajectoryActionBuilder path(TrajectoryActionBuilder builder, int segments) {
+        for (int i = 0; i < segments; i++) {
+            double y = (i % 2 == 0) ? 24 : 0;
+            builder = builder.splineTo(new Vector2d(24 * (i + 1), y), i % 2 == 0 ? Math.PI / 4 : -Math.PI / 4);
+        }
+        return builder;
+    }
+
+    private static final class BenchmarkCommand extends Command {
+        private final boolean finishes;
+
+        BenchmarkCommand(boolean finishes, Subsystem... requirements) {
+            this.finishes = finishes;
+            addRequirements(requirements);
+        }
+
+        @Override
+        protected boolean isFinished() {
+            return finishes;
+        }
+    }
+}
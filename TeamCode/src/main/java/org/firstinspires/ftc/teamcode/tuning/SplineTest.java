@@ -17,8 +17,9 @@ public final class SplineTest extends LinearOpMode {
 
             waitForStart();
 
+            // the path is the same every run, so it is built once and read from the cache after that
             Actions.runBlocking(
-                drive.actionBuilder(beginPose)
+                drive.cachedPathBuilder(beginPose)
                         .splineTo(new Vector2d(30, 30), Math.PI / 2)
                         .splineTo(new Vector2d(0, 60), Math.PI)
                         .build());
@@ -0,0 +1,100 @@
+package org.firstinspires.ftc.teamcode.tuning;
+
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.telemetry.MultipleTelemetry;
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
+import com.acmerobotics.roadrunner.Action;
+import com.acmerobotics.roadrunner.Pose2d;
+import com.acmerobotics.roadrunner.PoseVelocity2d;
+import com.acmerobotics.roadrunner.TrajectoryActionBuilder;
+import com.acmerobotics.roadrunner.Vector2d;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.MecanumDrive;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.TankDrive;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Compares the per-tick cost of rebuilding a trajectory action every loop against running an
+ * action that was built once, for paths of increasing length. The robot drives for a few ticks
+ * per measurement, so keep it on blocks.
+ */
+public final class TrajectoryTickBenchmark extends LinearOpMode {
+    public static int[] SEGMENTS = {1, 2, 4, 8, 16};
+    public static int TICKS = 50;
+
+    @Override
+    public void runOpMode() throws InterruptedException {
+        telemetry = new MultipleTelemetry(telemetry, FtcDashboard.getInstance().getTelemetry());
+
+        if (TuningOpModes.DRIVE_CLASS.equals(MecanumDrive.class)) {
+            MecanumDrive drive = new MecanumDrive(hardwareMap, new Pose2d(0, 0, 0));
+
+            waitForStart();
+
+            benchmark(drive::actionBuilder, drive::setDrivePowers);
+        } else if (TuningOpModes.DRIVE_CLASS.equals(TankDrive.class)) {
+            TankDrive drive = new TankDrive(hardwareMap, new Pose2d(0, 0, 0));
+
+            waitForStart();
+
+            benchmark(drive::actionBuilder, drive::setDrivePowers);
+        } else {
+            throw new RuntimeException();
+        }
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    private void benchmark(Function<Pose2d, TrajectoryActionBuilder> actionBuilder,
+                           Consumer<PoseVelocity2d> setDrivePowers) {
+        PoseVelocity2d stop = new PoseVelocity2d(new Vector2d(0.0, 0.0), 0.0);
+
+        for (int segments : SEGMENTS) {
+            if (!opModeIsActive()) {
+                return;
+            }
+
+            TrajectoryActionBuilder builder = path(actionBuilder.apply(new Pose2d(0, 0, 0)), segments);
+
+            long rebuildNanos = 0;
+            for (int i = 0; i < TICKS; i++) {
+                TelemetryPacket packet = new TelemetryPacket();
+                long start = System.nanoTime();
+                builder.build().run(packet);
+                rebuildNanos += System.nanoTime() - start;
+            }
+            setDrivePowers.accept(stop);
+
+            long buildStart = System.nanoTime();
+            Action action = builder.build();
+            long buildNanos = System.nanoTime() - buildStart;
+
+            long cachedNanos = 0;
+            for (int i = 0; i < TICKS; i++) {
+                TelemetryPacket packet = new TelemetryPacket();
+                long start = System.nanoTime();
+                action.run(packet);
+                cachedNanos += System.nanoTime() - start;
+            }
+            setDrivePowers.accept(stop);
+
+            telemetry.addData(segments + " segments",
+                    "build %.2f ms, rebuild tick %.2f ms, cached tick %.2f ms",
+                    buildNanos / 1e6, rebuildNanos / 1e6 / TICKS, cachedNanos / 1e6 / TICKS);
+            telemetry.update();
+        }
+    }
+
+    private static TrajectoryActionBuilder path(TrajectoryActionBuilder builder, int segments) {
+        for (int i = 0; i < segments; i++) {
+            double y = (i % 2 == 0) ? 24 : 0;
+            builder = builder.splineTo(new Vector2d(24 * (i + 1), y), i % 2 == 0 ? Math.PI / 4 : -Math.PI / 4);
+        }
+        return builder;
+    }
+}
@@ -296,6 +296,9 @@ public final class TuningOpModes {
         manager.register(metaForClass(ManualFeedbackTuner.class), ManualFeedbackTuner.class);
         manager.register(metaForClass(SplineTest.class), SplineTest.class);
         manager.register(metaForClass(LocalizationTest.class), LocalizationTest.class);
+        manager.register(metaForClass(TrajectoryTickBenchmark.class), TrajectoryTickBenchmark.class);
+        manager.register(metaForClass(LocalizerReplayTuner.class), LocalizerReplayTuner.class);
+        manager.register(metaForClass(LoopBenchmark.class), LoopBenchmark.class);
 
         FtcDashboard.getInstance().withConfigRoot(configRoot -> {
             for (Class<?> c : Arrays.asList(
@@ -0,0 +1,676 @@
+package org.firstinspires.ftc.teamcode.FTCCommandBased.CommandUtility;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.firstinspires.ftc.teamcode.FTCCommandBased.SubsystemUtility.Subsystem;
+import org.firstinspires.ftc.teamcode.FTCCommandBased.SubsystemUtility.SubsystemBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+public class CommandSchedulerTest {
+    private CommandScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new CommandScheduler();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.setParallelism(0);
+    }
+
+    @Test
+    public void commandWithoutRequirementsRunsAndFinishes() {
+        CountingCommand command = new CountingCommand(2);
+        scheduler.schedule(command);
+        assertTrue(scheduler.isScheduled(command));
+
+        scheduler.run();
+        assertEquals(1, command.executes);
+        assertTrue(scheduler.isScheduled(command));
+
+        scheduler.run();
+        assertEquals(2, command.executes);
+        assertFalse(scheduler.isScheduled(command));
+    }
+
+    @Test
+    public void commandWithoutRequirementsDoesNotConflict() {
+        Subsystem subsystem = new SubsystemBase();
+        CountingCommand requiring = new CountingCommand(-1, subsystem);
+        CountingCommand free = new CountingCommand(-1);
+
+        scheduler.schedule(requiring);
+        scheduler.schedule(free);
+        scheduler.run();
+
+        assertTrue(scheduler.isScheduled(requiring));
+        assertTrue(scheduler.isScheduled(free));
+        assertSame(requiring, scheduler.requiring(subsystem));
+
+        scheduler.cancel(free);
+        assertFalse(scheduler.isScheduled(free));
+        assertSame(requiring, scheduler.requiring(subsystem));
+    }
+
+    @Test
+    public void conflictingCommandInterruptsTheRequiringOne() {
+        Subsystem subsystem = new SubsystemBase();
+        CountingCommand first = new CountingCommand(-1, subsystem);
+        CountingCommand second = new CountingCommand(-1, subsystem);
+
+        scheduler.schedule(first);
+        scheduler.schedule(second);
+
+        assertFalse(scheduler.isScheduled(first));
+        assertTrue(first.interrupted);
+        assertSame(second, scheduler.requiring(subsystem));
+    }
+
+    @Test
+    public void commandRunsOnOneSchedulerAtATime() {
+        CommandScheduler other = new CommandScheduler();
+        CountingCommand shared = new CountingCommand(-1);
+        CountingCommand own = new CountingCommand(-1);
+        other.schedule(own);
+
+        scheduler.schedule(shared);
+        other.schedule(shared);
+        assertTrue(scheduler.isScheduled(shared));
+        assertFalse(other.isScheduled(shared));
+
+        // cancelling on the wrong scheduler leaves both tables alone
+        other.cancel(shared);
+        assertTrue(scheduler.isScheduled(shared));
+        assertTrue(other.isScheduled(own));
+        other.run();
+        scheduler.run();
+        assertEquals(1, shared.executes);
+        assertEquals(1, own.executes);
+        assertFalse(shared.interrupted);
+
+        scheduler.cancel(shared);
+        other.schedule(shared);
+        assertTrue(other.isScheduled(shared));
+        assertFalse(scheduler.isScheduled(shared));
+        other.run();
+        assertEquals(2, shared.executes);
+        assertEquals(2, own.executes);
+    }
+
+    @Test
+    public void cancelAllWorksAfterACommandThrows() {
+        CountingCommand running = new CountingCommand(-1);
+        Command failing = new Command() {
+            @Override
+            protected void execute() {
+                throw new IllegalStateException("hardware gone");
+            }
+        };
+        scheduler.schedule(running, failing);
+
+        try {
+            scheduler.run();
+            fail("the command's exception should reach run()");
+        } catch (IllegalStateException expected) {
+            // the OpMode's cleanup runs next
+        }
+        scheduler.cancelAll();
+
+        assertFalse(scheduler.isScheduled(running));
+        assertFalse(scheduler.isScheduled(failing));
+        assertTrue(running.interrupted);
+    }
+
+    @Test
+    public void executionOrderSurvivesRemovals() {
+        List<String> order = new ArrayList<>();
+        BodyCommand a = logging(order, "a");
+        BodyCommand b = logging(order, "b");
+        BodyCommand c = logging(order, "c");
+        BodyCommand d = logging(order, "d");
+        c.finishAfter = 1;
+        scheduler.schedule(a, b, c, d);
+
+        scheduler.run();
+        assertEquals(Arrays.asList("a", "b", "c", "d"), order);
+
+        // c finished in the last loop, b is canceled; the next loop closes both slots
+        scheduler.cancel(b);
+        BodyCommand e = logging(order, "e");
+        scheduler.schedule(e);
+        order.clear();
+        scheduler.run();
+        assertEquals(Arrays.asList("a", "d", "e"), order);
+
+        scheduler.schedule(b);
+        order.clear();
+        scheduler.run();
+        assertEquals(Arrays.asList("a", "d", "e", "b"), order);
+    }
+
+    @Test
+    public void changesMadeInsideRunApplyAfterTheLoop() {
+        List<String> order = new ArrayList<>();
+        BodyCommand late = logging(order, "late");
+        BodyCommand victim = logging(order, "victim");
+        BodyCommand first = new BodyCommand(false, () -> {
+            order.add("first");
+            scheduler.cancel(victim);
+            scheduler.schedule(late);
+        });
+        scheduler.schedule(first, victim);
+
+        scheduler.run();
+        // the canceled command still runs in this loop, the new one only in the next
+        assertEquals(Arrays.asList("first", "victim"), order);
+        assertFalse(scheduler.isScheduled(victim));
+        assertTrue(victim.interrupted);
+        assertTrue(scheduler.isScheduled(late));
+
+        order.clear();
+        scheduler.run();
+        assertEquals(Arrays.asList("first", "late"), order);
+    }
+
+    @Test
+    public void cancelAllInsideRunEndsEveryCommand() {
+        BodyCommand before = new BodyCommand(false, null, new SubsystemBase());
+        BodyCommand after = new BodyCommand(false, null);
+        BodyCommand canceling = new BodyCommand(false, () -> scheduler.cancelAll());
+        scheduler.schedule(before, canceling, after);
+
+        scheduler.run();
+
+        assertEquals(1, after.executes);
+        for (BodyCommand command : Arrays.asList(before, canceling, after)) {
+            assertFalse(scheduler.isScheduled(command));
+            assertTrue(command.interrupted);
+        }
+        for (Subsystem requirement : before.getRequirements()) {
+            assertNull(scheduler.requiring(requirement));
+        }
+
+        // the table is empty and usable
+        scheduler.schedule(after);
+        scheduler.run();
+        assertEquals(2, after.executes);
+    }
+
+    @Test
+    public void reusedIdDoesNotConflictWithAStaleMask() {
+        Subsystem removed = new SubsystemBase();
+        scheduler.registerSubsystem(removed);
+        CountingCommand stale = new CountingCommand(-1, removed);
+        scheduler.schedule(stale);
+        scheduler.cancel(stale);
+
+        // the new subsystem takes the freed ID
+        scheduler.unregisterSubsystem(removed);
+        Subsystem added = new SubsystemBase();
+        scheduler.registerSubsystem(added);
+        CountingCommand holder = new CountingCommand(-1, added);
+        scheduler.schedule(holder);
+
+        scheduler.schedule(stale);
+
+        assertTrue(scheduler.isScheduled(holder));
+        assertTrue(scheduler.isScheduled(stale));
+        assertSame(holder, scheduler.requiring(added));
+        assertSame(stale, scheduler.requiring(removed));
+    }
+
+    @Test
+    public void requiredSubsystemKeepsItsIdUntilReleased() {
+        Subsystem removed = new SubsystemBase();
+        scheduler.registerSubsystem(removed);
+        CountingCommand running = new CountingCommand(-1, removed);
+        scheduler.schedule(running);
+
+        scheduler.unregisterAllSubsystems();
+        Subsystem added = new SubsystemBase();
+        scheduler.registerSubsystem(added);
+        CountingCommand other = new CountingCommand(-1, added);
+        scheduler.schedule(other);
+
+        assertTrue(scheduler.isScheduled(running));
+        assertSame(running, scheduler.requiring(removed));
+
+        scheduler.cancel(running);
+        assertNull(scheduler.requiring(removed));
+        assertSame(other, scheduler.requiring(added));
+    }
+
+    @Test
+    public void normalWorkRidesOutShortOverloads() {
+        scheduler.setLoopPeriod(0.001);
+        scheduler.registerSubsystem(new SlowSubsystem(0.002));
+        CountingCommand normal = new CountingCommand(-1);
+        scheduler.schedule(normal);
+
+        for (int i = 0; i < 5; i++) {
+            scheduler.run();
+            scheduler.waitForNextLoop();
+        }
+
+        assertEquals(5, normal.executes);
+        assertEquals(1, scheduler.getShedLevel());
+    }
+
+    @Test
+    public void sustainedOverloadThinsOutNormalWork() {
+        scheduler.setLoopPeriod(0.001);
+        scheduler.registerSubsystem(new SlowSubsystem(0.002));
+
+        for (int i = 0; i < 12; i++) {
+            scheduler.run();
+            scheduler.waitForNextLoop();
+        }
+
+        assertEquals(2, scheduler.getShedLevel());
+    }
+
+    @Test
+    public void profilerKeepsOneHistogramPerCommandClass() {
+        scheduler.setProfilingEnabled(true);
+        CountingCommand first = new CountingCommand(1);
+        CountingCommand second = new CountingCommand(1);
+
+        scheduler.schedule(first);
+        scheduler.run();
+        scheduler.schedule(second);
+        scheduler.run();
+
+        assertSame(scheduler.getProfiler().getCommand(first), scheduler.getProfiler().getCommand(second));
+        assertEquals(2, scheduler.getProfiler().getCommand(first).getCount());
+    }
+
+    @Test
+    public void profilerDropsUnregisteredSubsystems() {
+        scheduler.setProfilingEnabled(true);
+        Subsystem subsystem = new SubsystemBase();
+        scheduler.registerSubsystem(subsystem);
+        scheduler.run();
+        assertEquals(1, scheduler.getProfiler().getSubsystem(subsystem).getCount());
+
+        scheduler.unregisterSubsystem(subsystem);
+        assertNull(scheduler.getProfiler().getSubsystem(subsystem));
+    }
+
+    @Test
+    public void disjointThreadSafeCommandsRunConcurrently() {
+        scheduler.setParallelism(2);
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        // each one waits for the other, so they only get through if they run at the same time
+        BodyCommand first = new BodyCommand(true, () -> await(barrier), new SubsystemBase());
+        BodyCommand second = new BodyCommand(true, () -> await(barrier), new SubsystemBase());
+        scheduler.schedule(first, second);
+
+        scheduler.run();
+
+        assertEquals(1, first.executes);
+        assertEquals(1, second.executes);
+        assertNotSame(Thread.currentThread(), first.thread);
+        assertNotSame(Thread.currentThread(), second.thread);
+    }
+
+    @Test
+    public void unprovablyDisjointCommandsRunSeriallyAfterTheBatch() {
+        scheduler.setParallelism(2);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        BodyCommand unsafe = new BodyCommand(false, () -> order.add("unsafe"), new SubsystemBase());
+        BodyCommand free = new BodyCommand(true, () -> order.add("free"));
+        BodyCommand parallel = new BodyCommand(true, () -> {
+            sleep(20);
+            order.add("parallel");
+        }, new SubsystemBase());
+        scheduler.schedule(unsafe, free, parallel);
+
+        scheduler.run();
+
+        assertSame(Thread.currentThread(), unsafe.thread);
+        assertSame(Thread.currentThread(), free.thread);
+        assertNotSame(Thread.currentThread(), parallel.thread);
+        // the serial pass starts once the batch is joined, then keeps the scheduling order
+        assertEquals(3, order.size());
+        assertEquals("parallel", order.get(0));
+        assertEquals("unsafe", order.get(1));
+        assertEquals("free", order.get(2));
+    }
+
+    @Test
+    public void workerExceptionsReachRunOnceTheBatchIsJoined() {
+        scheduler.setParallelism(2);
+        BodyCommand failing = new BodyCommand(true, () -> {
+            throw new IllegalStateException("hardware gone");
+        }, new SubsystemBase());
+        BodyCommand slow = new BodyCommand(true, () -> sleep(20), new SubsystemBase());
+        scheduler.schedule(failing, slow);
+
+        try {
+            scheduler.run();
+            fail("the worker's exception should reach run()");
+        } catch (IllegalStateException expected) {
+            // rethrown on the scheduler's thread
+        }
+        assertEquals(1, slow.executes);
+
+        // the scheduler is usable again
+        scheduler.cancel(failing);
+        scheduler.run();
+        assertEquals(2, slow.executes);
+    }
+
+    @Test
+    public void workerSubsystemExceptionsReachRun() {
+        scheduler.setParallelism(2);
+        CountingSubsystem other = new CountingSubsystem(Priority.NORMAL, 0, true);
+        scheduler.registerSubsystem(new CountingSubsystem(Priority.NORMAL, 0, true) {
+            @Override
+            public void periodic() {
+                throw new IllegalStateException("hardware gone");
+            }
+        }, other);
+
+        try {
+            scheduler.run();
+            fail("the worker's exception should reach run()");
+        } catch (IllegalStateException expected) {
+            // rethrown on the scheduler's thread
+        }
+        assertEquals(1, other.runs);
+    }
+
+    @Test
+    public void shedWorkStaysOffInParallelMode() {
+        scheduler.setLoopPeriod(0.001);
+        scheduler.setParallelism(2);
+        scheduler.registerSubsystem(new SlowSubsystem(0.002));
+        CountingSubsystem low = new CountingSubsystem(Priority.LOW, 0, true);
+        scheduler.registerSubsystem(low);
+        BodyCommand normal = new BodyCommand(true, null, new SubsystemBase());
+        scheduler.schedule(normal);
+        for (int i = 0; i < 12; i++) {
+            scheduler.run();
+            scheduler.waitForNextLoop();
+        }
+        assertEquals(2, scheduler.getShedLevel());
+
+        low.runs = 0;
+        normal.executes = 0;
+        for (int i = 0; i < 8; i++) {
+            scheduler.run();
+            scheduler.waitForNextLoop();
+        }
+
+        // LOW is off; NORMAL runs one loop in four, neither in the pool nor in the serial pass
+        assertEquals(0, low.runs);
+        assertEquals(2, normal.executes);
+    }
+
+    @Test
+    public void slowerSubsystemsRunEveryNthLoop() {
+        scheduler.setLoopPeriod(0.005);
+        CountingSubsystem everyLoop = new CountingSubsystem(Priority.NORMAL, 0, false);
+        CountingSubsystem fifty = new CountingSubsystem(Priority.NORMAL, 50, false);
+        CountingSubsystem twenty = new CountingSubsystem(Priority.NORMAL, 20, false);
+        scheduler.registerSubsystem(everyLoop, fifty, twenty);
+
+        for (int i = 0; i < 40; i++) {
+            scheduler.run();
+        }
+
+        assertEquals(40, everyLoop.runs);
+        assertEquals(10, fifty.runs);
+        assertEquals(4, twenty.runs);
+    }
+
+    @Test
+    public void subsystemsOfOneRateAreSpreadOverItsPhases() {
+        scheduler.setLoopPeriod(0.005);
+        CountingSubsystem[] group = new CountingSubsystem[4];
+        for (int i = 0; i < group.length; i++) {
+            group[i] = new CountingSubsystem(Priority.NORMAL, 50, false);
+            scheduler.registerSubsystem(group[i]);
+        }
+
+        int[] phaseOf = new int[group.length];
+        for (int loop = 0; loop < 4; loop++) {
+            boolean[] ran = runOnce(group);
+            int count = 0;
+            for (int i = 0; i < group.length; i++) {
+                if (ran[i]) {
+                    phaseOf[i] = loop;
+                    count++;
+                }
+            }
+            assertEquals("subsystems run in loop " + loop, 1, count);
+        }
+        int[] sorted = phaseOf.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(new int[] {0, 1, 2, 3}, sorted);
+    }
+
+    @Test
+    public void ratePlanFollowsRegistrations() {
+        scheduler.setLoopPeriod(0.005);
+        CountingSubsystem first = new CountingSubsystem(Priority.NORMAL, 50, false);
+        scheduler.registerSubsystem(first);
+        for (int i = 0; i < 4; i++) {
+            scheduler.run();
+        }
+        assertEquals(1, first.runs);
+
+        // the new subsystem takes the free phases instead of doubling up with the first one
+        CountingSubsystem second = new CountingSubsystem(Priority.NORMAL, 50, false);
+        scheduler.registerSubsystem(second);
+        for (int loop = 0; loop < 4; loop++) {
+            boolean[] ran = runOnce(first, second);
+            assertFalse("both ran in loop " + loop, ran[0] && ran[1]);
+        }
+        assertEquals(2, first.runs);
+        assertEquals(1, second.runs);
+
+        scheduler.unregisterSubsystem(first);
+        for (int i = 0; i < 8; i++) {
+            scheduler.run();
+        }
+        assertEquals(2, first.runs);
+        assertEquals(3, second.runs);
+    }
+
+    @Test
+    public void rateLimitedCommandsTakeTurns() {
+        scheduler.setLoopPeriod(0.005);
+        BodyCommand first = new BodyCommand(false, null);
+        BodyCommand second = new BodyCommand(false, null);
+        first.rateHz = 100;
+        second.rateHz = 100;
+        scheduler.schedule(first, second);
+
+        for (int loop = 0; loop < 4; loop++) {
+            int before = first.executes + second.executes;
+            scheduler.run();
+            assertEquals("commands run in loop " + loop, 1, first.executes + second.executes - before);
+        }
+        assertEquals(2, first.executes);
+        assertEquals(2, second.executes);
+    }
+
+    private static BodyCommand logging(List<String> order, String name) {
+        return new BodyCommand(false, () -> order.add(name));
+    }
+
+    // runs one loop and returns which of the subsystems ran in it
+    private boolean[] runOnce(CountingSubsystem... subsystems) {
+        int[] before = new int[subsystems.length];
+        for (int i = 0; i < subsystems.length; i++) {
+            before[i] = subsystems[i].runs;
+        }
+        scheduler.run();
+        boolean[] ran = new boolean[subsystems.length];
+        for (int i = 0; i < subsystems.length; i++) {
+            ran[i] = subsystems[i].runs > before[i];
+        }
+        return ran;
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(2, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("the commands did not run concurrently", e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CountingSubsystem implements Subsystem {
+        private final Priority priority;
+        private final double rateHz;
+        private final boolean threadSafe;
+        volatile int runs;
+
+        CountingSubsystem(Priority priority, double rateHz, boolean threadSafe) {
+            this.priority = priority;
+            this.rateHz = rateHz;
+            this.threadSafe = threadSafe;
+        }
+
+        @Override
+        public void periodic() {
+            runs++;
+        }
+
+        @Override
+        public Priority getPriority() {
+            return priority;
+        }
+
+        @Override
+        public double getRateHz() {
+            return rateHz;
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+    }
+
+    private static final class BodyCommand extends Command {
+        private final boolean threadSafe;
+        private final Runnable body;
+        double rateHz;
+        // finishes after this many executes; < 0 never finishes
+        int finishAfter = -1;
+        volatile int executes;
+        volatile Thread thread;
+        boolean interrupted;
+
+        BodyCommand(boolean threadSafe, Runnable body, Subsystem... requirements) {
+            this.threadSafe = threadSafe;
+            this.body = body;
+            addRequirements(requirements);
+        }
+
+        @Override
+        protected void execute() {
+            thread = Thread.currentThread();
+            if (body != null) {
+                body.run();
+            }
+            executes++;
+        }
+
+        @Override
+        protected boolean isFinished() {
+            return finishAfter >= 0 && executes >= finishAfter;
+        }
+
+        @Override
+        protected void end(boolean interrupted) {
+            this.interrupted = interrupted;
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+
+        @Override
+        public double getRateHz() {
+            return rateHz;
+        }
+    }
+
+    private static final class SlowSubsystem implements Subsystem {
+        private final long busyNanos;
+
+        SlowSubsystem(double busySeconds) {
+            busyNanos = (long) (busySeconds * 1e9);
+        }
+
+        @Override
+        public Priority getPriority() {
+            return Priority.CRITICAL;
+        }
+
+        @Override
+        public void periodic() {
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < busyNanos) {
+                // busy, like a slow hardware read
+            }
+        }
+    }
+
+    private static final class CountingCommand extends Command {
+        private final int finishAfter;
+        int executes;
+        boolean interrupted;
+
+        // finishAfter < 0 never finishes
+        CountingCommand(int finishAfter, Subsystem... requirements) {
+            this.finishAfter = finishAfter;
+            addRequirements(requirements);
+        }
+
+        @Override
+        protected void execute() {
+            executes++;
+        }
+
+        @Override
+        protected boolean isFinished() {
+            return finishAfter >= 0 && executes >= finishAfter;
+        }
+
+        @Override
+        protected void end(boolean interrupted) {
+            this.interrupted = interrupted;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DriveClockTest {
+    private long simulatedNanos;
+
+    @After
+    public void tearDown() {
+        DriveClock.reset();
+    }
+
+    @Test
+    public void nanoTimeFollowsASimulatedClock() {
+        DriveClock.set(() -> simulatedNanos / 1e9);
+
+        // every stamp must come back exactly, so pose history lookups land on the recorded sample
+        for (simulatedNanos = 0; simulatedNanos < 5_000_000_000L; simulatedNanos += 9_999_999L) {
+            assertEquals(simulatedNanos, DriveClock.nanoTime());
+        }
+    }
+
+    @Test
+    public void nanoTimeMatchesTheSecondsClock() {
+        DriveClock.set(() -> 1234.5);
+
+        assertEquals(1_234_500_000_000L, DriveClock.nanoTime());
+        assertEquals(1234.5, DriveClock.nanoTime() / 1e9, 0.0);
+    }
+}
@@ -0,0 +1,103 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.acmerobotics.roadrunner.Pose2d;
+import com.acmerobotics.roadrunner.PoseVelocity2d;
+import com.acmerobotics.roadrunner.Vector2d;
+
+import org.firstinspires.ftc.teamcode.messages.BinaryLogReader;
+import org.firstinspires.ftc.teamcode.messages.ThreeDeadWheelInputsMessage;
+import org.firstinspires.ftc.teamcode.simulation.SimulatedRobot;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class FusedLocalizerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void measurementCorrectsAStillRobot() {
+        FusedLocalizer fused = new FusedLocalizer(new Pose2d(0, 0, 0), new StillLocalizer());
+        fused.predictFromSources(0.0);
+        fused.predictFromSources(1.0);
+
+        fused.addMeasurement(new Pose2d(5, 0, 0));
+
+        assertTrue("x = " + fused.getPose().position.x, fused.getPose().position.x > 0.05);
+    }
+
+    @Test
+    public void measurementRightAfterSetPoseIsWeighedIn() {
+        FusedLocalizer fused = new FusedLocalizer(new Pose2d(0, 0, 0), new StillLocalizer());
+        fused.setPose(new Pose2d(1, 1, 0));
+
+        fused.addMeasurement(new Pose2d(1, 5, 0));
+
+        assertTrue("y = " + fused.getPose().position.y, fused.getPose().position.y > 1.05);
+    }
+
+    @Test
+    public void stillRobotTrustsMeasurementsMoreOverTime() {
+        FusedLocalizer shortWait = new FusedLocalizer(new Pose2d(0, 0, 0), new StillLocalizer());
+        shortWait.predictFromSources(0.0);
+        shortWait.predictFromSources(0.1);
+        shortWait.addMeasurement(new Pose2d(5, 0, 0));
+
+        FusedLocalizer longWait = new FusedLocalizer(new Pose2d(0, 0, 0), new StillLocalizer());
+        longWait.predictFromSources(0.0);
+        longWait.predictFromSources(30.0);
+        longWait.addMeasurement(new Pose2d(5, 0, 0));
+
+        assertTrue(longWait.getPose().position.x > shortWait.getPose().position.x);
+    }
+
+    @Test
+    public void replaysRecordedThreeDeadWheelInputs() throws IOException {
+        File log = ReplayLogFixture.write(folder.newFile("fused.rrbl"));
+        double[] params = ReplayLogFixture.useParams();
+        try (SimulatedRobot sim = ReplayLogFixture.simulator()) {
+            ThreeDeadWheelLocalizer deadWheels = new ThreeDeadWheelLocalizer(
+                    sim.hardwareMap, ReplayLogFixture.IN_PER_TICK, ReplayLogFixture.START);
+            FusedLocalizer fused = new FusedLocalizer(ReplayLogFixture.START, deadWheels);
+
+            LocalizerReplay.Result result = LocalizerReplay.run(new BinaryLogReader(log),
+                    "THREE_DEAD_WHEEL_INPUTS", fused, LocalizerReplay.fused(fused, r -> {
+                        ThreeDeadWheelInputsMessage inputs = new ThreeDeadWheelInputsMessage(r);
+                        deadWheels.update(inputs);
+                        return inputs.timestamp;
+                    }));
+
+            assertEquals(ReplayLogFixture.SAMPLES, result.samples);
+            assertEquals(ReplayLogFixture.SAMPLES - 1, result.comparisons);
+            assertTrue("max position error " + result.maxPositionError, result.maxPositionError < 0.05);
+            assertTrue("max heading error " + result.maxHeadingError, result.maxHeadingError < 1e-3);
+        } finally {
+            ReplayLogFixture.restoreParams(params);
+        }
+    }
+
+    private static final class StillLocalizer implements Localizer {
+        private Pose2d pose = new Pose2d(0, 0, 0);
+
+        @Override
+        public void setPose(Pose2d pose) {
+            this.pose = pose;
+        }
+
+        @Override
+        public Pose2d getPose() {
+            return pose;
+        }
+
+        @Override
+        public PoseVelocity2d update() {
+            return new PoseVelocity2d(new Vector2d(0, 0), 0);
+        }
+    }
+}
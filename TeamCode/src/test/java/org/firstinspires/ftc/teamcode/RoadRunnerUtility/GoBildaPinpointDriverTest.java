@@ -0,0 +1,192 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.GoBildaPinpointDriver.Field;
+import org.firstinspires.ftc.teamcode.RoadRunnerUtility.GoBildaPinpointDriver.ReadPlan;
+import org.firstinspires.ftc.teamcode.simulation.SimI2cDevice;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class GoBildaPinpointDriverTest {
+    // register addresses from the Pinpoint register map
+    private static final int H_ORIENTATION = 10;
+    private static final int BULK_READ = 18;
+
+    private SimI2cDevice bus;
+    private GoBildaPinpointDriver driver;
+
+    @Before
+    public void setUp() {
+        bus = new SimI2cDevice();
+        driver = new GoBildaPinpointDriver(bus.device, true);
+    }
+
+    // a BULK_READ block as the device sends it: ints then floats, little-endian
+    static byte[] bulkRead(int status, int loopTime, int xEncoder, int yEncoder,
+                           float x, float y, float heading, float xVel, float yVel, float headingVel) {
+        return ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(status).putInt(loopTime).putInt(xEncoder).putInt(yEncoder)
+                .putFloat(x).putFloat(y).putFloat(heading)
+                .putFloat(xVel).putFloat(yVel).putFloat(headingVel)
+                .array();
+    }
+
+    @Test
+    public void decodesEveryFieldOfABulkRead() {
+        driver.decodeBulkRead(bulkRead(1, 800, 12345, -6789, 101.5f, -202.25f, 1.25f, 30.5f, -40.75f, -0.5f));
+
+        assertEquals(GoBildaPinpointDriver.DeviceStatus.READY, driver.getDeviceStatus());
+        assertEquals(800, driver.getLoopTime());
+        assertEquals(1250.0, driver.getFrequency(), 1e-9);
+        assertEquals(12345, driver.getEncoderX());
+        assertEquals(-6789, driver.getEncoderY());
+        assertEquals(101.5, driver.getPosX(), 0.0);
+        assertEquals(-202.25, driver.getPosY(), 0.0);
+        assertEquals(1.25, driver.getHeading(), 0.0);
+        assertEquals(30.5, driver.getVelX(), 0.0);
+        assertEquals(-40.75, driver.getVelY(), 0.0);
+        assertEquals(-0.5, driver.getHeadingVelocity(), 0.0);
+    }
+
+    @Test
+    public void decodesFaultStatusBits() {
+        driver.decodeBulkRead(bulkRead(1 << 2 | 1 << 3, 0, 0, 0, 0, 0, 0, 0, 0, 0));
+        assertEquals(GoBildaPinpointDriver.DeviceStatus.FAULT_NO_PODS_DETECTED, driver.getDeviceStatus());
+
+        driver.decodeBulkRead(bulkRead(1 << 1 | 1, 0, 0, 0, 0, 0, 0, 0, 0, 0));
+        assertEquals(GoBildaPinpointDriver.DeviceStatus.CALIBRATING, driver.getDeviceStatus());
+    }
+
+    @Test
+    public void laterBlocksOverwriteEarlierOnes() {
+        driver.decodeBulkRead(bulkRead(1, 800, 1, 2, 3, 4, 5, 6, 7, 8));
+        driver.decodeBulkRead(bulkRead(1, 900, -1, -2, -3, -4, -5, -6, -7, -8));
+
+        assertEquals(900, driver.getLoopTime());
+        assertEquals(-1, driver.getEncoderX());
+        assertEquals(-3.0, driver.getPosX(), 0.0);
+        assertEquals(-8.0, driver.getHeadingVelocity(), 0.0);
+    }
+
+    @Test
+    public void updateReadsTheWholeBlockOnce() {
+        bus.setRegister(BULK_READ, bulkRead(1, 800, 10, 20, 1, 2, 0.5f, 3, 4, 0.25f));
+
+        driver.update();
+
+        assertEquals(1, bus.getReads());
+        assertEquals(BULK_READ, bus.getLastReadRegister());
+        assertEquals(40, bus.getLastReadLength());
+        assertEquals(40, driver.getLastReadLength());
+        assertEquals(20, driver.getEncoderY());
+        assertEquals(0.5, driver.getHeading(), 0.0);
+    }
+
+    @Test
+    public void shortReadsKeepThePreviousValues() {
+        bus.setRegister(BULK_READ, bulkRead(1, 800, 10, 20, 1, 2, 0.5f, 3, 4, 0.25f));
+        driver.update();
+        assertTrue(driver.isLastReadComplete());
+
+        // the tail of this block would land on top of the previous one in the reused buffer
+        bus.setRegister(BULK_READ, bulkRead(1, 900, 11, 21, 5, 6, 0.75f, 7, 8, 0.5f));
+        bus.setMaxReadLength(20);
+        driver.update();
+
+        assertFalse(driver.isLastReadComplete());
+        assertEquals(1, driver.getFailedReadCount());
+        assertEquals(20, driver.getLastReadLength());
+        assertEquals(800, driver.getLoopTime());
+        assertEquals(10, driver.getEncoderX());
+        assertEquals(1.0, driver.getPosX(), 0.0);
+        assertEquals(0.5, driver.getHeading(), 0.0);
+    }
+
+    @Test
+    public void shortPlanReadsKeepThePreviousValues() {
+        driver.decodeBulkRead(bulkRead(1, 800, 10, 20, 1, 2, 0.5f, 3, 4, 0.25f));
+        bus.setRegister(BULK_READ, bulkRead(1, 900, 11, 21, 5, 6, 0.75f, 7, 8, 0.5f));
+        bus.setMaxReadLength(24);
+
+        driver.update(ReadPlan.POSITION);
+
+        assertFalse(driver.isLastReadComplete());
+        assertEquals(1.0, driver.getPosX(), 0.0);
+        assertEquals(0.5, driver.getHeading(), 0.0);
+
+        bus.setMaxReadLength(Integer.MAX_VALUE);
+        driver.update(ReadPlan.POSITION);
+
+        assertTrue(driver.isLastReadComplete());
+        assertEquals(1, driver.getFailedReadCount());
+        assertEquals(5.0, driver.getPosX(), 0.0);
+        assertEquals(0.75, driver.getHeading(), 0.0);
+    }
+
+    @Test
+    public void predefinedPlansReadTheirDocumentedLengths() {
+        bus.setRegister(BULK_READ, bulkRead(1, 800, 10, 20, 1, 2, 0.5f, 3, 4, 0.25f));
+
+        assertRead(ReadPlan.ALL, BULK_READ, 40);
+        assertRead(ReadPlan.ENCODERS, BULK_READ, 16);
+        assertRead(ReadPlan.POSITION, BULK_READ, 28);
+        assertRead(ReadPlan.HEADING, H_ORIENTATION, 4);
+    }
+
+    @Test
+    public void multiFieldPlansReadUpToTheirLastField() {
+        ReadPlan plan = ReadPlan.of(Field.LOOP_TIME, Field.X_VELOCITY);
+
+        assertEquals(32, plan.getReadLength());
+        assertTrue(plan.includes(Field.X_VELOCITY));
+        assertFalse(plan.includes(Field.Y_VELOCITY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyPlansAreRejected() {
+        ReadPlan.of();
+    }
+
+    @Test
+    public void planReadsLeaveOtherFieldsAlone() {
+        driver.decodeBulkRead(bulkRead(1, 800, 10, 20, 1, 2, 0.5f, 3, 4, 0.25f));
+        bus.setRegister(BULK_READ, bulkRead(1, 900, 11, 21, 5, 6, 0.75f, 7, 8, 0.5f));
+
+        driver.update(ReadPlan.POSITION);
+
+        assertEquals(5.0, driver.getPosX(), 0.0);
+        assertEquals(6.0, driver.getPosY(), 0.0);
+        assertEquals(0.75, driver.getHeading(), 0.0);
+        // outside the plan
+        assertEquals(800, driver.getLoopTime());
+        assertEquals(10, driver.getEncoderX());
+        assertEquals(3.0, driver.getVelX(), 0.0);
+    }
+
+    @Test
+    public void singleFieldPlansReadTheFieldsOwnRegister() {
+        bus.setRegister(H_ORIENTATION, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(-2.5f).array());
+
+        driver.update(GoBildaPinpointDriver.readData.ONLY_UPDATE_HEADING);
+
+        assertEquals(H_ORIENTATION, bus.getLastReadRegister());
+        assertEquals(-2.5, driver.getHeading(), 0.0);
+    }
+
+    private void assertRead(ReadPlan plan, int register, int length) {
+        bus.resetCounts();
+        driver.update(plan);
+
+        assertEquals(1, bus.getReads());
+        assertEquals(register, bus.getLastReadRegister());
+        assertEquals(length, bus.getLastReadLength());
+        assertEquals(length, plan.getReadLength());
+        assertEquals(length, driver.getLastReadLength());
+    }
+}
@@ -0,0 +1,84 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.qualcomm.robotcore.hardware.IMU;
+
+import org.firstinspires.ftc.teamcode.messages.BinaryLogReader;
+import org.firstinspires.ftc.teamcode.messages.ThreeDeadWheelInputsMessage;
+import org.firstinspires.ftc.teamcode.messages.TwoDeadWheelInputsMessage;
+import org.firstinspires.ftc.teamcode.simulation.SimulatedRobot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class LocalizerReplayTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File log;
+    private double[] params;
+    private SimulatedRobot sim;
+
+    @Before
+    public void setUp() throws IOException {
+        log = ReplayLogFixture.write(folder.newFile("replay.rrbl"));
+        params = ReplayLogFixture.useParams();
+        sim = ReplayLogFixture.simulator();
+    }
+
+    @After
+    public void tearDown() {
+        sim.close();
+        ReplayLogFixture.restoreParams(params);
+    }
+
+    @Test
+    public void threeDeadWheelReplayMatchesTheLoggedPoses() {
+        ThreeDeadWheelLocalizer localizer = new ThreeDeadWheelLocalizer(
+                sim.hardwareMap, ReplayLogFixture.IN_PER_TICK, ReplayLogFixture.START);
+
+        LocalizerReplay.Result result = LocalizerReplay.run(new BinaryLogReader(log),
+                "THREE_DEAD_WHEEL_INPUTS", localizer, r -> localizer.update(new ThreeDeadWheelInputsMessage(r)));
+
+        assertMatches(result);
+    }
+
+    @Test
+    public void twoDeadWheelReplayMatchesTheLoggedPoses() {
+        IMU imu = sim.hardwareMap.get(IMU.class, "imu");
+        TwoDeadWheelLocalizer localizer = new TwoDeadWheelLocalizer(
+                sim.hardwareMap, imu, ReplayLogFixture.IN_PER_TICK, ReplayLogFixture.START);
+
+        LocalizerReplay.Result result = LocalizerReplay.run(new BinaryLogReader(log),
+                "TWO_DEAD_WHEEL_INPUTS", localizer, r -> localizer.update(new TwoDeadWheelInputsMessage(r)));
+
+        assertMatches(result);
+    }
+
+    @Test
+    public void wrongWheelLayoutShowsUpAsError() {
+        ThreeDeadWheelLocalizer.PARAMS.perpXTicks = 0.0;
+        ThreeDeadWheelLocalizer localizer = new ThreeDeadWheelLocalizer(
+                sim.hardwareMap, ReplayLogFixture.IN_PER_TICK, ReplayLogFixture.START);
+
+        LocalizerReplay.Result result = LocalizerReplay.run(new BinaryLogReader(log),
+                "THREE_DEAD_WHEEL_INPUTS", localizer, r -> localizer.update(new ThreeDeadWheelInputsMessage(r)));
+
+        assertTrue("max position error " + result.maxPositionError, result.maxPositionError > 1.0);
+    }
+
+    private static void assertMatches(LocalizerReplay.Result result) {
+        assertEquals(ReplayLogFixture.SAMPLES, result.samples);
+        assertEquals(ReplayLogFixture.SAMPLES - 1, result.comparisons);
+        assertEquals((ReplayLogFixture.SAMPLES - 1) * ReplayLogFixture.PERIOD_NANOS, result.loggedNanos);
+        assertTrue("max position error " + result.maxPositionError, result.maxPositionError < 0.05);
+        assertTrue("max heading error " + result.maxHeadingError, result.maxHeadingError < 1e-3);
+    }
+}
@@ -0,0 +1,134 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.acmerobotics.roadrunner.Pose2d;
+import com.acmerobotics.roadrunner.PoseVelocity2d;
+import com.acmerobotics.roadrunner.Vector2d;
+import com.qualcomm.hardware.lynx.LynxModule;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.function.BooleanSupplier;
+
+public class OdometryServiceTest {
+    private static final long TIMEOUT_MILLIS = 2000;
+
+    private OdometryService service;
+
+    @After
+    public void tearDown() {
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void publishesUpdatesFromItsThread() {
+        CountingLocalizer localizer = new CountingLocalizer(-1);
+        service = new OdometryService(localizer, Collections.<LynxModule>emptyList(), 1000);
+        service.start();
+
+        awaitTrue(() -> service.getSnapshot().pose.position.x >= 3);
+        assertTrue(service.isRunning());
+        assertFalse(service.getSnapshot().stale);
+        assertEquals(1.0, service.update().linearVel.x, 0.0);
+    }
+
+    @Test
+    public void setPoseIsVisibleAtOnceAndReachesTheLocalizer() {
+        CountingLocalizer localizer = new CountingLocalizer(-1);
+        service = new OdometryService(localizer, Collections.<LynxModule>emptyList(), 1000);
+        service.setPose(new Pose2d(-100, 0, 0));
+        assertEquals(-100, service.getPose().position.x, 0.0);
+
+        service.start();
+        awaitTrue(() -> service.getSnapshot().pose.position.x > -100);
+        assertTrue(service.getSnapshot().pose.position.x < -90);
+    }
+
+    @Test
+    public void failureStopsTheServiceAndIsReported() {
+        CountingLocalizer localizer = new CountingLocalizer(3);
+        service = new OdometryService(localizer, Collections.<LynxModule>emptyList(), 1000);
+        service.start();
+
+        awaitTrue(() -> !service.isRunning());
+        assertSame(localizer.failure, service.getFailure());
+        OdometryService.Snapshot snapshot = service.getSnapshot();
+        assertTrue(snapshot.stale);
+        assertEquals(3, snapshot.pose.position.x, 0.0);
+        try {
+            service.update();
+            fail("update() should rethrow the failure");
+        } catch (IllegalStateException e) {
+            assertSame(localizer.failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void stopIsNotAFailure() {
+        CountingLocalizer localizer = new CountingLocalizer(-1);
+        service = new OdometryService(localizer, Collections.<LynxModule>emptyList(), 1000);
+        service.start();
+        awaitTrue(() -> service.getSnapshot().pose.position.x >= 1);
+
+        service.stop();
+        assertFalse(service.isRunning());
+        assertNull(service.getFailure());
+        assertFalse(service.getSnapshot().stale);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    // moves one inch along x per update; throws on update failAfter + 1 unless failAfter < 0
+    private static final class CountingLocalizer implements Localizer {
+        final RuntimeException failure = new RuntimeException("I2C read failed");
+        private final int failAfter;
+        private volatile Pose2d pose = new Pose2d(0, 0, 0);
+        private int updates;
+
+        CountingLocalizer(int failAfter) {
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public void setPose(Pose2d pose) {
+            this.pose = pose;
+        }
+
+        @Override
+        public Pose2d getPose() {
+            return pose;
+        }
+
+        @Override
+        public PoseVelocity2d update() {
+            if (updates == failAfter) {
+                throw failure;
+            }
+            updates++;
+            pose = new Pose2d(pose.position.x + 1, pose.position.y, 0);
+            return new PoseVelocity2d(new Vector2d(1, 0), 0);
+        }
+    }
+}
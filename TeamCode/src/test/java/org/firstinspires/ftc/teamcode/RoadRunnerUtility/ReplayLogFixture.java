@@ -0,0 +1,129 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import com.acmerobotics.roadrunner.Pose2d;
+import com.acmerobotics.roadrunner.Twist2d;
+import com.acmerobotics.roadrunner.Vector2d;
+import com.acmerobotics.roadrunner.ftc.PositionVelocityPair;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
+import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+import org.firstinspires.ftc.teamcode.messages.BinaryLogWriter;
+import org.firstinspires.ftc.teamcode.messages.PoseMessage;
+import org.firstinspires.ftc.teamcode.messages.ThreeDeadWheelInputsMessage;
+import org.firstinspires.ftc.teamcode.messages.TwoDeadWheelInputsMessage;
+import org.firstinspires.ftc.teamcode.simulation.SimulatedRobot;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes a log in the robot's format of a known drive: an S-curve with changing heading, recorded
+ * as THREE_DEAD_WHEEL_INPUTS and TWO_DEAD_WHEEL_INPUTS, with the true pose after each sample as
+ * ESTIMATED_POSE. Encoder counts are rounded to whole ticks like on the robot, so a correct
+ * localizer reproduces the poses to within a fraction of a tick.
+ */
+final class ReplayLogFixture {
+    static final double IN_PER_TICK = 0.002;
+    static final double PAR0_Y_TICKS = 3000;
+    static final double PAR1_Y_TICKS = -3000;
+    static final double PERP_X_TICKS = 1500;
+
+    static final int SAMPLES = 600;
+    static final long PERIOD_NANOS = 5_000_000;
+    static final Pose2d START = new Pose2d(10, -20, 0.5);
+
+    private ReplayLogFixture() {}
+
+    /**
+     * Sets the dead wheel PARAMS to the fixture's wheel layout. Undo with {@link #restoreParams}.
+     *
+     * @return the previous values, for {@link #restoreParams}
+     */
+    static double[] useParams() {
+        double[] previous = {
+                ThreeDeadWheelLocalizer.PARAMS.par0YTicks, ThreeDeadWheelLocalizer.PARAMS.par1YTicks,
+                ThreeDeadWheelLocalizer.PARAMS.perpXTicks,
+                TwoDeadWheelLocalizer.PARAMS.parYTicks, TwoDeadWheelLocalizer.PARAMS.perpXTicks,
+        };
+        ThreeDeadWheelLocalizer.PARAMS.par0YTicks = PAR0_Y_TICKS;
+        ThreeDeadWheelLocalizer.PARAMS.par1YTicks = PAR1_Y_TICKS;
+        ThreeDeadWheelLocalizer.PARAMS.perpXTicks = PERP_X_TICKS;
+        TwoDeadWheelLocalizer.PARAMS.parYTicks = PAR0_Y_TICKS;
+        TwoDeadWheelLocalizer.PARAMS.perpXTicks = PERP_X_TICKS;
+        return previous;
+    }
+
+    static void restoreParams(double[] previous) {
+        ThreeDeadWheelLocalizer.PARAMS.par0YTicks = previous[0];
+        ThreeDeadWheelLocalizer.PARAMS.par1YTicks = previous[1];
+        ThreeDeadWheelLocalizer.PARAMS.perpXTicks = previous[2];
+        TwoDeadWheelLocalizer.PARAMS.parYTicks = previous[3];
+        TwoDeadWheelLocalizer.PARAMS.perpXTicks = previous[4];
+    }
+
+    /**
+     * Opens a simulator with encoders named like the dead wheel localizers expect, so the
+     * localizers can be constructed; the replay feeds them the logged counts instead.
+     */
+    static SimulatedRobot simulator() {
+        SimulatedRobot sim = SimulatedRobot.mecanum(START);
+        sim.addDeadWheel("par0", true, PAR0_Y_TICKS, IN_PER_TICK);
+        sim.addDeadWheel("par1", true, PAR1_Y_TICKS, IN_PER_TICK);
+        sim.addDeadWheel("par", true, PAR0_Y_TICKS, IN_PER_TICK);
+        sim.addDeadWheel("perp", false, PERP_X_TICKS, IN_PER_TICK);
+        return sim;
+    }
+
+    static File write(File file) throws IOException {
+        double dt = PERIOD_NANOS / 1e9;
+        Pose2d pose = START;
+        // continuous wheel travel in ticks, rounded when recorded
+        double par0 = 0, par1 = 0, perp = 0;
+        int lastPar0 = 0, lastPar1 = 0, lastPerp = 0;
+        double dx = 0, dy = 0, dHeading = 0;
+
+        try (BinaryLogWriter writer = new BinaryLogWriter(file)) {
+            for (int k = 0; k < SAMPLES; k++) {
+                if (k > 0) {
+                    dx = 0.3;
+                    dy = 0.05 * Math.sin(k / 50.0);
+                    dHeading = 0.01 * Math.cos(k / 80.0);
+                    pose = pose.plus(new Twist2d(new Vector2d(dx, dy), dHeading));
+                    par0 += dx / IN_PER_TICK + PAR0_Y_TICKS * dHeading;
+                    par1 += dx / IN_PER_TICK + PAR1_Y_TICKS * dHeading;
+                    perp += dy / IN_PER_TICK + PERP_X_TICKS * dHeading;
+                }
+                long timestamp = k * PERIOD_NANOS;
+
+                PositionVelocityPair par0Pair = pair(par0, lastPar0, dt);
+                PositionVelocityPair par1Pair = pair(par1, lastPar1, dt);
+                PositionVelocityPair perpPair = pair(perp, lastPerp, dt);
+                lastPar0 = par0Pair.position;
+                lastPar1 = par1Pair.position;
+                lastPerp = perpPair.position;
+
+                ThreeDeadWheelInputsMessage three = new ThreeDeadWheelInputsMessage(par0Pair, par1Pair, perpPair);
+                three.timestamp = timestamp;
+                writer.write("THREE_DEAD_WHEEL_INPUTS", three);
+
+                TwoDeadWheelInputsMessage two = new TwoDeadWheelInputsMessage(par0Pair, perpPair,
+                        new YawPitchRollAngles(AngleUnit.RADIANS, pose.heading.toDouble(), 0, 0, timestamp),
+                        new AngularVelocity(AngleUnit.RADIANS, 0, 0, (float) (dHeading / dt), timestamp));
+                two.timestamp = timestamp;
+                writer.write("TWO_DEAD_WHEEL_INPUTS", two);
+
+                PoseMessage estimate = new PoseMessage(pose);
+                estimate.timestamp = timestamp;
+                writer.write("ESTIMATED_POSE", estimate);
+            }
+        }
+        return file;
+    }
+
+    private static PositionVelocityPair pair(double travel, int lastPosition, double dt) {
+        int position = (int) Math.round(travel);
+        int velocity = (int) Math.round((position - lastPosition) / dt);
+        return new PositionVelocityPair(position, velocity, position, velocity);
+    }
+}
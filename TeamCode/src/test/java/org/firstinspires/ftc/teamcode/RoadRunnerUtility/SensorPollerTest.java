@@ -0,0 +1,91 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.function.BooleanSupplier;
+
+public class SensorPollerTest {
+    private static final long TIMEOUT_MILLIS = 2000;
+
+    private SensorPoller poller;
+
+    @After
+    public void tearDown() {
+        if (poller != null) {
+            poller.stop();
+        }
+    }
+
+    @Test
+    public void latestReturnsACompleteSample() {
+        int[] reads = new int[1];
+        poller = new SensorPoller("test", 2, 1000, out -> {
+            reads[0]++;
+            out[0] = reads[0];
+            out[1] = -reads[0];
+        });
+        double[] sample = new double[2];
+        assertEquals(-1, poller.latest(sample));
+
+        poller.start();
+        awaitTrue(() -> poller.latest(sample) >= 0 && sample[0] >= 3);
+        assertEquals(-sample[0], sample[1], 0.0);
+        assertTrue(poller.isRunning());
+    }
+
+    @Test
+    public void failureStopsThePollerAndReachesReaders() {
+        RuntimeException readFailure = new RuntimeException("I2C read failed");
+        int[] reads = new int[1];
+        poller = new SensorPoller("test", 1, 1000, out -> {
+            if (++reads[0] > 2) {
+                throw readFailure;
+            }
+            out[0] = reads[0];
+        });
+        poller.start();
+
+        awaitTrue(() -> !poller.isRunning());
+        assertSame(readFailure, poller.getFailure());
+        try {
+            poller.latest(new double[1]);
+            fail("latest() should rethrow the failure");
+        } catch (IllegalStateException e) {
+            assertSame(readFailure, e.getCause());
+        }
+    }
+
+    @Test
+    public void stopIsNotAFailure() {
+        poller = new SensorPoller("test", 1, 1000, out -> out[0] = 1);
+        poller.start();
+        awaitTrue(() -> poller.latest(new double[1]) >= 0);
+
+        poller.stop();
+        assertFalse(poller.isRunning());
+        assertNull(poller.getFailure());
+        assertTrue(poller.latest(new double[1]) >= 0);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
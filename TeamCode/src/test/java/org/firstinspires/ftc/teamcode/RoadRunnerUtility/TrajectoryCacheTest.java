@@ -0,0 +1,135 @@
+package org.firstinspires.ftc.teamcode.RoadRunnerUtility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.acmerobotics.roadrunner.Pose2d;
+import com.acmerobotics.roadrunner.Pose2dDual;
+import com.acmerobotics.roadrunner.Time;
+import com.acmerobotics.roadrunner.TimeTurn;
+import com.acmerobotics.roadrunner.TurnConstraints;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class TrajectoryCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private TrajectoryCache cache;
+    private TrajectoryCache.Samples turn;
+    private TrajectoryCache.Samples otherTurn;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("trajectories");
+        cache = new TrajectoryCache(dir);
+        TurnConstraints constraints = new TurnConstraints(Math.PI, -Math.PI, Math.PI);
+        turn = TrajectoryCache.sample(new TimeTurn(new Pose2d(1, 2, 0), Math.PI / 2, constraints));
+        otherTurn = TrajectoryCache.sample(new TimeTurn(new Pose2d(1, 2, Math.PI / 2), -Math.PI, constraints));
+    }
+
+    private static TrajectoryCache.Key key(double angle) {
+        return new TrajectoryCache.Key(new Pose2d(1, 2, 0)).add("turn").add(angle);
+    }
+
+    @Test
+    public void storedSegmentsLoadBackUnchanged() {
+        cache.store(key(Math.PI / 2), Arrays.asList(turn, otherTurn));
+
+        List<TrajectoryCache.Samples> loaded = cache.load(key(Math.PI / 2));
+
+        assertNotNull(loaded);
+        assertEquals(2, loaded.size());
+        assertSameSamples(turn, loaded.get(0));
+        assertSameSamples(otherTurn, loaded.get(1));
+    }
+
+    @Test
+    public void unknownKeysMiss() {
+        cache.store(key(Math.PI / 2), Arrays.asList(turn));
+
+        assertNull(cache.load(key(Math.PI / 4)));
+    }
+
+    @Test
+    public void builderCallsAndArgumentsChangeTheKey() {
+        Pose2d begin = new Pose2d(1, 2, 0);
+        long base = new TrajectoryCache.Key(begin).add("lineToX").add(10).getHash();
+
+        assertEquals(base, new TrajectoryCache.Key(begin).add("lineToX").add(10).getHash());
+        assertNotEquals(base, new TrajectoryCache.Key(begin).add("lineToY").add(10).getHash());
+        assertNotEquals(base, new TrajectoryCache.Key(begin).add("lineToX").add(11).getHash());
+        assertNotEquals(base, new TrajectoryCache.Key(new Pose2d(1, 2, 0.1)).add("lineToX").add(10).getHash());
+    }
+
+    @Test
+    public void entriesOfAnotherVersionAreIgnored() throws IOException {
+        cache.store(key(Math.PI / 2), Arrays.asList(turn));
+        try (RandomAccessFile file = new RandomAccessFile(onlyEntry(), "rw")) {
+            // the version follows the magic number, little-endian
+            file.seek(4);
+            file.write(new byte[] {99, 0, 0, 0});
+        }
+
+        assertNull(cache.load(key(Math.PI / 2)));
+    }
+
+    @Test
+    public void entriesOfAnotherKeyAreIgnored() throws IOException {
+        cache.store(key(Math.PI / 2), Arrays.asList(turn));
+        File entry = onlyEntry();
+        // an entry under the wrong name, as a hash collision or a stray copy would leave it
+        TrajectoryCache.Key other = key(Math.PI / 4);
+        File renamed = new File(dir, String.format("%016x.bin", other.getHash()));
+        Files.copy(entry.toPath(), renamed.toPath());
+
+        assertNull(cache.load(other));
+        assertNotNull(cache.load(key(Math.PI / 2)));
+    }
+
+    @Test
+    public void truncatedEntriesAreIgnored() throws IOException {
+        cache.store(key(Math.PI / 2), Arrays.asList(turn));
+        try (RandomAccessFile file = new RandomAccessFile(onlyEntry(), "rw")) {
+            file.setLength(file.length() / 2);
+        }
+
+        assertNull(cache.load(key(Math.PI / 2)));
+    }
+
+    private File onlyEntry() {
+        File[] entries = dir.listFiles();
+        assertNotNull(entries);
+        assertEquals(1, entries.length);
+        return entries[0];
+    }
+
+    private static void assertSameSamples(TrajectoryCache.Samples expected, TrajectoryCache.Samples actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.dt, actual.dt, 0.0);
+        assertEquals(expected.duration, actual.duration, 0.0);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.x(i), actual.x(i), 0.0);
+            assertEquals(expected.y(i), actual.y(i), 0.0);
+        }
+        for (double t = 0; t <= expected.duration; t += expected.dt / 3) {
+            Pose2dDual<Time> e = expected.get(t);
+            Pose2dDual<Time> a = actual.get(t);
+            assertEquals(e.heading.value().toDouble(), a.heading.value().toDouble(), 0.0);
+            assertEquals(e.heading.velocity().value(), a.heading.velocity().value(), 0.0);
+        }
+    }
+}